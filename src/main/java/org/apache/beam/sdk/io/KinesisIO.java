@@ -17,9 +17,29 @@
  */
 package org.apache.beam.sdk.io;
 
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions.checkNotNull;
+import org.apache.beam.sdk.io.kinesis.client.EnhancedFanOutClientProvider;
+import org.apache.beam.sdk.io.kinesis.client.KinesisClientConfiguration;
 import org.apache.beam.sdk.io.kinesis.client.KinesisClientProvider;
+import org.apache.beam.sdk.io.kinesis.client.RetryPolicy;
+import org.apache.beam.sdk.io.kinesis.client.response.CompactKinesisRecord;
+import org.apache.beam.sdk.io.kinesis.sink.DataHashPartitioner;
+import org.apache.beam.sdk.io.kinesis.sink.KinesisPartitioner;
+import org.apache.beam.sdk.io.kinesis.sink.KinesisSink;
+import org.apache.beam.sdk.io.kinesis.sink.WriterSettings;
+import org.apache.beam.sdk.io.kinesis.source.CompactKinesisSource;
+import org.apache.beam.sdk.io.kinesis.source.HashKeyRangeShardWeigher;
 import org.apache.beam.sdk.io.kinesis.source.KinesisSource;
+import org.apache.beam.sdk.io.kinesis.source.LagWeightedShardSelection;
+import org.apache.beam.sdk.io.kinesis.source.ReaderSettings;
+import org.apache.beam.sdk.io.kinesis.source.RoundRobinShardSelection;
+import org.apache.beam.sdk.io.kinesis.source.ShardSelectionPolicy;
+import org.apache.beam.sdk.io.kinesis.source.ShardWeigher;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.store.FileShardPositionStore;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.store.ShardPositionStore;
 import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PDone;
 
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
@@ -29,9 +49,11 @@ import com.amazonaws.services.kinesis.AmazonKinesis;
 import com.amazonaws.services.kinesis.AmazonKinesisClient;
 import com.amazonaws.services.kinesis.clientlibrary.lib.worker.InitialPositionInStream;
 import com.amazonaws.services.kinesis.model.Record;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
 
 /**
- * {@link PTransform}s for reading from
+ * {@link PTransform}s for reading from and writing to
  * <a href="https://aws.amazon.com/kinesis/">Kinesis</a> streams.
  */
 public class KinesisIO {
@@ -42,17 +64,131 @@ public class KinesisIO {
 
         private final String streamName;
         private final InitialPositionInStream initialPosition;
+        private final Instant startTimestamp;
+        private final ReaderSettings settings;
 
-        private Read(String streamName, InitialPositionInStream initialPosition) {
+        private Read(String streamName, InitialPositionInStream initialPosition,
+                     Instant startTimestamp, ReaderSettings settings) {
             this.streamName = streamName;
             this.initialPosition = initialPosition;
+            this.startTimestamp = startTimestamp;
+            this.settings = settings;
         }
 
         /***
          * Specify reading from streamName at some initial position.
          */
         public static Read from(String streamName, InitialPositionInStream initialPosition) {
-            return new Read(streamName, initialPosition);
+            return new Read(streamName, initialPosition, null, ReaderSettings.defaults());
+        }
+
+        /***
+         * Specify reading from streamName starting at the first record in every shard which
+         * arrived to Kinesis at or after given timestamp, e.g. to reprocess the last few hours
+         * without replaying the whole retention period.
+         * <p>
+         * Shards are read from {@code AT_TIMESTAMP} iterators, so records before the timestamp
+         * are not fetched. Children of shards closed by resharding start at the timestamp too.
+         */
+        public static Read from(String streamName, Instant startTimestamp) {
+            checkNotNull(startTimestamp);
+            return new Read(streamName, InitialPositionInStream.TRIM_HORIZON, startTimestamp,
+                    ReaderSettings.defaults());
+        }
+
+        /***
+         * Keeps fetching up to prefetchDepth batches of records from every shard in the
+         * background, so that the reader doesn't have to wait for Kinesis when it runs out of
+         * records from the previous batch.
+         */
+        public Read withPrefetching(int prefetchDepth) {
+            return new Read(streamName, initialPosition, startTimestamp,
+                    settings.withPrefetchDepth(prefetchDepth));
+        }
+
+        /***
+         * Limits memory used by each reader to buffer records (64 MB by default).
+         * Sizes of batches requested from Kinesis are adjusted to this budget.
+         */
+        public Read withMemoryBudget(long bytes) {
+            return new Read(streamName, initialPosition, startTimestamp,
+                    settings.withMemoryBudget(bytes));
+        }
+
+        /***
+         * Restricts the reader to use only given fraction of per-shard read limits
+         * (5 GetRecords calls and 2 MB per second), leaving the rest for other applications
+         * reading from the same stream. By default the reader uses all of it.
+         */
+        public Read withReadShare(double readShare) {
+            return new Read(streamName, initialPosition, startTimestamp,
+                    settings.withReadShare(readShare));
+        }
+
+        /***
+         * Specifies how transient failures of Kinesis calls (throttling, service errors) are
+         * retried before they reach the reader. By default {@link RetryPolicy#defaults()} is used.
+         */
+        public Read withRetryPolicy(RetryPolicy retryPolicy) {
+            return new Read(streamName, initialPosition, startTimestamp,
+                    settings.withRetryPolicy(retryPolicy));
+        }
+
+        /***
+         * Specifies how the reader divides its time between shards with records available.
+         * By default {@link RoundRobinShardSelection} treats all shards equally,
+         * use {@link LagWeightedShardSelection} to favour shards which are further behind.
+         */
+        public Read withShardSelectionPolicy(ShardSelectionPolicy policy) {
+            return new Read(streamName, initialPosition, startTimestamp,
+                    settings.withShardSelectionPolicy(policy));
+        }
+
+        /***
+         * Balances initial splits by total weight of their shards, e.g.
+         * {@link HashKeyRangeShardWeigher} or weigher based on metrics of shards, instead of
+         * giving each split the same number of shards.
+         */
+        public Read withSplitBalancing(ShardWeigher shardWeigher) {
+            return new Read(streamName, initialPosition, startTimestamp,
+                    settings.withSplitBalancing(shardWeigher));
+        }
+
+        /***
+         * Commits positions of finalized checkpoints to the store, so that a pipeline
+         * redeployed after cancellation resumes from them, instead of from the initial position,
+         * which then applies only to shards without a stored position.
+         * {@link FileShardPositionStore} keeps them in local files.
+         */
+        public Read withPositionStore(ShardPositionStore positionStore) {
+            return new Read(streamName, initialPosition, startTimestamp,
+                    settings.withPositionStore(positionStore));
+        }
+
+        /***
+         * Makes approximate arrival timestamps of records (assigned by Kinesis) their event
+         * timestamps and lets the watermark follow them, shard by shard, instead of using
+         * processing time. This keeps windowing correct when the pipeline reads a backlog.
+         * Shards from which no record was read for {@code idleTimeout} while being read up to
+         * their tip don't hold back the watermark.
+         */
+        public Read withArrivalTimeWatermark(Duration idleTimeout) {
+            return new Read(streamName, initialPosition, startTimestamp,
+                    settings.withArrivalTimeWatermark(idleTimeout));
+        }
+
+        /***
+         * Instead of polling shards, records are pushed by Kinesis through enhanced fan-out
+         * subscriptions of a dedicated stream consumer (registered if it doesn't exist yet).
+         * This gives the pipeline its own read throughput and latency which doesn't depend on
+         * polling interval.
+         * {@link KinesisClientProvider} passed to {@link Read#using(KinesisClientProvider)}
+         * is still used to list shards of the stream.
+         */
+        public Read withEnhancedFanOut(String consumerName,
+                                       EnhancedFanOutClientProvider fanOutClientProvider) {
+            return new Read(streamName, initialPosition, startTimestamp,
+                    settings.withEnhancedFanOut(consumerName, fanOutClientProvider));
         }
 
         /***
@@ -64,9 +200,7 @@ public class KinesisIO {
          */
         public org.apache.beam.sdk.io.Read.Unbounded<Record> using
         (KinesisClientProvider kinesisClientProvider) {
-            return org.apache.beam.sdk.io.Read.from(
-                    new KinesisSource(kinesisClientProvider, streamName,
-                            initialPosition));
+            return org.apache.beam.sdk.io.Read.from(source(kinesisClientProvider));
         }
 
         /***
@@ -77,7 +211,50 @@ public class KinesisIO {
         public org.apache.beam.sdk.io.Read.Unbounded<Record> using(String awsAccessKey,
                                                                    String awsSecretKey,
                                                                    Regions region) {
-            return using(new BasicKinesisProvider(awsAccessKey, awsSecretKey, region));
+            return using(awsAccessKey, awsSecretKey, region,
+                    KinesisClientConfiguration.defaults());
+        }
+
+        /***
+         * Same as {@link Read#using(String, String, Regions)}, with connections of the client
+         * tuned by given configuration. The client is shared by all readers in the same JVM.
+         */
+        public org.apache.beam.sdk.io.Read.Unbounded<Record> using(
+                String awsAccessKey, String awsSecretKey, Regions region,
+                KinesisClientConfiguration clientConfiguration) {
+            return using(new BasicKinesisProvider(awsAccessKey, awsSecretKey, region,
+                    clientConfiguration));
+        }
+
+        /***
+         * Same as {@link Read#using(KinesisClientProvider)}, but emits
+         * {@link CompactKinesisRecord}s: immutable records holding only the payload,
+         * partition key, shard id, sequence numbers and arrival time,
+         * which are cheaper to keep in memory and to encode than {@link Record}s.
+         */
+        public org.apache.beam.sdk.io.Read.Unbounded<CompactKinesisRecord> usingCompactRecords
+        (KinesisClientProvider kinesisClientProvider) {
+            return org.apache.beam.sdk.io.Read.from(
+                    new CompactKinesisSource(source(kinesisClientProvider)));
+        }
+
+        /***
+         * Same as {@link Read#using(String, String, Regions)}, but emits
+         * {@link CompactKinesisRecord}s.
+         */
+        public org.apache.beam.sdk.io.Read.Unbounded<CompactKinesisRecord> usingCompactRecords(
+                String awsAccessKey, String awsSecretKey, Regions region) {
+            return usingCompactRecords(new BasicKinesisProvider(awsAccessKey, awsSecretKey,
+                    region, KinesisClientConfiguration.defaults()));
+        }
+
+        private KinesisSource source(KinesisClientProvider kinesisClientProvider) {
+            if (startTimestamp != null) {
+                return new KinesisSource(kinesisClientProvider, streamName, startTimestamp,
+                        settings);
+            }
+            return new KinesisSource(kinesisClientProvider, streamName, initialPosition,
+                    settings);
         }
 
         private static class BasicKinesisProvider implements KinesisClientProvider {
@@ -85,11 +262,14 @@ public class KinesisIO {
             private final String accessKey;
             private final String secretKey;
             private final Regions region;
+            private final KinesisClientConfiguration clientConfiguration;
 
-            private BasicKinesisProvider(String accessKey, String secretKey, Regions region) {
+            private BasicKinesisProvider(String accessKey, String secretKey, Regions region,
+                                         KinesisClientConfiguration clientConfiguration) {
                 this.accessKey = accessKey;
                 this.secretKey = secretKey;
                 this.region = region;
+                this.clientConfiguration = clientConfiguration;
             }
 
 
@@ -103,8 +283,106 @@ public class KinesisIO {
 
             @Override
             public AmazonKinesis get() {
-                return new AmazonKinesisClient(getCredentialsProvider()).withRegion(region);
+                return new AmazonKinesisClient(getCredentialsProvider(),
+                        clientConfiguration.toClientConfiguration()).withRegion(region);
             }
         }
     }
+
+    /***
+     * A {@link PTransform} that writes byte arrays as records of a Kinesis stream.
+     * <p>
+     * Records are put in batches of up to 500 records (5 MB), several of them at once,
+     * and every bundle finishes only after all its records are in Kinesis. Records rejected
+     * by Kinesis (e.g. because their shard is throttled) are put again. Records are not
+     * guaranteed to be written in order.
+     */
+    public static class Write {
+
+        private final String streamName;
+        private final WriterSettings settings;
+
+        private Write(String streamName, WriterSettings settings) {
+            this.streamName = streamName;
+            this.settings = settings;
+        }
+
+        /***
+         * Specify writing to streamName.
+         */
+        public static Write to(String streamName) {
+            checkNotNull(streamName);
+            return new Write(streamName, WriterSettings.defaults());
+        }
+
+        /***
+         * Chooses partition keys of records, by default {@link DataHashPartitioner} spreads
+         * them evenly over shards.
+         */
+        public Write withPartitioner(KinesisPartitioner partitioner) {
+            return new Write(streamName, settings.withPartitioner(partitioner));
+        }
+
+        /***
+         * Limits the number of PutRecords calls each worker thread has running at once
+         * (8 by default).
+         */
+        public Write withMaxInFlightBatches(int maxInFlightBatches) {
+            return new Write(streamName, settings.withMaxInFlightBatches(maxInFlightBatches));
+        }
+
+        /***
+         * Specifies how failed calls and rejected records are retried.
+         * By default {@link RetryPolicy#defaults()} is used.
+         */
+        public Write withRetryPolicy(RetryPolicy retryPolicy) {
+            return new Write(streamName, settings.withRetryPolicy(retryPolicy));
+        }
+
+        /***
+         * Packs records going to the same shard into aggregated records of Kinesis Producer
+         * Library format, of up to 50 KB, so they take fewer PutRecords entries. Use only when
+         * all consumers of the stream deaggregate records, as {@link Read} and KCL do.
+         */
+        public Write withAggregation() {
+            return withAggregation(WriterSettings.DEFAULT_MAX_AGGREGATED_RECORD_BYTES);
+        }
+
+        /***
+         * Same as {@link Write#withAggregation()}, with aggregated records of up to given size.
+         */
+        public Write withAggregation(int maxAggregatedRecordBytes) {
+            return new Write(streamName, settings.withAggregation(maxAggregatedRecordBytes));
+        }
+
+        /***
+         * Allows to specify custom {@link KinesisClientProvider}, as in
+         * {@link Read#using(KinesisClientProvider)}.
+         */
+        public PTransform<PCollection<byte[]>, PDone> using(
+                KinesisClientProvider kinesisClientProvider) {
+            return new KinesisSink(kinesisClientProvider, streamName, settings);
+        }
+
+        /***
+         * Specify credential details and region to be used to write to Kinesis.
+         */
+        public PTransform<PCollection<byte[]>, PDone> using(String awsAccessKey,
+                                                            String awsSecretKey,
+                                                            Regions region) {
+            return using(awsAccessKey, awsSecretKey, region,
+                    KinesisClientConfiguration.defaults());
+        }
+
+        /***
+         * Same as {@link Write#using(String, String, Regions)}, with connections of the client
+         * tuned by given configuration. The client is shared by all writers in the same JVM.
+         */
+        public PTransform<PCollection<byte[]>, PDone> using(
+                String awsAccessKey, String awsSecretKey, Regions region,
+                KinesisClientConfiguration clientConfiguration) {
+            return using(new Read.BasicKinesisProvider(awsAccessKey, awsSecretKey, region,
+                    clientConfiguration));
+        }
+    }
 }
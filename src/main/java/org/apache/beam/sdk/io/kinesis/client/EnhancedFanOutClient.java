@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.client;
+
+import com.amazonaws.services.kinesis.model.ShardIteratorType;
+import org.joda.time.Instant;
+import java.io.IOException;
+
+/***
+ * Push-based access to Kinesis through enhanced fan-out, i.e. RegisterStreamConsumer and
+ * SubscribeToShard calls.
+ * <p>
+ * Enhanced fan-out requires HTTP/2, which is not supported by the AWS SDK this library is built
+ * with, so the implementation has to be provided by the user (e.g. on top of AWS SDK 2.x)
+ * through {@link EnhancedFanOutClientProvider}.
+ */
+public interface EnhancedFanOutClient {
+    /***
+     * Registers consumer with given name for the stream, unless it's already registered.
+     * Should return only when the consumer is active, i.e. ready for subscriptions.
+     */
+    void registerStreamConsumer(String streamName, String consumerName) throws IOException;
+
+    /***
+     * Starts pushing records from given shard to the handler, beginning at given position.
+     * The position is expressed the same way as for GetShardIterator calls, i.e. sequence number
+     * is given only for {@link ShardIteratorType#AT_SEQUENCE_NUMBER} and
+     * {@link ShardIteratorType#AFTER_SEQUENCE_NUMBER}, timestamp only for
+     * {@link ShardIteratorType#AT_TIMESTAMP}.
+     * <p>
+     * Handler is notified about events one at a time and the next event must not be delivered
+     * before handling of the previous one returns.
+     */
+    ShardSubscription subscribeToShard(String streamName, String consumerName, String shardId,
+                                       ShardIteratorType startingPosition,
+                                       String startingSequenceNumber,
+                                       Instant startingTimestamp,
+                                       ShardEventHandler handler) throws IOException;
+}
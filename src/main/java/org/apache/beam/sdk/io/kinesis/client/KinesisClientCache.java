@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.client;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkNotNull;
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Maps.newHashMap;
+import org.apache.beam.sdk.repackaged.com.google.common.base.Ticker;
+import org.apache.beam.sdk.util.SerializableUtils;
+
+import com.amazonaws.services.kinesis.AmazonKinesis;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Shares {@link AmazonKinesis} clients (and so their pools of warm connections) between all
+ * readers in the JVM, which use equal {@link KinesisClientProvider}s.
+ * <p>
+ * Providers are compared by their serialized form, as each split gets its own deserialized copy.
+ * Clients are reference counted; a client nobody uses for {@link #IDLE_TIMEOUT_NANOS} is shut
+ * down (checked whenever a client is acquired or released), so that a reader of a resumed split
+ * finds it still open. Clients of providers which can't be serialized are not shared.
+ */
+public class KinesisClientCache {
+    static final long IDLE_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static final Logger LOG = LoggerFactory.getLogger(KinesisClientCache.class);
+    private static final KinesisClientCache SHARED =
+            new KinesisClientCache(Ticker.systemTicker());
+
+    private final Ticker ticker;
+    private final Map<ByteBuffer, Entry> entries = newHashMap();
+
+    KinesisClientCache(Ticker ticker) {
+        checkNotNull(ticker);
+        this.ticker = ticker;
+    }
+
+    /***
+     * @return cache shared by the whole JVM
+     */
+    public static KinesisClientCache shared() {
+        return SHARED;
+    }
+
+    /***
+     * @return lease of client given by the provider, which has to be closed once the client is
+     * not needed anymore
+     */
+    public synchronized Lease acquire(KinesisClientProvider provider) {
+        checkNotNull(provider);
+        long now = ticker.read();
+        evictIdle(now);
+
+        ByteBuffer key;
+        try {
+            key = ByteBuffer.wrap(SerializableUtils.serializeToByteArray(provider));
+        } catch (IllegalArgumentException e) {
+            LOG.debug("Not sharing client of provider {}, which can't be serialized", provider);
+            return new Lease(provider.get(), null);
+        }
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(provider.get());
+            entries.put(key, entry);
+        }
+        entry.references++;
+        return new Lease(entry.client, key);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized void release(ByteBuffer key) {
+        long now = ticker.read();
+        Entry entry = entries.get(key);
+        if (--entry.references == 0) {
+            entry.idleSince = now;
+        }
+        evictIdle(now);
+    }
+
+    private void evictIdle(long now) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.references == 0 && now - entry.idleSince >= IDLE_TIMEOUT_NANOS) {
+                LOG.debug("Shutting down idle Kinesis client");
+                entry.client.shutdown();
+                it.remove();
+            }
+        }
+    }
+
+    /***
+     * Client with its usage.
+     */
+    private static class Entry {
+        private final AmazonKinesis client;
+        private int references;
+        private long idleSince;
+
+        Entry(AmazonKinesis client) {
+            this.client = client;
+        }
+    }
+
+    /***
+     * Use of a shared client, closing it more than once has no effect.
+     */
+    public class Lease {
+        private final AmazonKinesis client;
+        private final ByteBuffer key;
+        private boolean released;
+
+        private Lease(AmazonKinesis client, ByteBuffer key) {
+            this.client = client;
+            this.key = key;
+        }
+
+        public AmazonKinesis getClient() {
+            return client;
+        }
+
+        public void close() {
+            synchronized (KinesisClientCache.this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            if (key != null) {
+                release(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.client;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkArgument;
+
+import com.amazonaws.ClientConfiguration;
+import java.io.Serializable;
+
+/***
+ * Serializable subset of {@link ClientConfiguration}, used to tune connections of
+ * {@link com.amazonaws.services.kinesis.AmazonKinesis} clients created on workers.
+ * Options which are not set keep the defaults of AWS SDK.
+ * This class is immutable, every "with" method returns a modified copy.
+ */
+public class KinesisClientConfiguration implements Serializable {
+    private Integer maxConnections;
+    private Integer connectionTimeoutMillis;
+    private Integer socketTimeoutMillis;
+    private Long connectionMaxIdleMillis;
+    private Long connectionTtlMillis;
+    private Boolean tcpKeepAlive;
+    private Boolean gzip;
+
+    private KinesisClientConfiguration() {
+    }
+
+    private KinesisClientConfiguration(KinesisClientConfiguration other) {
+        this.maxConnections = other.maxConnections;
+        this.connectionTimeoutMillis = other.connectionTimeoutMillis;
+        this.socketTimeoutMillis = other.socketTimeoutMillis;
+        this.connectionMaxIdleMillis = other.connectionMaxIdleMillis;
+        this.connectionTtlMillis = other.connectionTtlMillis;
+        this.tcpKeepAlive = other.tcpKeepAlive;
+        this.gzip = other.gzip;
+    }
+
+    public static KinesisClientConfiguration defaults() {
+        return new KinesisClientConfiguration();
+    }
+
+    /***
+     * Maximum number of open HTTP connections, shared by all readers using the client.
+     */
+    public KinesisClientConfiguration withMaxConnections(int maxConnections) {
+        checkArgument(maxConnections > 0, "Max connections must be positive");
+        KinesisClientConfiguration copy = new KinesisClientConfiguration(this);
+        copy.maxConnections = maxConnections;
+        return copy;
+    }
+
+    public KinesisClientConfiguration withConnectionTimeout(int connectionTimeoutMillis) {
+        checkArgument(connectionTimeoutMillis >= 0, "Connection timeout must not be negative");
+        KinesisClientConfiguration copy = new KinesisClientConfiguration(this);
+        copy.connectionTimeoutMillis = connectionTimeoutMillis;
+        return copy;
+    }
+
+    public KinesisClientConfiguration withSocketTimeout(int socketTimeoutMillis) {
+        checkArgument(socketTimeoutMillis >= 0, "Socket timeout must not be negative");
+        KinesisClientConfiguration copy = new KinesisClientConfiguration(this);
+        copy.socketTimeoutMillis = socketTimeoutMillis;
+        return copy;
+    }
+
+    /***
+     * How long a pooled connection may stay idle before it's closed.
+     */
+    public KinesisClientConfiguration withConnectionMaxIdle(long connectionMaxIdleMillis) {
+        checkArgument(connectionMaxIdleMillis >= 0, "Connection max idle must not be negative");
+        KinesisClientConfiguration copy = new KinesisClientConfiguration(this);
+        copy.connectionMaxIdleMillis = connectionMaxIdleMillis;
+        return copy;
+    }
+
+    /***
+     * How long a pooled connection may live at all, -1 for no limit.
+     */
+    public KinesisClientConfiguration withConnectionTtl(long connectionTtlMillis) {
+        KinesisClientConfiguration copy = new KinesisClientConfiguration(this);
+        copy.connectionTtlMillis = connectionTtlMillis;
+        return copy;
+    }
+
+    public KinesisClientConfiguration withTcpKeepAlive(boolean tcpKeepAlive) {
+        KinesisClientConfiguration copy = new KinesisClientConfiguration(this);
+        copy.tcpKeepAlive = tcpKeepAlive;
+        return copy;
+    }
+
+    public KinesisClientConfiguration withGzip(boolean gzip) {
+        KinesisClientConfiguration copy = new KinesisClientConfiguration(this);
+        copy.gzip = gzip;
+        return copy;
+    }
+
+    public ClientConfiguration toClientConfiguration() {
+        ClientConfiguration configuration = new ClientConfiguration();
+        if (maxConnections != null) {
+            configuration.setMaxConnections(maxConnections);
+        }
+        if (connectionTimeoutMillis != null) {
+            configuration.setConnectionTimeout(connectionTimeoutMillis);
+        }
+        if (socketTimeoutMillis != null) {
+            configuration.setSocketTimeout(socketTimeoutMillis);
+        }
+        if (connectionMaxIdleMillis != null) {
+            configuration.setConnectionMaxIdleMillis(connectionMaxIdleMillis);
+        }
+        if (connectionTtlMillis != null) {
+            configuration.setConnectionTTL(connectionTtlMillis);
+        }
+        if (tcpKeepAlive != null) {
+            configuration.setUseTcpKeepAlive(tcpKeepAlive);
+        }
+        if (gzip != null) {
+            configuration.setUseGzip(gzip);
+        }
+        return configuration;
+    }
+}
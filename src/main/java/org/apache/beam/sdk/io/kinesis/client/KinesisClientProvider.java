@@ -25,6 +25,10 @@ import java.io.Serializable;
  *
  * Please note, that any instance of {@link KinesisClientProvider} must be
  * {@link Serializable} to ensure it can be sent to worker machines.
+ *
+ * Clients are shared by all readers in the JVM using equal providers, and shut down once unused
+ * for a while (see {@link KinesisClientCache}), so {@link #get()} should create a new client
+ * every time.
  */
 public interface KinesisClientProvider extends Serializable {
     AmazonKinesis get();
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.client;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkNotNull;
+import org.apache.beam.sdk.io.kinesis.utils.TokenBucket;
+import org.apache.beam.sdk.repackaged.com.google.common.base.Ticker;
+import com.google.api.client.util.Sleeper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Retries calls failing with {@link IOException} according to {@link RetryPolicy}.
+ * Retry budget and circuit breaker are shared by all calls made through the same instance.
+ */
+class Retrier {
+    private static final Logger LOG = LoggerFactory.getLogger(Retrier.class);
+
+    private final RetryPolicy policy;
+    private final TokenBucket budget;
+    private final Sleeper sleeper;
+    private final Ticker ticker;
+    private final Random random;
+    private int consecutiveFailures;
+    private boolean circuitOpen;
+    private long circuitOpenedAt;
+
+    /***
+     * Single attempt of a call.
+     */
+    interface Attempt<T> {
+        T run() throws IOException;
+    }
+
+    public Retrier(RetryPolicy policy) {
+        this(policy, Sleeper.DEFAULT, Ticker.systemTicker(), new Random());
+    }
+
+    Retrier(RetryPolicy policy, Sleeper sleeper, Ticker ticker, Random random) {
+        checkNotNull(policy);
+        this.policy = policy;
+        this.budget = new TokenBucket(policy.getRetryBudget(),
+                policy.getRetryBudgetRefillPerSecond(), ticker);
+        this.sleeper = sleeper;
+        this.ticker = ticker;
+        this.random = random;
+    }
+
+    public <T> T call(Attempt<T> attempt) throws IOException {
+        long delay = policy.getBaseDelayMillis();
+        int attemptNumber = 0;
+        while (true) {
+            ++attemptNumber;
+            checkCircuitClosed();
+            try {
+                T result = attempt.run();
+                onSuccess();
+                return result;
+            } catch (IOException e) {
+                onFailure();
+                if (attemptNumber >= policy.getMaxAttempts() || isCircuitOpen() ||
+                        !budget.tryTake(1)) {
+                    throw e;
+                }
+                delay = nextDelay(delay);
+                LOG.info("Retrying in {} ms after attempt {} failed", delay, attemptNumber);
+                sleep(delay);
+            }
+        }
+    }
+
+    /***
+     * Decorrelated jitter: random delay between base delay and 3 times the previous delay.
+     */
+    private long nextDelay(long previousDelay) {
+        long base = policy.getBaseDelayMillis();
+        long upperBound = Math.max(base, Math.min(policy.getMaxDelayMillis(), previousDelay * 3));
+        return base + (long) (random.nextDouble() * (upperBound - base));
+    }
+
+    private synchronized void onSuccess() {
+        consecutiveFailures = 0;
+    }
+
+    private synchronized void onFailure() {
+        ++consecutiveFailures;
+        if (consecutiveFailures >= policy.getCircuitBreakerThreshold()) {
+            LOG.warn("{} consecutive failures, no calls to Kinesis for {} ms",
+                    consecutiveFailures, policy.getCircuitBreakerCoolDownMillis());
+            consecutiveFailures = 0;
+            circuitOpen = true;
+            circuitOpenedAt = ticker.read();
+        }
+    }
+
+    private synchronized boolean isCircuitOpen() {
+        long coolDown = TimeUnit.MILLISECONDS.toNanos(policy.getCircuitBreakerCoolDownMillis());
+        if (circuitOpen && ticker.read() - circuitOpenedAt >= coolDown) {
+            circuitOpen = false;
+        }
+        return circuitOpen;
+    }
+
+    private void checkCircuitClosed() throws IOException {
+        if (isCircuitOpen()) {
+            throw new IOException("Circuit breaker is open after too many failed calls");
+        }
+    }
+
+    private void sleep(long millis) throws IOException {
+        try {
+            sleeper.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for retry");
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.client;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkArgument;
+
+import java.io.Serializable;
+
+/***
+ * Describes how {@link SimplifiedKinesisClient} retries calls which failed because of transient
+ * problems, i.e. throttling or failure of Kinesis backend.
+ * <ul>
+ * <li>Delays between attempts grow exponentially with decorrelated jitter, i.e. each delay is
+ * picked randomly between base delay and three times the previous delay, but never exceeds
+ * max delay.</li>
+ * <li>Single call is attempted at most max attempts times.</li>
+ * <li>Each retry takes one token from retry budget of the client, which is refilled at constant
+ * rate. Once the budget is exhausted, failures are reported right away.</li>
+ * <li>After given number of consecutive failed attempts circuit breaker opens and all calls fail
+ * immediately without reaching Kinesis until the cool down period passes.</li>
+ * </ul>
+ * This class is immutable, every "with" method returns a modified copy.
+ */
+public class RetryPolicy implements Serializable {
+    private long baseDelayMillis = 100;
+    private long maxDelayMillis = 10000;
+    private int maxAttempts = 10;
+    private int retryBudget = 100;
+    private double retryBudgetRefillPerSecond = 1;
+    private int circuitBreakerThreshold = 30;
+    private long circuitBreakerCoolDownMillis = 30000;
+
+    private RetryPolicy() {
+    }
+
+    private RetryPolicy(RetryPolicy other) {
+        this.baseDelayMillis = other.baseDelayMillis;
+        this.maxDelayMillis = other.maxDelayMillis;
+        this.maxAttempts = other.maxAttempts;
+        this.retryBudget = other.retryBudget;
+        this.retryBudgetRefillPerSecond = other.retryBudgetRefillPerSecond;
+        this.circuitBreakerThreshold = other.circuitBreakerThreshold;
+        this.circuitBreakerCoolDownMillis = other.circuitBreakerCoolDownMillis;
+    }
+
+    public static RetryPolicy defaults() {
+        return new RetryPolicy();
+    }
+
+    /***
+     * Every failure is reported right away.
+     */
+    public static RetryPolicy noRetries() {
+        return defaults().withMaxAttempts(1);
+    }
+
+    public RetryPolicy withDelays(long baseDelayMillis, long maxDelayMillis) {
+        checkArgument(baseDelayMillis > 0, "Base delay must be positive");
+        checkArgument(maxDelayMillis >= baseDelayMillis, "Max delay must not be below base delay");
+        RetryPolicy copy = new RetryPolicy(this);
+        copy.baseDelayMillis = baseDelayMillis;
+        copy.maxDelayMillis = maxDelayMillis;
+        return copy;
+    }
+
+    public RetryPolicy withMaxAttempts(int maxAttempts) {
+        checkArgument(maxAttempts > 0, "Max attempts must be positive");
+        RetryPolicy copy = new RetryPolicy(this);
+        copy.maxAttempts = maxAttempts;
+        return copy;
+    }
+
+    public RetryPolicy withRetryBudget(int retryBudget, double refillPerSecond) {
+        checkArgument(retryBudget > 0, "Retry budget must be positive");
+        checkArgument(refillPerSecond > 0, "Refill rate must be positive");
+        RetryPolicy copy = new RetryPolicy(this);
+        copy.retryBudget = retryBudget;
+        copy.retryBudgetRefillPerSecond = refillPerSecond;
+        return copy;
+    }
+
+    public RetryPolicy withCircuitBreaker(int consecutiveFailures, long coolDownMillis) {
+        checkArgument(consecutiveFailures > 0, "Threshold must be positive");
+        checkArgument(coolDownMillis >= 0, "Cool down must not be negative");
+        RetryPolicy copy = new RetryPolicy(this);
+        copy.circuitBreakerThreshold = consecutiveFailures;
+        copy.circuitBreakerCoolDownMillis = coolDownMillis;
+        return copy;
+    }
+
+    public long getBaseDelayMillis() {
+        return baseDelayMillis;
+    }
+
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public int getRetryBudget() {
+        return retryBudget;
+    }
+
+    public double getRetryBudgetRefillPerSecond() {
+        return retryBudgetRefillPerSecond;
+    }
+
+    public int getCircuitBreakerThreshold() {
+        return circuitBreakerThreshold;
+    }
+
+    public long getCircuitBreakerCoolDownMillis() {
+        return circuitBreakerCoolDownMillis;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.client;
+
+import com.amazonaws.services.kinesis.model.Record;
+import java.util.List;
+
+/***
+ * Receives events of a single shard subscription (see {@link EnhancedFanOutClient}).
+ * One of {@link #onError(Throwable)}, {@link #onShardEnd()} or {@link #onComplete()} is called
+ * at the end of subscription and no events are delivered afterwards.
+ */
+public interface ShardEventHandler {
+    /***
+     * Called with every batch of records pushed by Kinesis. Records are not deaggregated.
+     * May block if the consumer can't keep up, which should in turn slow down the subscription.
+     */
+    void onEvent(List<Record> records, long millisBehindLatest);
+
+    void onError(Throwable error);
+
+    /***
+     * Called when all records of a shard closed by resharding were delivered,
+     * i.e. when Kinesis sends an event without continuation sequence number.
+     */
+    void onShardEnd();
+
+    /***
+     * Called when subscription expires, which Kinesis does every 5 minutes.
+     */
+    void onComplete();
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.client;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkNotNull;
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Lists.newArrayList;
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Maps.newHashMap;
+import org.apache.beam.sdk.repackaged.com.google.common.base.Ticker;
+
+import com.amazonaws.services.kinesis.AmazonKinesis;
+import com.amazonaws.services.kinesis.model.Shard;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Keeps lists of shards of streams, so that split generation and all readers in the JVM which
+ * use the same {@link AmazonKinesis} client (see {@link KinesisClientCache}) don't list shards
+ * over and over again - DescribeStream is limited to 10 calls per second per account.
+ * <p>
+ * Lists are reused for up to {@link #MAX_AGE_NANOS}. Concurrent requests for a list which is not
+ * cached wait for a single listing, instead of making their own.
+ */
+public class ShardListCache {
+    static final long MAX_AGE_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private static final ShardListCache SHARED = new ShardListCache(Ticker.systemTicker());
+
+    private final Ticker ticker;
+    private final Map<AmazonKinesis, Map<String, Entry>> entries =
+            new WeakHashMap<AmazonKinesis, Map<String, Entry>>();
+
+    /***
+     * Lists shards of a stream by calling Kinesis.
+     */
+    interface Loader {
+        List<Shard> load() throws IOException;
+    }
+
+    ShardListCache(Ticker ticker) {
+        checkNotNull(ticker);
+        this.ticker = ticker;
+    }
+
+    /***
+     * @return cache shared by the whole JVM
+     */
+    public static ShardListCache shared() {
+        return SHARED;
+    }
+
+    /***
+     * @return unmodifiable list of shards, either cached or given by the loader
+     */
+    List<Shard> get(AmazonKinesis client, String streamName, Loader loader) throws IOException {
+        Entry entry = entryOf(client, streamName);
+        synchronized (entry) {
+            long now = ticker.read();
+            if (entry.shards == null || now - entry.listedAt >= MAX_AGE_NANOS) {
+                entry.shards = Collections.unmodifiableList(newArrayList(loader.load()));
+                entry.listedAt = now;
+            }
+            return entry.shards;
+        }
+    }
+
+    /***
+     * Forgets the list of shards, e.g. when it's known to be out of date.
+     */
+    void invalidate(AmazonKinesis client, String streamName) {
+        Entry entry = entryOf(client, streamName);
+        synchronized (entry) {
+            entry.shards = null;
+        }
+    }
+
+    private synchronized Entry entryOf(AmazonKinesis client, String streamName) {
+        Map<String, Entry> streams = entries.get(client);
+        if (streams == null) {
+            streams = newHashMap();
+            entries.put(client, streams);
+        }
+        Entry entry = streams.get(streamName);
+        if (entry == null) {
+            entry = new Entry();
+            streams.put(streamName, entry);
+        }
+        return entry;
+    }
+
+    /***
+     * Cached list of shards of a single stream.
+     */
+    private static class Entry {
+        private List<Shard> shards;
+        private long listedAt;
+    }
+}
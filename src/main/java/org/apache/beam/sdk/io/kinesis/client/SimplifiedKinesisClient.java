@@ -22,18 +22,24 @@ import com.google.common.collect.Lists;
 
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.kinesis.AmazonKinesis;
-import com.amazonaws.services.kinesis.clientlibrary.types.UserRecord;
 import com.amazonaws.services.kinesis.model.ExpiredIteratorException;
 import com.amazonaws.services.kinesis.model.GetRecordsRequest;
 import com.amazonaws.services.kinesis.model.GetRecordsResult;
+import com.amazonaws.services.kinesis.model.GetShardIteratorRequest;
 import com.amazonaws.services.kinesis.model.LimitExceededException;
 import com.amazonaws.services.kinesis.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.kinesis.model.PutRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import com.amazonaws.services.kinesis.model.PutRecordsResult;
+import com.amazonaws.services.kinesis.model.PutRecordsResultEntry;
 import com.amazonaws.services.kinesis.model.Shard;
 import com.amazonaws.services.kinesis.model.ShardIteratorType;
 import com.amazonaws.services.kinesis.model.StreamDescription;
+import org.joda.time.Instant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Callable;
 
@@ -45,15 +51,52 @@ public class SimplifiedKinesisClient {
     private static final Logger LOG = LoggerFactory.getLogger(SimplifiedKinesisClient.class);
 
     private final AmazonKinesis kinesis;
+    private final Retrier retrier;
+    private final KinesisClientCache.Lease lease;
 
     public SimplifiedKinesisClient(AmazonKinesis kinesis) {
+        this(kinesis, RetryPolicy.noRetries());
+    }
+
+    public SimplifiedKinesisClient(AmazonKinesis kinesis, RetryPolicy retryPolicy) {
+        this(kinesis, retryPolicy, null);
+    }
+
+    private SimplifiedKinesisClient(AmazonKinesis kinesis, RetryPolicy retryPolicy,
+                                    KinesisClientCache.Lease lease) {
         this.kinesis = kinesis;
+        this.retrier = new Retrier(retryPolicy);
+        this.lease = lease;
     }
 
     public static SimplifiedKinesisClient from(KinesisClientProvider provider) {
         return new SimplifiedKinesisClient(provider.get());
     }
 
+    public static SimplifiedKinesisClient from(KinesisClientProvider provider,
+                                               RetryPolicy retryPolicy) {
+        return new SimplifiedKinesisClient(provider.get(), retryPolicy);
+    }
+
+    /***
+     * Uses client shared by the whole JVM, see {@link KinesisClientCache}.
+     * It must be closed with {@link #close()} once not needed anymore.
+     */
+    public static SimplifiedKinesisClient shared(KinesisClientProvider provider,
+                                                 RetryPolicy retryPolicy) {
+        KinesisClientCache.Lease lease = KinesisClientCache.shared().acquire(provider);
+        return new SimplifiedKinesisClient(lease.getClient(), retryPolicy, lease);
+    }
+
+    /***
+     * Releases the shared client, has no effect on clients which are not shared.
+     */
+    public void close() {
+        if (lease != null) {
+            lease.close();
+        }
+    }
+
     public String getShardIterator(final String streamName, final String shardId,
                                    final ShardIteratorType shardIteratorType,
                                    final String startingSequenceNumber) throws IOException {
@@ -67,25 +110,67 @@ public class SimplifiedKinesisClient {
         });
     }
 
-    public List<Shard> listShards(final String streamName) throws IOException {
-        return wrapExceptions(new Callable<List<Shard>>() {
+    /***
+     * Obtains {@link ShardIteratorType#AT_TIMESTAMP} iterator, i.e. at the first record which
+     * arrived to Kinesis at or after given timestamp.
+     */
+    public String getShardIterator(final String streamName, final String shardId,
+                                   final Instant timestamp) throws IOException {
+        return wrapExceptions(new Callable<String>() {
             @Override
-            public List<Shard> call() throws Exception {
-                List<Shard> shards = Lists.newArrayList();
-                String lastShardId = null;
+            public String call() throws Exception {
+                return kinesis.getShardIterator(new GetShardIteratorRequest()
+                        .withStreamName(streamName)
+                        .withShardId(shardId)
+                        .withShardIteratorType(ShardIteratorType.AT_TIMESTAMP)
+                        .withTimestamp(timestamp.toDate()))
+                        .getShardIterator();
+            }
+        });
+    }
 
-                StreamDescription description;
-                do {
-                    description = kinesis.describeStream(streamName, lastShardId)
-                            .getStreamDescription();
+    /***
+     * Lists shards of the stream, possibly reusing a recent list, see {@link ShardListCache}.
+     */
+    public List<Shard> listShards(final String streamName) throws IOException {
+        return ShardListCache.shared().get(kinesis, streamName, new ShardListCache.Loader() {
+            @Override
+            public List<Shard> load() throws IOException {
+                return describeShards(streamName);
+            }
+        });
+    }
 
-                    shards.addAll(description.getShards());
-                    lastShardId = shards.get(shards.size() - 1).getShardId();
-                } while (description.getHasMoreShards());
+    /***
+     * Lists shards of the stream, ignoring lists cached before.
+     */
+    public List<Shard> refreshShards(String streamName) throws IOException {
+        ShardListCache.shared().invalidate(kinesis, streamName);
+        return listShards(streamName);
+    }
 
+    /***
+     * Pages through DescribeStream. Pages are retried separately, so that a throttled call
+     * doesn't make all the previous pages to be fetched again.
+     */
+    private List<Shard> describeShards(final String streamName) throws IOException {
+        List<Shard> shards = Lists.newArrayList();
+        String lastShardId = null;
+        while (true) {
+            final String exclusiveStartShardId = lastShardId;
+            StreamDescription description = wrapExceptions(new Callable<StreamDescription>() {
+                @Override
+                public StreamDescription call() throws Exception {
+                    return kinesis.describeStream(streamName, exclusiveStartShardId)
+                            .getStreamDescription();
+                }
+            });
+            shards.addAll(description.getShards());
+            if (!description.getHasMoreShards()) {
                 return shards;
             }
-        });
+            lastShardId = shards.get(shards.size() - 1).getShardId();
+        }
     }
 
     /***
@@ -107,29 +192,100 @@ public class SimplifiedKinesisClient {
     public GetKinesisRecordsResult getRecords(final String shardIterator, final Integer limit)
             throws
             IOException {
+        return getRecords(shardIterator, null, limit);
+    }
+
+    /***
+     * Gets records from Kinesis and deaggregates them if needed.
+     *
+     * @param shardId - id of the shard, which the iterator points to, assigned to the records
+     * @return list of deaggregated records
+     * @throws IOException - in case of recoverable situation
+     */
+    public GetKinesisRecordsResult getRecords(final String shardIterator, final String shardId,
+                                              final Integer limit) throws IOException {
         return wrapExceptions(new Callable<GetKinesisRecordsResult>() {
             @Override
             public GetKinesisRecordsResult call() throws Exception {
                 GetRecordsResult response = kinesis.getRecords(new GetRecordsRequest()
                         .withShardIterator(shardIterator)
                         .withLimit(limit));
-                return new GetKinesisRecordsResult(
-                        UserRecord.deaggregate(response.getRecords()),
-                        shardIterator,
-                        response.getNextShardIterator());
+                return GetKinesisRecordsResult.from(response, shardIterator, shardId);
+            }
+        });
+    }
+
+    /***
+     * Puts records to the stream in a single PutRecords call. When only some of them are
+     * rejected (e.g. because their shard is throttled), only the rejected ones are put again,
+     * as another attempt according to {@link RetryPolicy}.
+     *
+     * @throws IOException - if some records were still rejected after the last attempt
+     */
+    public void putRecords(final String streamName, List<PutRecordsRequestEntry> records)
+            throws IOException {
+        final List<PutRecordsRequestEntry> pending = Lists.newArrayList(records);
+        retrier.call(new Retrier.Attempt<Void>() {
+            @Override
+            public Void run() throws IOException {
+                PutRecordsResult result = callOnce(new Callable<PutRecordsResult>() {
+                    @Override
+                    public PutRecordsResult call() throws Exception {
+                        return kinesis.putRecords(new PutRecordsRequest()
+                                .withStreamName(streamName)
+                                .withRecords(pending));
+                    }
+                });
+                PutRecordsResultEntry failed = retainFailed(pending, result.getRecords());
+                if (failed != null) {
+                    LOG.warn("{} records rejected by Kinesis", pending.size());
+                    throw new IOException(String.format("%d records rejected, e.g. %s: %s",
+                            pending.size(), failed.getErrorCode(), failed.getErrorMessage()));
+                }
+                return null;
             }
         });
     }
 
+    /***
+     * Removes records, which were put successfully.
+     *
+     * @return result of one of the rejected records, null if there are none
+     */
+    private PutRecordsResultEntry retainFailed(List<PutRecordsRequestEntry> records,
+                                               List<PutRecordsResultEntry> results) {
+        PutRecordsResultEntry failed = null;
+        Iterator<PutRecordsRequestEntry> it = records.iterator();
+        for (PutRecordsResultEntry result : results) {
+            it.next();
+            if (result.getErrorCode() == null) {
+                it.remove();
+            } else {
+                failed = result;
+            }
+        }
+        return failed;
+    }
+
     /***
      * Wraps Amazon specific exceptions into more friendly format.
+     * Recoverable failures are retried according to {@link RetryPolicy} first.
      *
      * @throws IOException - in case of recoverable situation, i.e.
      *     the request rate is too high, Kinesis remote service failed, network issue, etc.
      * @throws ExpiredIteratorException - if iterator needs to be refreshed
      * @throws RuntimeException - in all other cases
      */
-    private <T> T wrapExceptions(Callable<T> callable) throws IOException {
+    private <T> T wrapExceptions(final Callable<T> callable) throws IOException {
+        return retrier.call(new Retrier.Attempt<T>() {
+            @Override
+            public T run() throws IOException {
+                return callOnce(callable);
+            }
+        });
+    }
+
+    private <T> T callOnce(Callable<T> callable) throws IOException {
         try {
             return callable.call();
         } catch (ExpiredIteratorException e) {
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.client.response;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkNotNull;
+import org.apache.beam.sdk.repackaged.com.google.common.base.Charsets;
+
+import com.amazonaws.services.kinesis.clientlibrary.types.ExtendedSequenceNumber;
+import org.joda.time.Instant;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/***
+ * Immutable, lightweight alternative to {@link KinesisRecord} to be passed downstream.
+ * Holds only the payload, partition key, shard id and position of the record in the shard,
+ * with sequence number kept as a number instead of a decimal string.
+ */
+public class CompactKinesisRecord {
+    private final byte[] data;
+    private final String partitionKey;
+    private final String shardId;
+    private final BigInteger sequenceNumber;
+    private final long subSequenceNumber;
+    private final Instant approximateArrivalTimestamp;
+
+    /***
+     * @param data - payload, which is not copied, so it must not be modified afterwards
+     * @param approximateArrivalTimestamp - null if not reported by Kinesis
+     */
+    public CompactKinesisRecord(byte[] data, String partitionKey, String shardId,
+                                BigInteger sequenceNumber, long subSequenceNumber,
+                                Instant approximateArrivalTimestamp) {
+        checkNotNull(data);
+        checkNotNull(partitionKey);
+        checkNotNull(sequenceNumber);
+
+        this.data = data;
+        this.partitionKey = partitionKey;
+        this.shardId = shardId;
+        this.sequenceNumber = sequenceNumber;
+        this.subSequenceNumber = subSequenceNumber;
+        this.approximateArrivalTimestamp = approximateArrivalTimestamp;
+    }
+
+    public static CompactKinesisRecord from(KinesisRecord record) {
+        ByteBuffer buffer = record.getData().duplicate();
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return new CompactKinesisRecord(data,
+                record.getPartitionKey(),
+                record.getShardId(),
+                new BigInteger(record.getSequenceNumber()),
+                record.getSubSequenceNumber(),
+                record.getApproximateArrivalTimestamp() == null ?
+                        null : new Instant(record.getApproximateArrivalTimestamp().getTime()));
+    }
+
+    /***
+     * @return read-only view of the payload
+     */
+    public ByteBuffer getData() {
+        return ByteBuffer.wrap(data).asReadOnlyBuffer();
+    }
+
+    public int getDataSize() {
+        return data.length;
+    }
+
+    /***
+     * Writes the payload without copying it.
+     */
+    public void writeDataTo(OutputStream outStream) throws IOException {
+        outStream.write(data);
+    }
+
+    public String getPartitionKey() {
+        return partitionKey;
+    }
+
+    /***
+     * @return id of the shard the record was read from, null if not known
+     */
+    public String getShardId() {
+        return shardId;
+    }
+
+    public String getSequenceNumber() {
+        return sequenceNumber.toString();
+    }
+
+    public BigInteger getSequenceNumberValue() {
+        return sequenceNumber;
+    }
+
+    public long getSubSequenceNumber() {
+        return subSequenceNumber;
+    }
+
+    /***
+     * @return arrival time of the record assigned by Kinesis, null if not reported, the same as
+     * {@link KinesisRecord#getApproximateArrivalTimestamp()}
+     */
+    public Instant getApproximateArrivalTimestamp() {
+        return approximateArrivalTimestamp;
+    }
+
+    /***
+     * @return unique id of the record based on its position in the stream, the same as
+     * {@link KinesisRecord#getUniqueId()}
+     */
+    public byte[] getUniqueId() {
+        return new ExtendedSequenceNumber(getSequenceNumber(), subSequenceNumber).toString()
+                .getBytes(Charsets.UTF_8);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CompactKinesisRecord)) {
+            return false;
+        }
+        CompactKinesisRecord other = (CompactKinesisRecord) obj;
+        return subSequenceNumber == other.subSequenceNumber &&
+                Objects.equals(approximateArrivalTimestamp,
+                        other.approximateArrivalTimestamp) &&
+                sequenceNumber.equals(other.sequenceNumber) &&
+                partitionKey.equals(other.partitionKey) &&
+                Objects.equals(shardId, other.shardId) &&
+                Arrays.equals(data, other.data);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sequenceNumber, subSequenceNumber, shardId);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Record %s/%d from shard %s, %d bytes", sequenceNumber,
+                subSequenceNumber, shardId, data.length);
+    }
+}
@@ -17,31 +17,67 @@
  */
 package org.apache.beam.sdk.io.kinesis.client.response;
 
-import static com.google.common.collect.Lists.transform;
-import com.google.common.base.Function;
-
 import com.amazonaws.services.kinesis.clientlibrary.types.UserRecord;
+import com.amazonaws.services.kinesis.model.GetRecordsResult;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import javax.annotation.Nullable;
 
 /***
- *
+ * Response of GetRecords with deaggregated records, which are created once, up front.
  */
 public class GetKinesisRecordsResult {
+    /***
+     * Lag of a response which didn't tell it.
+     */
+    public static final long UNKNOWN_LAG = -1;
+
     private final List<KinesisRecord> records;
     private final String nextShardIterator;
+    private final int kinesisRecordCount;
+    private final long millisBehindLatest;
 
     public GetKinesisRecordsResult(List<UserRecord> records, final String currentShardIterator,
                                    String nextShardIterator) {
-        this.records = transform(records, new Function<UserRecord, KinesisRecord>() {
-            @Nullable
-            @Override
-            public KinesisRecord apply(@Nullable UserRecord input) {
-                assert input != null;  // to make FindBugs happy
-                return new KinesisRecord(input, currentShardIterator);
-            }
-        });
+        this(records, currentShardIterator, nextShardIterator, records.size(), UNKNOWN_LAG, null);
+    }
+
+    public GetKinesisRecordsResult(List<UserRecord> records, final String currentShardIterator,
+                                   String nextShardIterator, int kinesisRecordCount,
+                                   long millisBehindLatest, final String shardId) {
+        this(wrap(records, currentShardIterator, shardId), kinesisRecordCount, nextShardIterator,
+                millisBehindLatest);
+    }
+
+    private GetKinesisRecordsResult(List<KinesisRecord> records, int kinesisRecordCount,
+                                    String nextShardIterator, long millisBehindLatest) {
+        this.records = Collections.unmodifiableList(records);
         this.nextShardIterator = nextShardIterator;
+        this.kinesisRecordCount = kinesisRecordCount;
+        this.millisBehindLatest = millisBehindLatest;
+    }
+
+    /***
+     * Builds the result straight from the response of Kinesis.
+     * Aggregated records are split by {@link RecordDeaggregator}.
+     */
+    public static GetKinesisRecordsResult from(GetRecordsResult response,
+                                               String currentShardIterator, String shardId) {
+        List<KinesisRecord> records = RecordDeaggregator.deaggregate(response.getRecords(),
+                currentShardIterator, shardId);
+        return new GetKinesisRecordsResult(records, response.getRecords().size(),
+                response.getNextShardIterator(),
+                response.getMillisBehindLatest() == null ?
+                        UNKNOWN_LAG : response.getMillisBehindLatest());
+    }
+
+    private static List<KinesisRecord> wrap(List<UserRecord> records, String currentShardIterator,
+                                            String shardId) {
+        List<KinesisRecord> wrapped = new ArrayList<>(records.size());
+        for (UserRecord record : records) {
+            wrapped.add(new KinesisRecord(record, currentShardIterator, shardId));
+        }
+        return wrapped;
     }
 
     public List<KinesisRecord> getRecords() {
@@ -51,4 +87,19 @@ public class GetKinesisRecordsResult {
     public String getNextShardIterator() {
         return nextShardIterator;
     }
+
+    /***
+     * @return number of records as returned by Kinesis, i.e. before deaggregation.
+     */
+    public int getKinesisRecordCount() {
+        return kinesisRecordCount;
+    }
+
+    /***
+     * @return how far behind the tip of the stream the response is, {@link #UNKNOWN_LAG}
+     * if Kinesis didn't tell.
+     */
+    public long getMillisBehindLatest() {
+        return millisBehindLatest;
+    }
 }
@@ -21,19 +21,36 @@ import org.apache.beam.sdk.repackaged.com.google.common.base.Charsets;
 
 import com.amazonaws.services.kinesis.clientlibrary.types.ExtendedSequenceNumber;
 import com.amazonaws.services.kinesis.clientlibrary.types.UserRecord;
+import com.amazonaws.services.kinesis.model.Record;
 
 /**
  * {@link UserRecord} enhanced with utility methods.
  */
 public class KinesisRecord extends UserRecord {
     private final String shardIterator;
+    private final String shardId;
 
     public KinesisRecord(UserRecord record, String shardIterator) {
-        super(record.isAggregated(),
+        this(record, shardIterator, null);
+    }
+
+    public KinesisRecord(UserRecord record, String shardIterator, String shardId) {
+        this(record.isAggregated(),
                 record,
                 record.getSubSequenceNumber(),
-                record.getExplicitHashKey());
+                record.getExplicitHashKey(),
+                shardIterator,
+                shardId);
+    }
+
+    /***
+     * Restores record from its parts, i.e. after decoding.
+     */
+    public KinesisRecord(boolean aggregated, Record record, long subSequenceNumber,
+                         String explicitHashKey, String shardIterator, String shardId) {
+        super(aggregated, record, subSequenceNumber, explicitHashKey);
         this.shardIterator = shardIterator;
+        this.shardId = shardId;
     }
 
     public ExtendedSequenceNumber getExtendedSequenceNumber() {
@@ -50,4 +67,11 @@ public class KinesisRecord extends UserRecord {
     public String getShardIterator() {
         return shardIterator;
     }
+
+    /***
+     * @return id of the shard the record was read from, null if not known
+     */
+    public String getShardId() {
+        return shardId;
+    }
 }
@@ -0,0 +1,362 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.client.response;
+
+import org.apache.beam.sdk.repackaged.com.google.common.base.Charsets;
+
+import com.amazonaws.services.kinesis.clientlibrary.types.UserRecord;
+import com.amazonaws.services.kinesis.model.Record;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/***
+ * Deaggregates records written by Kinesis Producer Library, as a cheaper replacement of
+ * {@link UserRecord#deaggregate(List)} with the same results.
+ * <p>
+ * Aggregated record consists of magic bytes, protobuf encoded {@code AggregatedRecord} and
+ * MD5 digest of the protobuf part. Records with wrong digest or malformed protobuf are returned
+ * as they are, just like by {@link UserRecord#deaggregate(List)}. Sub-records following one
+ * which refers to a missing key are dropped, also just like there.
+ * <p>
+ * Deaggregation is zero-copy, but eagerly validated: as a malformed protobuf means the record
+ * is returned as it is, the whole protobuf is parsed, once, before the first sub-record is
+ * returned. Data of sub-records are slices of the data of the original record, so no payload is
+ * ever copied, and only the key tables are decoded to strings. {@link KinesisRecord}s are
+ * created one by one, while iterating.
+ */
+public class RecordDeaggregator implements Iterator<KinesisRecord> {
+    private static final Logger LOG = LoggerFactory.getLogger(RecordDeaggregator.class);
+
+    public static final byte[] AGGREGATED_RECORD_MAGIC = {(byte) 0xF3, (byte) 0x89, (byte) 0x9A,
+            (byte) 0xC2};
+    public static final int DIGEST_SIZE = 16;
+
+    private static final int WIRE_TYPE_VARINT = 0;
+    private static final int WIRE_TYPE_FIXED64 = 1;
+    private static final int WIRE_TYPE_LENGTH_DELIMITED = 2;
+    private static final int WIRE_TYPE_FIXED32 = 5;
+
+    private static final int PARTITION_KEY_TABLE_FIELD = 1;
+    private static final int EXPLICIT_HASH_KEY_TABLE_FIELD = 2;
+    private static final int RECORDS_FIELD = 3;
+    private static final int PARTITION_KEY_INDEX_FIELD = 1;
+    private static final int EXPLICIT_HASH_KEY_INDEX_FIELD = 2;
+    private static final int DATA_FIELD = 3;
+    private static final long NO_KEY = -1;
+
+    private final Record aggregated;
+    private final String shardIterator;
+    private final String shardId;
+    private final List<String> partitionKeys;
+    private final List<String> explicitHashKeys;
+    private final List<SubRecord> subRecords;
+    private KinesisRecord next;
+    private boolean finished;
+    private int nextSubSequenceNumber;
+
+    private RecordDeaggregator(Record aggregated, String shardIterator, String shardId,
+                               AggregatedRecord parsed) {
+        this.aggregated = aggregated;
+        this.shardIterator = shardIterator;
+        this.shardId = shardId;
+        this.partitionKeys = parsed.partitionKeys;
+        this.explicitHashKeys = parsed.explicitHashKeys;
+        this.subRecords = parsed.subRecords;
+    }
+
+    /***
+     * Deaggregates all given records into one list, keeping their order.
+     */
+    public static List<KinesisRecord> deaggregate(List<Record> records, String shardIterator,
+                                                  String shardId) {
+        List<KinesisRecord> result = new ArrayList<>(records.size());
+        for (Record record : records) {
+            Iterator<KinesisRecord> subRecords = deaggregate(record, shardIterator, shardId);
+            while (subRecords.hasNext()) {
+                result.add(subRecords.next());
+            }
+        }
+        return result;
+    }
+
+    /***
+     * @return iterator over sub-records of the given record if it is a valid aggregated record,
+     *     otherwise over the record itself
+     */
+    public static Iterator<KinesisRecord> deaggregate(Record record, String shardIterator,
+                                                      String shardId) {
+        ByteBuffer body = aggregatedBody(record.getData());
+        if (body != null) {
+            try {
+                return new RecordDeaggregator(record, shardIterator, shardId, parse(body));
+            } catch (MalformedRecordException | BufferUnderflowException e) {
+                // not a protobuf after all, so it must be a regular record
+            }
+        }
+        return Collections.singletonList(
+                new KinesisRecord(false, record, 0L, null, shardIterator, shardId)).iterator();
+    }
+
+    /***
+     * @return true if data start with magic bytes of aggregated record
+     */
+    public static boolean hasAggregatedRecordMagic(ByteBuffer data) {
+        if (data == null || data.remaining() < AGGREGATED_RECORD_MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < AGGREGATED_RECORD_MAGIC.length; ++i) {
+            if (data.get(data.position() + i) != AGGREGATED_RECORD_MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !finished) {
+            next = parseNext();
+            finished = next == null;
+        }
+        return next != null;
+    }
+
+    @Override
+    public KinesisRecord next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        KinesisRecord record = next;
+        next = null;
+        return record;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /***
+     * Sub-record referring to a missing key ends the iteration,
+     * as in {@link UserRecord#deaggregate(List)}.
+     */
+    private KinesisRecord parseNext() {
+        if (nextSubSequenceNumber == subRecords.size()) {
+            return null;
+        }
+        try {
+            SubRecord subRecord = subRecords.get(nextSubSequenceNumber);
+            String partitionKey = lookUp(partitionKeys, subRecord.partitionKeyIndex);
+            String explicitHashKey = subRecord.explicitHashKeyIndex == NO_KEY ?
+                    null : lookUp(explicitHashKeys, subRecord.explicitHashKeyIndex);
+
+            Record record = new Record()
+                    .withData(subRecord.data)
+                    .withPartitionKey(partitionKey)
+                    .withSequenceNumber(aggregated.getSequenceNumber())
+                    .withApproximateArrivalTimestamp(aggregated.getApproximateArrivalTimestamp());
+            return new KinesisRecord(true, record, nextSubSequenceNumber++, explicitHashKey,
+                    shardIterator, shardId);
+        } catch (MalformedRecordException e) {
+            LOG.error("Skipping rest of aggregated record {}", aggregated.getSequenceNumber(), e);
+            return null;
+        }
+    }
+
+    private static String lookUp(List<String> table, long index)
+            throws MalformedRecordException {
+        if (index < 0 || index >= table.size()) {
+            throw new MalformedRecordException("Key index out of range: " + index);
+        }
+        return table.get((int) index);
+    }
+
+    /***
+     * @return protobuf part of the record if it has magic bytes and correct digest, else null
+     */
+    private static ByteBuffer aggregatedBody(ByteBuffer data) {
+        if (!hasAggregatedRecordMagic(data) ||
+                data.remaining() < AGGREGATED_RECORD_MAGIC.length + DIGEST_SIZE) {
+            return null;
+        }
+        ByteBuffer body = data.duplicate();
+        body.position(data.position() + AGGREGATED_RECORD_MAGIC.length);
+        body.limit(data.limit() - DIGEST_SIZE);
+
+        MessageDigest md5 = newMd5();
+        md5.update(body.duplicate());
+        byte[] digest = md5.digest();
+        for (int i = 0; i < DIGEST_SIZE; ++i) {
+            if (digest[i] != data.get(body.limit() + i)) {
+                return null;
+            }
+        }
+        return body;
+    }
+
+    public static MessageDigest newMd5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+
+    /***
+     * Reads key tables and sub-records, checking that the whole protobuf is well formed,
+     * i.e. sub-records have all required fields.
+     */
+    private static AggregatedRecord parse(ByteBuffer body) throws MalformedRecordException {
+        AggregatedRecord parsed = new AggregatedRecord();
+        while (body.hasRemaining()) {
+            long tag = readVarint(body);
+            long field = tag >>> 3;
+            int wireType = (int) (tag & 7);
+            if (field == PARTITION_KEY_TABLE_FIELD && wireType == WIRE_TYPE_LENGTH_DELIMITED) {
+                parsed.partitionKeys.add(readString(body));
+            } else if (field == EXPLICIT_HASH_KEY_TABLE_FIELD &&
+                    wireType == WIRE_TYPE_LENGTH_DELIMITED) {
+                parsed.explicitHashKeys.add(readString(body));
+            } else if (field == RECORDS_FIELD && wireType == WIRE_TYPE_LENGTH_DELIMITED) {
+                parsed.subRecords.add(parseSubRecord(readLengthDelimited(body)));
+            } else {
+                skipField(body, wireType);
+            }
+        }
+        return parsed;
+    }
+
+    private static SubRecord parseSubRecord(ByteBuffer message) throws MalformedRecordException {
+        SubRecord subRecord = new SubRecord();
+        while (message.hasRemaining()) {
+            long tag = readVarint(message);
+            long field = tag >>> 3;
+            int wireType = (int) (tag & 7);
+            if (field == PARTITION_KEY_INDEX_FIELD && wireType == WIRE_TYPE_VARINT) {
+                subRecord.partitionKeyIndex = readVarint(message);
+            } else if (field == EXPLICIT_HASH_KEY_INDEX_FIELD && wireType == WIRE_TYPE_VARINT) {
+                subRecord.explicitHashKeyIndex = readVarint(message);
+            } else if (field == DATA_FIELD && wireType == WIRE_TYPE_LENGTH_DELIMITED) {
+                subRecord.data = readLengthDelimited(message);
+            } else {
+                skipField(message, wireType);
+            }
+        }
+        if (subRecord.partitionKeyIndex == NO_KEY || subRecord.data == null) {
+            throw new MalformedRecordException("Missing required field of record");
+        }
+        return subRecord;
+    }
+
+    private static long readVarint(ByteBuffer buffer) throws MalformedRecordException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (!buffer.hasRemaining()) {
+                throw new MalformedRecordException("Truncated varint");
+            }
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new MalformedRecordException("Malformed varint");
+    }
+
+    /***
+     * @return slice of the buffer with the field, buffer is moved after the field
+     */
+    private static ByteBuffer readLengthDelimited(ByteBuffer buffer)
+            throws MalformedRecordException {
+        long length = readVarint(buffer);
+        if (length < 0 || length > buffer.remaining()) {
+            throw new MalformedRecordException("Length out of bounds");
+        }
+        ByteBuffer field = buffer.duplicate();
+        field.limit(buffer.position() + (int) length);
+        buffer.position(field.limit());
+        return field.slice();
+    }
+
+    private static String readString(ByteBuffer buffer) throws MalformedRecordException {
+        return Charsets.UTF_8.decode(readLengthDelimited(buffer)).toString();
+    }
+
+    private static void skipField(ByteBuffer buffer, int wireType)
+            throws MalformedRecordException {
+        switch (wireType) {
+            case WIRE_TYPE_VARINT:
+                readVarint(buffer);
+                break;
+            case WIRE_TYPE_FIXED64:
+                skipBytes(buffer, 8);
+                break;
+            case WIRE_TYPE_LENGTH_DELIMITED:
+                readLengthDelimited(buffer);
+                break;
+            case WIRE_TYPE_FIXED32:
+                skipBytes(buffer, 4);
+                break;
+            default:
+                throw new MalformedRecordException("Unsupported wire type " + wireType);
+        }
+    }
+
+    private static void skipBytes(ByteBuffer buffer, int count) throws MalformedRecordException {
+        if (buffer.remaining() < count) {
+            throw new MalformedRecordException("Truncated field");
+        }
+        buffer.position(buffer.position() + count);
+    }
+
+    /***
+     * Key tables and sub-records of an aggregated record.
+     */
+    private static class AggregatedRecord {
+        private final List<String> partitionKeys = new ArrayList<>();
+        private final List<String> explicitHashKeys = new ArrayList<>();
+        private final List<SubRecord> subRecords = new ArrayList<>();
+    }
+
+    /***
+     * Fields of a sub-record, with data as a slice of the original record.
+     */
+    private static class SubRecord {
+        private long partitionKeyIndex = NO_KEY;
+        private long explicitHashKeyIndex = NO_KEY;
+        private ByteBuffer data;
+    }
+
+    /***
+     * Thrown when record with magic bytes turns out not to be a valid aggregated record.
+     */
+    private static class MalformedRecordException extends Exception {
+        MalformedRecordException(String message) {
+            super(message);
+        }
+    }
+}
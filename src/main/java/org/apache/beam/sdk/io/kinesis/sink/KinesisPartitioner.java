@@ -0,0 +1,36 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.sink;
+
+import java.io.Serializable;
+
+/***
+ * Decides where in the stream each record written by {@link KinesisSink} goes.
+ * <p>
+ * Kinesis maps partition key to a shard through MD5 hash of the key, unless an explicit hash key
+ * is given. Records with the same partition key land in the same shard.
+ */
+public interface KinesisPartitioner extends Serializable {
+    String getPartitionKey(byte[] value);
+
+    /***
+     * @return explicit hash key (decimal 128-bit number) of the record, null to use hash of
+     * the partition key
+     */
+    String getExplicitHashKey(byte[] value);
+}
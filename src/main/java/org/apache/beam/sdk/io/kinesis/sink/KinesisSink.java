@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.sink;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkNotNull;
+import org.apache.beam.sdk.io.kinesis.client.KinesisClientProvider;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PDone;
+
+/***
+ * Writes byte arrays as records of a Kinesis stream, see {@link KinesisWriter}.
+ */
+public class KinesisSink extends PTransform<PCollection<byte[]>, PDone> {
+    private final KinesisClientProvider kinesis;
+    private final String streamName;
+    private final WriterSettings settings;
+
+    public KinesisSink(KinesisClientProvider kinesis, String streamName,
+                       WriterSettings settings) {
+        checkNotNull(kinesis);
+        checkNotNull(streamName);
+        checkNotNull(settings);
+
+        this.kinesis = kinesis;
+        this.streamName = streamName;
+        this.settings = settings;
+    }
+
+    @Override
+    public PDone apply(PCollection<byte[]> input) {
+        input.apply(ParDo.named("WriteToKinesis")
+                .of(new KinesisWriterFn(kinesis, streamName, settings)));
+        return PDone.in(input.getPipeline());
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.sink;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkArgument;
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkNotNull;
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Lists.newArrayList;
+import org.apache.beam.sdk.io.kinesis.client.SimplifiedKinesisClient;
+import org.apache.beam.sdk.repackaged.com.google.common.base.Charsets;
+import org.apache.beam.sdk.repackaged.com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/***
+ * Writes records to a stream in PutRecords batches of up to {@link #MAX_BATCH_RECORDS} records
+ * and {@link #MAX_BATCH_BYTES} bytes (partition keys included), the limits of a single call.
+ * <p>
+ * Full batches are put in the background, up to {@code maxInFlightBatches} at once, while
+ * the following records are batched; {@link #write} blocks only when that many calls are
+ * running. {@link #flush()} puts the last partial batch and waits for all calls to finish.
+ * Calls of all writers in the JVM are made by a shared pool of threads, which are kept for
+ * a minute after their last call, so a writer is cheap to create and needs no closing.
+ * Records rejected by a call are put again by {@link SimplifiedKinesisClient#putRecords}; a batch
+ * which still fails makes the next {@link #write} or {@link #flush()} throw.
+ * <p>
+ * As batches are put concurrently, records are not guaranteed to be written in order.
+ */
+class KinesisWriter {
+    static final int MAX_BATCH_RECORDS = 500;
+    static final long MAX_BATCH_BYTES = 5L * 1024 * 1024;
+    static final long MAX_RECORD_BYTES = 1024 * 1024;
+
+    private static final ExecutorService SHARED_EXECUTOR = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("kinesis-writer-%d")
+                    .build());
+
+    private final SimplifiedKinesisClient kinesis;
+    private final String streamName;
+    private final int maxInFlightBatches;
+    private final Semaphore inFlight;
+    private final ExecutorService executor;
+    private List<PutRecordsRequestEntry> batch = newArrayList();
+    private long batchBytes;
+    private volatile Throwable failure;
+
+    public KinesisWriter(SimplifiedKinesisClient kinesis, String streamName,
+                         int maxInFlightBatches) {
+        checkNotNull(kinesis);
+        checkNotNull(streamName);
+        checkArgument(maxInFlightBatches > 0, "Number of batches in flight must be positive");
+
+        this.kinesis = kinesis;
+        this.streamName = streamName;
+        this.maxInFlightBatches = maxInFlightBatches;
+        this.inFlight = new Semaphore(maxInFlightBatches);
+        this.executor = SHARED_EXECUTOR;
+    }
+
+    public void write(PutRecordsRequestEntry record) throws IOException {
+        rethrowFailure();
+        long size = sizeOf(record);
+        checkArgument(size <= MAX_RECORD_BYTES,
+                "Record of %s bytes exceeds the limit of Kinesis", size);
+        if (batch.size() == MAX_BATCH_RECORDS || batchBytes + size > MAX_BATCH_BYTES) {
+            putBatch();
+        }
+        batch.add(record);
+        batchBytes += size;
+    }
+
+    /***
+     * Puts all records written so far and waits until they're in Kinesis.
+     */
+    public void flush() throws IOException {
+        if (!batch.isEmpty()) {
+            putBatch();
+        }
+        awaitInFlight();
+        rethrowFailure();
+    }
+
+    /***
+     * Waits until batches already being put are finished, without putting the records batched
+     * since then. Lets a writer whose records are abandoned stop using the client.
+     */
+    public void awaitInFlight() throws IOException {
+        acquire(maxInFlightBatches);
+        inFlight.release(maxInFlightBatches);
+    }
+
+    static long sizeOf(PutRecordsRequestEntry record) {
+        return record.getData().remaining() +
+                record.getPartitionKey().getBytes(Charsets.UTF_8).length;
+    }
+
+    private void putBatch() throws IOException {
+        final List<PutRecordsRequestEntry> records = batch;
+        batch = newArrayList();
+        batchBytes = 0;
+        acquire(1);
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        kinesis.putRecords(streamName, records);
+                    } catch (IOException | RuntimeException e) {
+                        if (failure == null) {
+                            failure = e;
+                        }
+                    } finally {
+                        inFlight.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private void acquire(int permits) throws IOException {
+        try {
+            inFlight.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for records to be put");
+        }
+    }
+
+    private void rethrowFailure() throws IOException {
+        Throwable e = failure;
+        if (e != null) {
+            throw new IOException("Writing records to " + streamName + " failed", e);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.sink;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkNotNull;
+import org.apache.beam.sdk.io.kinesis.client.KinesisClientProvider;
+import org.apache.beam.sdk.io.kinesis.client.SimplifiedKinesisClient;
+import org.apache.beam.sdk.transforms.DoFn;
+
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/***
+ * Writes every bundle through its own {@link KinesisWriter}, which is flushed when the bundle
+ * finishes, so that the bundle is committed only once its records are in Kinesis.
+ * The shared client is released when the bundle finishes or fails, as the instance may be
+ * discarded by the runner afterwards, but only once batches already being put are finished.
+ */
+class KinesisWriterFn extends DoFn<byte[], Void> {
+    private static final Logger LOG = LoggerFactory.getLogger(KinesisWriterFn.class);
+
+    private final KinesisClientProvider kinesis;
+    private final String streamName;
+    private final WriterSettings settings;
+    private transient SimplifiedKinesisClient client;
+    private transient KinesisWriter writer;
+    private transient RecordAggregator aggregator;
+
+    KinesisWriterFn(KinesisClientProvider kinesis, String streamName, WriterSettings settings) {
+        checkNotNull(kinesis);
+        checkNotNull(streamName);
+        checkNotNull(settings);
+
+        this.kinesis = kinesis;
+        this.streamName = streamName;
+        this.settings = settings;
+    }
+
+    @Override
+    public void startBundle(Context c) throws Exception {
+        release();
+        client = SimplifiedKinesisClient.shared(kinesis, settings.getRetryPolicy());
+        if (settings.isAggregationEnabled()) {
+            try {
+                aggregator = new RecordAggregator(new ShardMap(client.listShards(streamName)),
+                        settings.getMaxAggregatedRecordBytes());
+            } catch (IOException e) {
+                release();
+                throw e;
+            }
+        }
+        writer = new KinesisWriter(client, streamName, settings.getMaxInFlightBatches());
+    }
+
+    @Override
+    public void processElement(ProcessContext c) throws Exception {
+        byte[] value = c.element();
+        KinesisPartitioner partitioner = settings.getPartitioner();
+        try {
+            PutRecordsRequestEntry record = new PutRecordsRequestEntry()
+                    .withData(ByteBuffer.wrap(value))
+                    .withPartitionKey(partitioner.getPartitionKey(value))
+                    .withExplicitHashKey(partitioner.getExplicitHashKey(value));
+            if (aggregator == null) {
+                writer.write(record);
+            } else {
+                write(aggregator.add(record));
+            }
+        } catch (Exception e) {
+            // finishBundle won't be called for the failed bundle
+            release();
+            throw e;
+        }
+    }
+
+    @Override
+    public void finishBundle(Context c) throws Exception {
+        try {
+            if (aggregator != null) {
+                write(aggregator.drain());
+            }
+            writer.flush();
+        } finally {
+            release();
+        }
+    }
+
+    /***
+     * Batches still being put by a writer which wasn't flushed must finish before the client
+     * is released, otherwise they could run against a client which is being shut down.
+     */
+    private void release() {
+        try {
+            if (writer != null) {
+                writer.awaitInFlight();
+            }
+        } catch (IOException e) {
+            LOG.warn("Releasing client before records of abandoned bundle were put", e);
+        } finally {
+            writer = null;
+            aggregator = null;
+            if (client != null) {
+                client.close();
+                client = null;
+            }
+        }
+    }
+
+    private void write(List<PutRecordsRequestEntry> records) throws IOException {
+        for (PutRecordsRequestEntry record : records) {
+            writer.write(record);
+        }
+    }
+}
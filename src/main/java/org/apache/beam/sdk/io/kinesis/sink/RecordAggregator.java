@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.sink;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkArgument;
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkNotNull;
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Lists.newArrayList;
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Maps.newLinkedHashMap;
+import org.apache.beam.sdk.io.kinesis.client.response.RecordDeaggregator;
+import org.apache.beam.sdk.repackaged.com.google.common.base.Charsets;
+
+import com.amazonaws.services.kinesis.clientlibrary.types.UserRecord;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+/***
+ * Packs records going to the same shard (see {@link ShardMap}) into aggregated records in the
+ * format of Kinesis Producer Library, which are unpacked by {@link RecordDeaggregator} and
+ * {@link UserRecord#deaggregate(List)}: magic bytes, protobuf encoded {@code AggregatedRecord}
+ * and MD5 digest of the protobuf part.
+ * <p>
+ * Aggregated record is put with partition key of its first record and hash key of that record
+ * as explicit hash key, so it lands in the shard of all its records, as long as the map of
+ * shards is up to date. Records of each shard are collected until the next one would make
+ * the aggregated record (partition key included) larger than {@code maxBytes}. Aggregate of
+ * a single record is put as the plain record, so are records too large to be aggregated and
+ * records of hash keys not covered by any known shard.
+ */
+class RecordAggregator {
+    private static final int WIRE_TYPE_VARINT = 0;
+    private static final int WIRE_TYPE_LENGTH_DELIMITED = 2;
+
+    private static final int PARTITION_KEY_TABLE_FIELD = 1;
+    private static final int EXPLICIT_HASH_KEY_TABLE_FIELD = 2;
+    private static final int RECORDS_FIELD = 3;
+    private static final int PARTITION_KEY_INDEX_FIELD = 1;
+    private static final int EXPLICIT_HASH_KEY_INDEX_FIELD = 2;
+    private static final int DATA_FIELD = 3;
+
+    private final ShardMap shardMap;
+    private final long maxBytes;
+    private final Map<String, Aggregate> aggregates = newLinkedHashMap();
+
+    public RecordAggregator(ShardMap shardMap, long maxBytes) {
+        checkNotNull(shardMap);
+        checkArgument(maxBytes > 0, "Size of aggregated record must be positive");
+
+        this.shardMap = shardMap;
+        this.maxBytes = maxBytes;
+    }
+
+    /***
+     * @return records ready to be put, as the given one didn't fit into its aggregate
+     */
+    public List<PutRecordsRequestEntry> add(PutRecordsRequestEntry record) {
+        BigInteger hashKey = ShardMap.hashKeyOf(record.getPartitionKey(),
+                record.getExplicitHashKey());
+        String shardId = shardMap.shardIdOf(hashKey);
+        List<PutRecordsRequestEntry> ready = newArrayList();
+        if (shardId == null) {
+            ready.add(record);
+            return ready;
+        }
+        Aggregate aggregate = aggregates.get(shardId);
+        if (aggregate != null && aggregate.sizeWith(record) > maxBytes) {
+            ready.add(aggregate.toRecord());
+            aggregate = null;
+        }
+        if (aggregate == null) {
+            aggregate = new Aggregate(record.getPartitionKey(), hashKey);
+            if (aggregate.sizeWith(record) > maxBytes) {
+                aggregates.remove(shardId);
+                ready.add(record);
+                return ready;
+            }
+            aggregates.put(shardId, aggregate);
+        }
+        aggregate.add(record);
+        return ready;
+    }
+
+    /***
+     * @return all records collected so far, the aggregator is empty afterwards
+     */
+    public List<PutRecordsRequestEntry> drain() {
+        List<PutRecordsRequestEntry> ready = newArrayList();
+        for (Aggregate aggregate : aggregates.values()) {
+            ready.add(aggregate.toRecord());
+        }
+        aggregates.clear();
+        return ready;
+    }
+
+    /***
+     * Records of a single aggregated record, with protobuf of the sub-records already encoded.
+     */
+    private static class Aggregate {
+        private final String partitionKey;
+        private final BigInteger hashKey;
+        private final Map<String, Integer> partitionKeyIndexes = newLinkedHashMap();
+        private final Map<String, Integer> explicitHashKeyIndexes = newLinkedHashMap();
+        private final List<PutRecordsRequestEntry> records = newArrayList();
+        private final ByteArrayOutputStream subRecords = new ByteArrayOutputStream();
+        private long protobufSize;
+
+        Aggregate(String partitionKey, BigInteger hashKey) {
+            this.partitionKey = partitionKey;
+            this.hashKey = hashKey;
+        }
+
+        long sizeWith(PutRecordsRequestEntry record) {
+            return RecordDeaggregator.AGGREGATED_RECORD_MAGIC.length +
+                    protobufSize + protobufSizeOf(record) +
+                    RecordDeaggregator.DIGEST_SIZE + utf8(partitionKey).length;
+        }
+
+        void add(PutRecordsRequestEntry record) {
+            protobufSize += protobufSizeOf(record);
+            ByteArrayOutputStream message = new ByteArrayOutputStream();
+            writeVarintField(message, PARTITION_KEY_INDEX_FIELD,
+                    indexOf(partitionKeyIndexes, record.getPartitionKey()));
+            if (record.getExplicitHashKey() != null) {
+                writeVarintField(message, EXPLICIT_HASH_KEY_INDEX_FIELD,
+                        indexOf(explicitHashKeyIndexes, record.getExplicitHashKey()));
+            }
+            writeBytesField(message, DATA_FIELD, bytesOf(record.getData()));
+            writeBytesField(subRecords, RECORDS_FIELD, message.toByteArray());
+            records.add(record);
+        }
+
+        PutRecordsRequestEntry toRecord() {
+            if (records.size() == 1) {
+                return records.get(0);
+            }
+            ByteArrayOutputStream protobuf = new ByteArrayOutputStream();
+            for (String key : partitionKeyIndexes.keySet()) {
+                writeBytesField(protobuf, PARTITION_KEY_TABLE_FIELD, utf8(key));
+            }
+            for (String key : explicitHashKeyIndexes.keySet()) {
+                writeBytesField(protobuf, EXPLICIT_HASH_KEY_TABLE_FIELD, utf8(key));
+            }
+            byte[] subRecordBytes = subRecords.toByteArray();
+            protobuf.write(subRecordBytes, 0, subRecordBytes.length);
+            byte[] body = protobuf.toByteArray();
+
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            byte[] magic = RecordDeaggregator.AGGREGATED_RECORD_MAGIC;
+            data.write(magic, 0, magic.length);
+            data.write(body, 0, body.length);
+            byte[] digest = RecordDeaggregator.newMd5().digest(body);
+            data.write(digest, 0, digest.length);
+            return new PutRecordsRequestEntry()
+                    .withData(ByteBuffer.wrap(data.toByteArray()))
+                    .withPartitionKey(partitionKey)
+                    .withExplicitHashKey(hashKey.toString());
+        }
+
+        /***
+         * @return by how much the protobuf grows with the record, new keys included
+         */
+        private long protobufSizeOf(PutRecordsRequestEntry record) {
+            long size = 0;
+            long message = 0;
+            String recordPartitionKey = record.getPartitionKey();
+            Integer partitionKeyIndex = partitionKeyIndexes.get(recordPartitionKey);
+            if (partitionKeyIndex == null) {
+                size += bytesFieldSize(utf8(recordPartitionKey).length);
+                partitionKeyIndex = partitionKeyIndexes.size();
+            }
+            message += varintFieldSize(partitionKeyIndex);
+            String explicitHashKey = record.getExplicitHashKey();
+            if (explicitHashKey != null) {
+                Integer explicitHashKeyIndex = explicitHashKeyIndexes.get(explicitHashKey);
+                if (explicitHashKeyIndex == null) {
+                    size += bytesFieldSize(utf8(explicitHashKey).length);
+                    explicitHashKeyIndex = explicitHashKeyIndexes.size();
+                }
+                message += varintFieldSize(explicitHashKeyIndex);
+            }
+            message += bytesFieldSize(record.getData().remaining());
+            return size + bytesFieldSize(message);
+        }
+    }
+
+    private static int indexOf(Map<String, Integer> indexes, String key) {
+        Integer index = indexes.get(key);
+        if (index == null) {
+            index = indexes.size();
+            indexes.put(key, index);
+        }
+        return index;
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(Charsets.UTF_8);
+    }
+
+    private static byte[] bytesOf(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private static long bytesFieldSize(long length) {
+        return 1 + varintSize(length) + length;
+    }
+
+    private static long varintFieldSize(long value) {
+        return 1 + varintSize(value);
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            ++size;
+        }
+        return size;
+    }
+
+    private static void writeVarintField(ByteArrayOutputStream out, int field, long value) {
+        writeVarint(out, field << 3 | WIRE_TYPE_VARINT);
+        writeVarint(out, value);
+    }
+
+    private static void writeBytesField(ByteArrayOutputStream out, int field, byte[] bytes) {
+        writeVarint(out, field << 3 | WIRE_TYPE_LENGTH_DELIMITED);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            out.write((int) (remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        out.write((int) remaining);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.sink;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Lists.newArrayList;
+import org.apache.beam.sdk.io.kinesis.client.response.RecordDeaggregator;
+import org.apache.beam.sdk.io.kinesis.source.ShardLineage;
+import org.apache.beam.sdk.repackaged.com.google.common.base.Charsets;
+
+import com.amazonaws.services.kinesis.model.Shard;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/***
+ * Finds the open shard, which receives records with given hash key. Just like in Kinesis,
+ * hash key of a record is its explicit hash key or, if it has none, MD5 digest of its partition
+ * key, taken as an unsigned 128-bit integer.
+ */
+class ShardMap {
+    private final List<Shard> shards;
+    private final List<BigInteger> startingHashKeys = newArrayList();
+
+    ShardMap(List<Shard> shards) {
+        this.shards = newArrayList(new ShardLineage(shards).getOpenShards());
+        Collections.sort(this.shards, new Comparator<Shard>() {
+            @Override
+            public int compare(Shard first, Shard second) {
+                return startingHashKeyOf(first).compareTo(startingHashKeyOf(second));
+            }
+        });
+        for (Shard shard : this.shards) {
+            startingHashKeys.add(startingHashKeyOf(shard));
+        }
+    }
+
+    public static BigInteger hashKeyOf(String partitionKey, String explicitHashKey) {
+        if (explicitHashKey != null) {
+            return new BigInteger(explicitHashKey);
+        }
+        return new BigInteger(1,
+                RecordDeaggregator.newMd5().digest(partitionKey.getBytes(Charsets.UTF_8)));
+    }
+
+    /***
+     * @return id of the shard, null if no open shard covers the hash key
+     */
+    public String shardIdOf(BigInteger hashKey) {
+        int index = Collections.binarySearch(startingHashKeys, hashKey);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        if (index < 0) {
+            return null;
+        }
+        Shard shard = shards.get(index);
+        if (hashKey.compareTo(new BigInteger(shard.getHashKeyRange().getEndingHashKey())) > 0) {
+            return null;
+        }
+        return shard.getShardId();
+    }
+
+    private static BigInteger startingHashKeyOf(Shard shard) {
+        return new BigInteger(shard.getHashKeyRange().getStartingHashKey());
+    }
+}
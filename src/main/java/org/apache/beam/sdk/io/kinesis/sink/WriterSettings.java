@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.sink;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkArgument;
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkNotNull;
+import org.apache.beam.sdk.io.kinesis.client.RetryPolicy;
+
+import java.io.Serializable;
+
+/***
+ * Tuning knobs of {@link KinesisWriter}, shared by all instances of a single {@link KinesisSink}.
+ * This class is immutable, every "with" method returns a modified copy.
+ */
+public class WriterSettings implements Serializable {
+    public static final int DEFAULT_MAX_IN_FLIGHT_BATCHES = 8;
+    public static final int DEFAULT_MAX_AGGREGATED_RECORD_BYTES = 50 * 1024;
+
+    private KinesisPartitioner partitioner = new DataHashPartitioner();
+    private int maxInFlightBatches = DEFAULT_MAX_IN_FLIGHT_BATCHES;
+    private RetryPolicy retryPolicy = RetryPolicy.defaults();
+    private int maxAggregatedRecordBytes;
+
+    private WriterSettings() {
+    }
+
+    private WriterSettings(WriterSettings other) {
+        this.partitioner = other.partitioner;
+        this.maxInFlightBatches = other.maxInFlightBatches;
+        this.retryPolicy = other.retryPolicy;
+        this.maxAggregatedRecordBytes = other.maxAggregatedRecordBytes;
+    }
+
+    public static WriterSettings defaults() {
+        return new WriterSettings();
+    }
+
+    public WriterSettings withPartitioner(KinesisPartitioner partitioner) {
+        checkNotNull(partitioner);
+        WriterSettings copy = new WriterSettings(this);
+        copy.partitioner = partitioner;
+        return copy;
+    }
+
+    /***
+     * Number of PutRecords calls each writer keeps running at once, while it keeps batching
+     * the following records.
+     */
+    public WriterSettings withMaxInFlightBatches(int maxInFlightBatches) {
+        checkArgument(maxInFlightBatches > 0, "Number of batches in flight must be positive");
+        WriterSettings copy = new WriterSettings(this);
+        copy.maxInFlightBatches = maxInFlightBatches;
+        return copy;
+    }
+
+    /***
+     * Failed PutRecords calls and records rejected by them are retried according to this
+     * policy.
+     */
+    public WriterSettings withRetryPolicy(RetryPolicy retryPolicy) {
+        checkNotNull(retryPolicy);
+        WriterSettings copy = new WriterSettings(this);
+        copy.retryPolicy = retryPolicy;
+        return copy;
+    }
+
+    /***
+     * Records going to the same shard are packed into aggregated records of Kinesis Producer
+     * Library format, of up to given size. Consumers have to deaggregate them, as
+     * {@code KinesisIO.Read} and KCL do.
+     */
+    public WriterSettings withAggregation(int maxAggregatedRecordBytes) {
+        checkArgument(maxAggregatedRecordBytes > 0 &&
+                        maxAggregatedRecordBytes <= KinesisWriter.MAX_RECORD_BYTES,
+                "Size of aggregated records must be positive and at most %s",
+                KinesisWriter.MAX_RECORD_BYTES);
+        WriterSettings copy = new WriterSettings(this);
+        copy.maxAggregatedRecordBytes = maxAggregatedRecordBytes;
+        return copy;
+    }
+
+    public KinesisPartitioner getPartitioner() {
+        return partitioner;
+    }
+
+    public int getMaxInFlightBatches() {
+        return maxInFlightBatches;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    public boolean isAggregationEnabled() {
+        return maxAggregatedRecordBytes > 0;
+    }
+
+    public int getMaxAggregatedRecordBytes() {
+        return maxAggregatedRecordBytes;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkArgument;
+import org.apache.beam.sdk.io.kinesis.client.response.KinesisRecord;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/***
+ * Chooses the limit of records for the next GetRecords call on a single shard.
+ * <p>
+ * While the shard is far behind the tip of the stream, batches are as large as possible,
+ * i.e. as large as the memory budget of the shard allows given the average record size and
+ * records already buffered. When the shard is tailing the stream, batches are kept close to
+ * what recent calls actually returned, so that a burst of data can't produce a huge response.
+ */
+class BatchLimitTuner {
+    static final int MAX_LIMIT = 10000;
+    static final int INITIAL_LIMIT = 100;
+    static final int MIN_TAILING_LIMIT = 100;
+    static final long CATCHING_UP_THRESHOLD_MILLIS = 10000;
+    private static final double SMOOTHING = 0.2;
+
+    private final long memoryBudget;
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private boolean observed;
+    private double averageRecordSize;
+    private double averageBatchSize;
+    private long millisBehindLatest;
+
+    /***
+     * @param memoryBudget - how many bytes of records of this shard can be held in memory.
+     */
+    public BatchLimitTuner(long memoryBudget) {
+        checkArgument(memoryBudget > 0, "Memory budget must be positive");
+        this.memoryBudget = memoryBudget;
+    }
+
+    public synchronized int nextLimit() {
+        if (!observed) {
+            return INITIAL_LIMIT;
+        }
+        double available = Math.max(0, memoryBudget - bufferedBytes.get());
+        double allowedByBudget = available / Math.max(1.0, averageRecordSize);
+        double wanted = isCatchingUp() ?
+                MAX_LIMIT : Math.max(MIN_TAILING_LIMIT, 2 * averageBatchSize);
+        return (int) Math.max(1, Math.min(MAX_LIMIT, Math.min(allowedByBudget, wanted)));
+    }
+
+    /***
+     * Updates statistics with the response of GetRecords call.
+     *
+     * @param recordCount - number of records before deaggregation.
+     * @param bytes - total size of records
+     */
+    public synchronized void recordResponse(int recordCount, long bytes, long millisBehind) {
+        if (recordCount > 0) {
+            averageRecordSize = smooth(averageRecordSize, (double) bytes / recordCount);
+        }
+        averageBatchSize = smooth(averageBatchSize, recordCount);
+        millisBehindLatest = millisBehind;
+        observed = true;
+    }
+
+    public void recordBuffered(long bytes) {
+        bufferedBytes.addAndGet(bytes);
+    }
+
+    public void recordConsumed(long bytes) {
+        bufferedBytes.addAndGet(-bytes);
+    }
+
+    public synchronized boolean isCatchingUp() {
+        return millisBehindLatest > CATCHING_UP_THRESHOLD_MILLIS;
+    }
+
+    private double smooth(double average, double sample) {
+        return observed ? average + SMOOTHING * (sample - average) : sample;
+    }
+
+    static long sizeOf(Iterable<KinesisRecord> records) {
+        long size = 0;
+        for (KinesisRecord record : records) {
+            size += record.getData().remaining();
+        }
+        return size;
+    }
+}
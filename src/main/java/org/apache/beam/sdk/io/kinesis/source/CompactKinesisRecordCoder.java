@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import org.apache.beam.sdk.coders.AtomicCoder;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.io.kinesis.client.response.CompactKinesisRecord;
+import org.apache.beam.sdk.util.VarInt;
+
+import org.joda.time.Instant;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+
+/***
+ * Coder of {@link CompactKinesisRecord}: payload and sequence number as length-prefixed bytes,
+ * shard id as number ({@link ShardIdCoder}) and the remaining numbers as variable-length
+ * integers. Shard id and arrival time are preceded by a byte telling whether they are present.
+ */
+public class CompactKinesisRecordCoder extends AtomicCoder<CompactKinesisRecord> {
+    private static final StringUtf8Coder STRING_CODER = StringUtf8Coder.of();
+    private static final ShardIdCoder SHARD_ID_CODER = ShardIdCoder.of();
+    private static final CompactKinesisRecordCoder INSTANCE = new CompactKinesisRecordCoder();
+
+    public static CompactKinesisRecordCoder of() {
+        return INSTANCE;
+    }
+
+    private CompactKinesisRecordCoder() {
+    }
+
+    @Override
+    public void encode(CompactKinesisRecord value, OutputStream outStream, Context context)
+            throws CoderException, IOException {
+        Context nested = Context.NESTED;
+        VarInt.encode(value.getDataSize(), outStream);
+        value.writeDataTo(outStream);
+
+        byte[] sequenceNumber = value.getSequenceNumberValue().toByteArray();
+        VarInt.encode(sequenceNumber.length, outStream);
+        outStream.write(sequenceNumber);
+        VarInt.encode(value.getSubSequenceNumber(), outStream);
+        STRING_CODER.encode(value.getPartitionKey(), outStream, nested);
+        outStream.write(value.getShardId() == null ? 0 : 1);
+        if (value.getShardId() != null) {
+            SHARD_ID_CODER.encode(value.getShardId(), outStream, nested);
+        }
+        Instant arrivalTimestamp = value.getApproximateArrivalTimestamp();
+        outStream.write(arrivalTimestamp == null ? 0 : 1);
+        if (arrivalTimestamp != null) {
+            VarInt.encode(arrivalTimestamp.getMillis(), outStream);
+        }
+    }
+
+    @Override
+    public CompactKinesisRecord decode(InputStream inStream, Context context)
+            throws CoderException, IOException {
+        Context nested = Context.NESTED;
+        byte[] data = SequenceNumberCoder.readFully(inStream, VarInt.decodeInt(inStream));
+        BigInteger sequenceNumber = new BigInteger(
+                SequenceNumberCoder.readFully(inStream, VarInt.decodeInt(inStream)));
+        long subSequenceNumber = VarInt.decodeLong(inStream);
+        String partitionKey = STRING_CODER.decode(inStream, nested);
+        String shardId = readPresence(inStream) ? SHARD_ID_CODER.decode(inStream, nested) : null;
+        Instant arrivalTimestamp = readPresence(inStream) ?
+                new Instant(VarInt.decodeLong(inStream)) : null;
+        return new CompactKinesisRecord(data, partitionKey, shardId, sequenceNumber,
+                subSequenceNumber, arrivalTimestamp);
+    }
+
+    private boolean readPresence(InputStream inStream) throws IOException {
+        int present = inStream.read();
+        if (present < 0) {
+            throw new CoderException("Unexpected end of stream");
+        }
+        return present != 0;
+    }
+}
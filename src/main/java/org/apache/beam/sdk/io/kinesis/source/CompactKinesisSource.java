@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkNotNull;
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Lists.newArrayList;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.io.UnboundedSource;
+import org.apache.beam.sdk.io.kinesis.client.response.CompactKinesisRecord;
+import org.apache.beam.sdk.io.kinesis.client.response.KinesisRecord;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.KinesisReaderCheckpoint;
+import org.apache.beam.sdk.options.PipelineOptions;
+
+import com.amazonaws.services.kinesis.model.Record;
+import org.joda.time.Instant;
+import java.io.IOException;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/***
+ * {@link KinesisSource} emitting {@link CompactKinesisRecord}s instead of {@link Record}s.
+ */
+public class CompactKinesisSource
+        extends UnboundedSource<CompactKinesisRecord, KinesisReaderCheckpoint> {
+    private final KinesisSource source;
+
+    public CompactKinesisSource(KinesisSource source) {
+        checkNotNull(source);
+        this.source = source;
+    }
+
+    @Override
+    public List<CompactKinesisSource> generateInitialSplits(int desiredNumSplits,
+                                                            PipelineOptions options)
+            throws Exception {
+        List<CompactKinesisSource> splits = newArrayList();
+        for (KinesisSource split : source.generateInitialSplits(desiredNumSplits, options)) {
+            splits.add(new CompactKinesisSource(split));
+        }
+        return splits;
+    }
+
+    @Override
+    public UnboundedReader<CompactKinesisRecord> createReader(
+            PipelineOptions options, KinesisReaderCheckpoint checkpointMark) {
+        return new CompactReader(this, source.createReader(options, checkpointMark));
+    }
+
+    @Override
+    public Coder<KinesisReaderCheckpoint> getCheckpointMarkCoder() {
+        return source.getCheckpointMarkCoder();
+    }
+
+    @Override
+    public void validate() {
+        source.validate();
+    }
+
+    @Override
+    public Coder<CompactKinesisRecord> getDefaultOutputCoder() {
+        return CompactKinesisRecordCoder.of();
+    }
+
+    /***
+     * Converts records of {@link KinesisReader}, once per record.
+     */
+    private static class CompactReader extends UnboundedReader<CompactKinesisRecord> {
+        private final CompactKinesisSource source;
+        private final UnboundedReader<Record> reader;
+        private CompactKinesisRecord current;
+
+        CompactReader(CompactKinesisSource source, UnboundedReader<Record> reader) {
+            this.source = source;
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean start() throws IOException {
+            current = null;
+            return reader.start();
+        }
+
+        @Override
+        public boolean advance() throws IOException {
+            current = null;
+            return reader.advance();
+        }
+
+        @Override
+        public CompactKinesisRecord getCurrent() throws NoSuchElementException {
+            if (current == null) {
+                current = CompactKinesisRecord.from((KinesisRecord) reader.getCurrent());
+            }
+            return current;
+        }
+
+        @Override
+        public Instant getCurrentTimestamp() throws NoSuchElementException {
+            return reader.getCurrentTimestamp();
+        }
+
+        @Override
+        public byte[] getCurrentRecordId() throws NoSuchElementException {
+            return reader.getCurrentRecordId();
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+
+        @Override
+        public Instant getWatermark() {
+            return reader.getWatermark();
+        }
+
+        @Override
+        public CheckpointMark getCheckpointMark() {
+            return reader.getCheckpointMark();
+        }
+
+        @Override
+        public long getSplitBacklogBytes() {
+            return reader.getSplitBacklogBytes();
+        }
+
+        @Override
+        public UnboundedSource<CompactKinesisRecord, ?> getCurrentSource() {
+            return source;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkNotNull;
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Iterables.getLast;
+import org.apache.beam.sdk.io.kinesis.client.SimplifiedKinesisClient;
+import org.apache.beam.sdk.io.kinesis.client.response.GetKinesisRecordsResult;
+import org.apache.beam.sdk.io.kinesis.client.response.KinesisRecord;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.ShardCheckpoint;
+import org.apache.beam.sdk.repackaged.com.google.common.base.Ticker;
+
+import com.amazonaws.services.kinesis.model.ExpiredIteratorException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Fetches records from Kinesis synchronously, in the calling thread.
+ * Keeps track of its own position in the shard (i.e. position after the last fetched record),
+ * which may be ahead of what the consumer of the records has already processed.
+ * <p>
+ * Calls to Kinesis are made only when allowed by {@link ShardReadLimiter}, otherwise no records
+ * are returned. Size of each batch is chosen by {@link BatchLimitTuner}.
+ * <p>
+ * Shard iterator is obtained on the first fetch, unless the initial checkpoint already knows
+ * one. Kinesis iterators expire after 5 minutes, so if the shard wasn't fetched for almost that
+ * long (e.g. because prefetched records weren't consumed), the iterator is renewed before it's
+ * used, instead of making a call which would be rejected.
+ * <p>
+ * Batches consisting only of records older than the start timestamp of the position still move
+ * the position forward, so that renewed iterators don't start skipping from the beginning again.
+ */
+class DirectRecordBatchFetcher implements RecordBatchFetcher {
+    static final long ITERATOR_RENEWAL_NANOS = TimeUnit.SECONDS.toNanos(270);
+    private static final Logger LOG = LoggerFactory.getLogger(DirectRecordBatchFetcher.class);
+
+    private final SimplifiedKinesisClient kinesis;
+    private final RecordFilter filter;
+    private final ShardReadLimiter limiter;
+    private final BatchLimitTuner limitTuner;
+    private final String shardId;
+    private final Ticker ticker;
+    private ShardCheckpoint position;
+    private String nextShardIterator;
+    private long shardIteratorObtainedAt;
+    private volatile boolean shardClosed;
+
+    public DirectRecordBatchFetcher(ShardCheckpoint initialCheckpoint,
+                                    SimplifiedKinesisClient kinesis,
+                                    RecordFilter filter,
+                                    ShardReadLimiter limiter,
+                                    BatchLimitTuner limitTuner) {
+        this(initialCheckpoint, kinesis, filter, limiter, limitTuner, Ticker.systemTicker());
+    }
+
+    public DirectRecordBatchFetcher(ShardCheckpoint initialCheckpoint,
+                                    SimplifiedKinesisClient kinesis,
+                                    RecordFilter filter,
+                                    ShardReadLimiter limiter,
+                                    BatchLimitTuner limitTuner,
+                                    Ticker ticker) {
+        checkNotNull(initialCheckpoint);
+        checkNotNull(kinesis);
+        checkNotNull(filter);
+        checkNotNull(limiter);
+        checkNotNull(limitTuner);
+        checkNotNull(ticker);
+
+        this.position = initialCheckpoint;
+        this.shardId = initialCheckpoint.getShardId();
+        this.kinesis = kinesis;
+        this.filter = filter;
+        this.limiter = limiter;
+        this.limitTuner = limitTuner;
+        this.ticker = ticker;
+        this.nextShardIterator = initialCheckpoint.getShardIterator();
+        this.shardIteratorObtainedAt = ticker.read();
+    }
+
+    @Override
+    public RecordBatch fetch() throws IOException {
+        if (isShardClosed()) {
+            return RecordBatch.withNoRecords(0);
+        }
+        if (!limiter.tryAcquireCall()) {
+            return RecordBatch.empty();
+        }
+
+        if (nextShardIterator == null ||
+                ticker.read() - shardIteratorObtainedAt >= ITERATOR_RENEWAL_NANOS) {
+            renewShardIterator();
+        }
+        int limit = limitTuner.nextLimit();
+        GetKinesisRecordsResult response;
+        try {
+            response = kinesis.getRecords(nextShardIterator, shardId, limit);
+        } catch (ExpiredIteratorException e) {
+            LOG.info("Refreshing expired iterator", e);
+            renewShardIterator();
+            response = kinesis.getRecords(nextShardIterator, shardId, limit);
+        }
+        LOG.debug("Fetched {} new records", response.getRecords().size());
+        nextShardIterator = response.getNextShardIterator();
+        shardIteratorObtainedAt = ticker.read();
+        shardClosed = nextShardIterator == null;
+        long bytes = BatchLimitTuner.sizeOf(response.getRecords());
+        limiter.recordBytesRead(bytes);
+        limitTuner.recordResponse(response.getKinesisRecordCount(), bytes,
+                response.getMillisBehindLatest());
+
+        List<KinesisRecord> records = filter.apply(response.getRecords(), position);
+        if (!records.isEmpty()) {
+            position = position.moveAfter(getLast(records));
+        } else if (!response.getRecords().isEmpty() &&
+                position.isBeforeStart(getLast(response.getRecords()))) {
+            position = position.moveAfter(getLast(response.getRecords()));
+        }
+        return new RecordBatch(records, response.getMillisBehindLatest());
+    }
+
+    private void renewShardIterator() throws IOException {
+        position = position.renewShardIterator(kinesis);
+        nextShardIterator = position.getShardIterator();
+        shardIteratorObtainedAt = ticker.read();
+        filter.rearm();
+    }
+
+    /***
+     * Closed shard is not called anymore, so it can be fetched right away.
+     */
+    @Override
+    public long nanosUntilNextFetch() {
+        return isShardClosed() ? 0 : limiter.nanosUntilNextCall();
+    }
+
+    @Override
+    public boolean isPushBased() {
+        return false;
+    }
+
+    /***
+     * Kinesis returns no next iterator once the last record of a closed shard was fetched.
+     */
+    @Override
+    public boolean isShardClosed() {
+        return shardClosed;
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Maps.newHashMap;
+
+import com.amazonaws.services.kinesis.model.HashKeyRange;
+import com.amazonaws.services.kinesis.model.Shard;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Map;
+
+/***
+ * Weighs shards by the width of their hash key ranges, i.e. by the share of partition keys
+ * they receive. Good enough when data are evenly spread over partition keys, but shards
+ * differ in size after resharding.
+ */
+public class HashKeyRangeShardWeigher implements ShardWeigher {
+    @Override
+    public Map<String, Double> weigh(String streamName, List<Shard> shards) {
+        Map<String, Double> weights = newHashMap();
+        for (Shard shard : shards) {
+            HashKeyRange range = shard.getHashKeyRange();
+            if (range != null) {
+                BigInteger width = new BigInteger(range.getEndingHashKey())
+                        .subtract(new BigInteger(range.getStartingHashKey()))
+                        .add(BigInteger.ONE);
+                weights.put(shard.getShardId(), width.doubleValue());
+            }
+        }
+        return weights;
+    }
+}
@@ -20,24 +20,37 @@ package org.apache.beam.sdk.io.kinesis.source;
 import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
         .checkNotNull;
 import static org.apache.beam.sdk.repackaged.com.google.common.collect.Lists.newArrayList;
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Maps.newHashMap;
 import org.apache.beam.sdk.io.UnboundedSource;
+import org.apache.beam.sdk.io.kinesis.client.EnhancedFanOutClient;
 import org.apache.beam.sdk.io.kinesis.client.SimplifiedKinesisClient;
 import org.apache.beam.sdk.io.kinesis.client.response.KinesisRecord;
 import org.apache.beam.sdk.io.kinesis.source.checkpoint.KinesisReaderCheckpoint;
 import org.apache.beam.sdk.io.kinesis.source.checkpoint.PositionInShard;
 import org.apache.beam.sdk.io.kinesis.source.checkpoint.ShardCheckpoint;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.ShardIteratorAcquirer;
 import org.apache.beam.sdk.io.kinesis.source.checkpoint.generator.CheckpointGenerator;
-import org.apache.beam.sdk.io.kinesis.utils.RoundRobin;
 import org.apache.beam.sdk.repackaged.com.google.common.base.CustomOptional;
 import org.apache.beam.sdk.repackaged.com.google.common.base.Optional;
+import org.apache.beam.sdk.repackaged.com.google.common.base.Ticker;
+import org.apache.beam.sdk.repackaged.com.google.common.collect.Iterables;
+import org.apache.beam.sdk.repackaged.com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 
 import com.amazonaws.services.kinesis.model.Record;
+import com.amazonaws.services.kinesis.model.Shard;
+import com.amazonaws.services.kinesis.model.ShardIteratorType;
 import org.joda.time.Instant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 
 /***
@@ -45,23 +58,54 @@ import java.util.NoSuchElementException;
  */
 class KinesisReader extends UnboundedSource.UnboundedReader<Record> {
     private static final Logger LOG = LoggerFactory.getLogger(KinesisReader.class);
+    private static final int MAX_PREFETCH_THREADS = 16;
+    static final long ADJACENT_PARENT_CHECK_NANOS = TimeUnit.SECONDS.toNanos(10);
 
     private final SimplifiedKinesisClient kinesis;
     private final UnboundedSource<Record, ?> source;
     private final CheckpointGenerator initialCheckpointGenerator;
-    private RoundRobin<ShardRecordsIterator> shardIterators;
+    private final ReaderSettings settings;
+    private final Ticker ticker;
+    private final ShardIteratorAcquirer iteratorAcquirer = ShardIteratorAcquirer.defaults();
+    private ShardPollScheduler shardIterators;
+    private final Map<String, ShardRecordsIterator> closedParents = newHashMap();
+    private final Map<String, ShardRecordsIterator> parentsWaitingForOtherReaders = newHashMap();
+    private long nextAdjacentParentCheckNanos;
+    private ScheduledExecutorService prefetchExecutor;
+    private EnhancedFanOutClient fanOutClient;
+    private long shardMemoryBudget;
     private Optional<KinesisRecord> currentRecord = CustomOptional.absent();
     private Optional<Instant> currendRecordTimestamp = CustomOptional.absent();
+    private Instant lastWatermark = BoundedWindow.TIMESTAMP_MIN_VALUE;
 
     public KinesisReader(SimplifiedKinesisClient kinesis,
                          CheckpointGenerator initialCheckpointGenerator,
                          UnboundedSource<Record, ?> source) {
+        this(kinesis, initialCheckpointGenerator, source, ReaderSettings.defaults());
+    }
+
+    public KinesisReader(SimplifiedKinesisClient kinesis,
+                         CheckpointGenerator initialCheckpointGenerator,
+                         UnboundedSource<Record, ?> source,
+                         ReaderSettings settings) {
+        this(kinesis, initialCheckpointGenerator, source, settings, Ticker.systemTicker());
+    }
+
+    KinesisReader(SimplifiedKinesisClient kinesis,
+                  CheckpointGenerator initialCheckpointGenerator,
+                  UnboundedSource<Record, ?> source,
+                  ReaderSettings settings,
+                  Ticker ticker) {
         checkNotNull(kinesis);
         checkNotNull(initialCheckpointGenerator);
+        checkNotNull(settings);
+        checkNotNull(ticker);
 
         this.kinesis = kinesis;
         this.source = source;
         this.initialCheckpointGenerator = initialCheckpointGenerator;
+        this.settings = settings;
+        this.ticker = ticker;
     }
 
     /***
@@ -72,29 +116,196 @@ class KinesisReader extends UnboundedSource.UnboundedReader<Record> {
         LOG.info("Starting reader using {}", initialCheckpointGenerator);
 
         KinesisReaderCheckpoint initialCheckpoint = initialCheckpointGenerator.generate(kinesis);
+        List<ShardCheckpoint> shardCheckpoints = newArrayList(initialCheckpoint);
+        // checkpoint may have no shards left, e.g. all of them handed over to other readers
+        shardMemoryBudget = Math.max(1,
+                settings.getMemoryBudget() / Math.max(1, shardCheckpoints.size()));
+        if (!settings.isEnhancedFanOutEnabled()) {
+            shardCheckpoints = withShardIterators(shardCheckpoints);
+        }
+        if (settings.isEnhancedFanOutEnabled()) {
+            fanOutClient = settings.getFanOutClientProvider().get();
+        } else if (settings.isPrefetchEnabled()) {
+            prefetchExecutor = Executors.newScheduledThreadPool(
+                    Math.max(1, Math.min(shardCheckpoints.size(), MAX_PREFETCH_THREADS)),
+                    new ThreadFactoryBuilder()
+                            .setDaemon(true)
+                            .setNameFormat("kinesis-prefetch-%d")
+                            .build());
+        }
+
         List<ShardRecordsIterator> iterators = newArrayList();
-        for (ShardCheckpoint checkpoint : initialCheckpoint) {
-            iterators.add(checkpoint.getShardRecordsIterator(kinesis));
+        for (ShardCheckpoint checkpoint : shardCheckpoints) {
+            iterators.add(createShardRecordsIterator(checkpoint));
         }
-        shardIterators = new RoundRobin<>(iterators);
+        shardIterators = new ShardPollScheduler(iterators,
+                settings.getShardSelectionPolicy(), ticker);
 
         return advance();
     }
 
+    /***
+     * Obtains iterators of all shards which don't have one yet (e.g. restored from persisted
+     * checkpoint) at once, instead of one by one on their first reads.
+     */
+    private List<ShardCheckpoint> withShardIterators(List<ShardCheckpoint> checkpoints)
+            throws IOException {
+        List<PositionInShard> positions = newArrayList();
+        for (ShardCheckpoint checkpoint : checkpoints) {
+            if (checkpoint.getShardIterator() == null) {
+                positions.add(checkpoint.getPositionInShard());
+            }
+        }
+        Iterator<ShardCheckpoint> acquired = iteratorAcquirer.acquire(positions, kinesis)
+                .iterator();
+        List<ShardCheckpoint> result = newArrayList();
+        for (ShardCheckpoint checkpoint : checkpoints) {
+            result.add(checkpoint.getShardIterator() == null ? acquired.next() : checkpoint);
+        }
+        return result;
+    }
+
+    private ShardRecordsIterator createShardRecordsIterator(ShardCheckpoint checkpoint) {
+        if (fanOutClient != null) {
+            return new ShardRecordsIterator(checkpoint, new SubscriptionRecordBatchFetcher(
+                    checkpoint, fanOutClient, settings.getConsumerName(), new RecordFilter(),
+                    Math.max(1, settings.getPrefetchDepth())));
+        }
+        BatchLimitTuner limitTuner = new BatchLimitTuner(shardMemoryBudget);
+        RecordBatchFetcher fetcher = new DirectRecordBatchFetcher(checkpoint, kinesis,
+                new RecordFilter(), new ShardReadLimiter(settings.getReadShare(), ticker),
+                limitTuner, ticker);
+        if (prefetchExecutor != null) {
+            fetcher = new PrefetchingRecordBatchFetcher(fetcher, prefetchExecutor,
+                    settings.getPrefetchDepth(), limitTuner);
+        }
+        return new ShardRecordsIterator(checkpoint, fetcher);
+    }
+
     /***
      * Moves to the next record in one of the shards.
      * If current shard iterator can be move forward (i.e. there's a record present) then we do it.
-     * If not, we iterate over shards in a round-robin manner.
+     * If not, we go over shards which may be polled now, as decided by {@link ShardPollScheduler}
+     * according to {@link ReaderSettings#getShardSelectionPolicy()}.
+     * Shards closed by resharding are replaced with their children.
      */
     @Override
     public boolean advance() throws IOException {
-        for (int i = 0; i < shardIterators.size(); ++i) {
-            currentRecord = shardIterators.getCurrent().next();
+        startChildrenOfDrainedAdjacentParents();
+        while (true) {
+            ShardRecordsIterator iterator = shardIterators.getCurrent();
+            if (iterator == null) {
+                return false;
+            }
+            long delay = iterator.nanosUntilNextRecord();
+            if (delay > 0) {
+                shardIterators.postponeCurrent(delay);
+                continue;
+            }
+            currentRecord = iterator.next();
             if (currentRecord.isPresent()) {
-                currendRecordTimestamp = Optional.of(Instant.now());
+                shardIterators.markCurrentActive();
+                currendRecordTimestamp = Optional.of(timestampOf(currentRecord.get()));
                 return true;
+            } else if (iterator.isClosed()) {
+                replaceClosedShard();
             } else {
-                shardIterators.moveForward();
+                shardIterators.markCurrentIdle(iterator.nanosUntilNextRecord());
+            }
+        }
+    }
+
+    /***
+     * Stops reading current shard, which was closed, and starts reading its children from
+     * their beginning.
+     * <p>
+     * Child of merged shards is read by the reader of its parent (not the adjacent one),
+     * unless the parent is not listed anymore. The child is read only after both parents are
+     * closed - until then the closed parent is kept in the checkpoint. If both parents are read
+     * by this reader, the child is started once the other one is closed here. Adjacent parent
+     * read by another reader is checked every {@link #ADJACENT_PARENT_CHECK_NANOS}, until
+     * the list of shards shows it as closed.
+     */
+    private void replaceClosedShard() throws IOException {
+        ShardRecordsIterator closed = shardIterators.removeCurrent();
+        closed.close();
+        LOG.info("Shard {} has been closed", closed.getShardId());
+        startChildrenOf(closed);
+    }
+
+    private void startChildrenOf(ShardRecordsIterator closed) throws IOException {
+        String shardId = closed.getShardId();
+        String streamName = closed.getCheckpoint().getStreamName();
+        // children of a parent which didn't reach the start timestamp start at it too
+        Instant startTimestamp = closed.getCheckpoint().getPositionInShard().getStartTimestamp();
+        ShardLineage lineage = new ShardLineage(kinesis.listShards(streamName));
+        if (lineage.getChildrenOf(shardId).isEmpty()) {
+            // list of shards may have been cached before the resharding
+            lineage = new ShardLineage(kinesis.refreshShards(streamName));
+        }
+
+        boolean waitingForOtherParent = false;
+        boolean waitingForOtherReader = false;
+        for (Shard child : lineage.getChildrenOf(shardId)) {
+            String parentId = child.getParentShardId();
+            boolean isParent = shardId.equals(parentId);
+            if (!isParent && lineage.contains(parentId) && !closedParents.containsKey(parentId)) {
+                continue;
+            }
+            String otherParentId = isParent ? child.getAdjacentParentShardId() : parentId;
+            if (otherParentId != null && isBeingRead(otherParentId)) {
+                waitingForOtherParent = true;
+                continue;
+            }
+            if (otherParentId != null && !closedParents.containsKey(otherParentId) &&
+                    lineage.isOpen(otherParentId)) {
+                LOG.info("Shard {} waits for its parent {} read by another reader",
+                        child.getShardId(), otherParentId);
+                waitingForOtherReader = true;
+                continue;
+            }
+            if (otherParentId != null) {
+                closedParents.remove(otherParentId);
+            }
+            LOG.info("Starting to read shard {}, child of {}", child.getShardId(), shardId);
+            shardIterators.add(createShardRecordsIterator(new ShardCheckpoint(
+                    beginningOf(streamName, child.getShardId(), startTimestamp))));
+        }
+        if (waitingForOtherParent) {
+            closedParents.put(shardId, closed);
+        }
+        if (waitingForOtherReader) {
+            if (parentsWaitingForOtherReaders.isEmpty()) {
+                nextAdjacentParentCheckNanos = ticker.read() + ADJACENT_PARENT_CHECK_NANOS;
+            }
+            parentsWaitingForOtherReaders.put(shardId, closed);
+        }
+    }
+
+    private void startChildrenOfDrainedAdjacentParents() throws IOException {
+        if (parentsWaitingForOtherReaders.isEmpty() ||
+                ticker.read() - nextAdjacentParentCheckNanos < 0) {
+            return;
+        }
+        List<ShardRecordsIterator> waiting = newArrayList(parentsWaitingForOtherReaders.values());
+        parentsWaitingForOtherReaders.clear();
+        for (ShardRecordsIterator closed : waiting) {
+            startChildrenOf(closed);
+        }
+    }
+
+    private PositionInShard beginningOf(String streamName, String shardId,
+                                        Instant startTimestamp) {
+        if (startTimestamp != null) {
+            return new PositionInShard(streamName, shardId, startTimestamp);
+        }
+        return new PositionInShard(streamName, shardId, ShardIteratorType.TRIM_HORIZON, null);
+    }
+
+    private boolean isBeingRead(String shardId) {
+        for (ShardRecordsIterator iterator : shardIterators) {
+            if (iterator.getShardId().equals(shardId)) {
+                return true;
             }
         }
         return false;
@@ -110,11 +321,20 @@ class KinesisReader extends UnboundedSource.UnboundedReader<Record> {
         return currentRecord.get();
     }
 
+    private Instant timestampOf(KinesisRecord record) {
+        if (settings.isArrivalTimeWatermarkEnabled() &&
+                record.getApproximateArrivalTimestamp() != null) {
+            return new Instant(record.getApproximateArrivalTimestamp().getTime());
+        }
+        return Instant.now();
+    }
+
     /***
      * When {@link KinesisReader} was advanced to the current record.
-     * We cannot use approximate arrival timestamp given for each record by Kinesis as it
-     * is not guaranteed to be accurate - this could lead to mark some records as "late"
-     * even if they were not.
+     * By default we don't use approximate arrival timestamp given for each record by Kinesis as
+     * it is not guaranteed to be accurate - this could lead to mark some records as "late"
+     * even if they were not. It's used only if enabled by
+     * {@link ReaderSettings#withArrivalTimeWatermark}.
      */
     @Override
     public Instant getCurrentTimestamp() throws NoSuchElementException {
@@ -123,6 +343,15 @@ class KinesisReader extends UnboundedSource.UnboundedReader<Record> {
 
     @Override
     public void close() throws IOException {
+        if (shardIterators != null) {
+            for (ShardRecordsIterator iterator : shardIterators) {
+                iterator.close();
+            }
+        }
+        if (prefetchExecutor != null) {
+            prefetchExecutor.shutdownNow();
+        }
+        kinesis.close();
     }
 
     /***
@@ -130,15 +359,62 @@ class KinesisReader extends UnboundedSource.UnboundedReader<Record> {
      * We cannot give better approximation of the watermark with current semantics of
      * {@link KinesisReader#getCurrentTimestamp()}, because we don't know when the next
      * {@link KinesisReader#advance()} will be called.
+     * <p>
+     * With arrival time watermark it's the minimum of watermarks of all shards,
+     * see {@link ShardWatermarkTracker}. It doesn't go back when child shards are started.
      */
     @Override
     public Instant getWatermark() {
-        return Instant.now();
+        Instant now = Instant.now();
+        if (!settings.isArrivalTimeWatermarkEnabled()) {
+            return now;
+        }
+        if (shardIterators == null) {
+            return BoundedWindow.TIMESTAMP_MIN_VALUE;
+        }
+        if (shardIterators.size() == 0) {
+            return lastWatermark;
+        }
+        Instant watermark = BoundedWindow.TIMESTAMP_MAX_VALUE;
+        for (ShardRecordsIterator iterator : shardIterators) {
+            Instant shardWatermark =
+                    iterator.getWatermark(now, settings.getWatermarkIdleTimeout());
+            if (shardWatermark.isBefore(watermark)) {
+                watermark = shardWatermark;
+            }
+        }
+        if (watermark.isAfter(lastWatermark)) {
+            lastWatermark = watermark;
+        }
+        return lastWatermark;
+    }
+
+    /***
+     * Sum of backlogs of all shards, estimated from their lag reported by Kinesis,
+     * see {@link ShardBacklogEstimator}. Unknown until the lag of every shard is known.
+     */
+    @Override
+    public long getSplitBacklogBytes() {
+        if (shardIterators == null) {
+            return BACKLOG_UNKNOWN;
+        }
+        long backlog = 0;
+        for (ShardRecordsIterator iterator : shardIterators) {
+            long shardBacklog = iterator.getBacklogBytes();
+            if (shardBacklog == BACKLOG_UNKNOWN) {
+                return BACKLOG_UNKNOWN;
+            }
+            backlog += shardBacklog;
+        }
+        return backlog;
     }
 
     @Override
     public UnboundedSource.CheckpointMark getCheckpointMark() {
-        return KinesisReaderCheckpoint.asCurrentStateOf(shardIterators);
+        return KinesisReaderCheckpoint.asCurrentStateOf(
+                Iterables.concat(shardIterators, closedParents.values(),
+                        parentsWaitingForOtherReaders.values()),
+                settings.getPositionStore());
     }
 
     @Override
@@ -17,63 +17,172 @@
  */
 package org.apache.beam.sdk.io.kinesis.source;
 
+import org.apache.beam.sdk.coders.AtomicCoder;
 import org.apache.beam.sdk.coders.ByteArrayCoder;
-import org.apache.beam.sdk.coders.Coder;
 import org.apache.beam.sdk.coders.CoderException;
 import org.apache.beam.sdk.coders.InstantCoder;
-import org.apache.beam.sdk.coders.StandardCoder;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.io.kinesis.client.response.KinesisRecord;
+import org.apache.beam.sdk.util.VarInt;
 
+import com.amazonaws.services.kinesis.clientlibrary.types.UserRecord;
 import com.amazonaws.services.kinesis.model.Record;
-import org.joda.time.Instant;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.nio.ByteBuffer;
-import java.util.List;
+import java.util.Date;
 
 /**
- * Created by p.pastuszka on 07/04/16.
+ * Coder of records read from Kinesis.
+ * <p>
+ * Exactly the remaining bytes of the data buffer are written, straight from the backing array
+ * when there is one. Sequence numbers are written as binary numbers ({@link SequenceNumberCoder})
+ * and optional fields are marked in a single flags byte, so that sub-sequence number, explicit
+ * hash key and shard id of deaggregated records survive encoding at a low cost.
+ * Decoded records are {@link KinesisRecord}s (without shard iterator) if the encoded ones were
+ * {@link UserRecord}s.
+ * <p>
+ * Every record starts with {@link #FORMAT_MARKER} and format version. The marker is a varint
+ * in non-minimal form, which can't start records of the first format (data length as varint,
+ * data, sequence number, partition key, arrival time), so those can still be decoded.
  */
-public class KinesisRecordCoder extends StandardCoder<Record> {
-    private static final StringUtf8Coder stringCoder = StringUtf8Coder.of();
-    private static final ByteArrayCoder byteArrayCoder = ByteArrayCoder.of();
-    private static final InstantCoder instantCoder = InstantCoder.of();
+public class KinesisRecordCoder extends AtomicCoder<Record> {
+    private static final int[] FORMAT_MARKER = {0x80, 0x00};
+    private static final int VERSION = 1;
+
+    private static final int HAS_ARRIVAL_TIMESTAMP = 1;
+    private static final int USER_RECORD = 1 << 1;
+    private static final int AGGREGATED = 1 << 2;
+    private static final int HAS_EXPLICIT_HASH_KEY = 1 << 3;
+    private static final int HAS_SHARD_ID = 1 << 4;
+    private static final int COPY_CHUNK_SIZE = 8192;
+
+    private static final StringUtf8Coder STRING_CODER = StringUtf8Coder.of();
+    private static final SequenceNumberCoder SEQUENCE_NUMBER_CODER = SequenceNumberCoder.of();
+    private static final ShardIdCoder SHARD_ID_CODER = ShardIdCoder.of();
+    private static final ByteArrayCoder BYTE_ARRAY_CODER = ByteArrayCoder.of();
+    private static final InstantCoder INSTANT_CODER = InstantCoder.of();
+    private static final KinesisRecordCoder INSTANCE = new KinesisRecordCoder();
 
     public static KinesisRecordCoder of() {
-        return new KinesisRecordCoder();
+        return INSTANCE;
+    }
+
+    private KinesisRecordCoder() {
     }
 
     @Override
     public void encode(Record value, OutputStream outStream, Context context) throws
             CoderException, IOException {
-        Context nested = context.nested();
-        byteArrayCoder.encode(value.getData().array(), outStream, nested);
-        stringCoder.encode(value.getSequenceNumber(), outStream, nested);
-        stringCoder.encode(value.getPartitionKey(), outStream, nested);
-        instantCoder.encode(new Instant(value.getApproximateArrivalTimestamp()), outStream, nested);
+        Context nested = Context.NESTED;
+        UserRecord userRecord = value instanceof UserRecord ? (UserRecord) value : null;
+        String shardId = value instanceof KinesisRecord ?
+                ((KinesisRecord) value).getShardId() : null;
+
+        int flags = 0;
+        flags |= value.getApproximateArrivalTimestamp() != null ? HAS_ARRIVAL_TIMESTAMP : 0;
+        if (userRecord != null) {
+            flags |= USER_RECORD;
+            flags |= userRecord.isAggregated() ? AGGREGATED : 0;
+            flags |= userRecord.getExplicitHashKey() != null ? HAS_EXPLICIT_HASH_KEY : 0;
+            flags |= shardId != null ? HAS_SHARD_ID : 0;
+        }
+        for (int b : FORMAT_MARKER) {
+            outStream.write(b);
+        }
+        outStream.write(VERSION);
+        outStream.write(flags);
 
+        writeData(value.getData(), outStream);
+        SEQUENCE_NUMBER_CODER.encode(value.getSequenceNumber(), outStream, nested);
+        STRING_CODER.encode(value.getPartitionKey(), outStream, nested);
+        if ((flags & HAS_ARRIVAL_TIMESTAMP) != 0) {
+            VarInt.encode(value.getApproximateArrivalTimestamp().getTime(), outStream);
+        }
+        if (userRecord != null) {
+            VarInt.encode(userRecord.getSubSequenceNumber(), outStream);
+            if ((flags & HAS_EXPLICIT_HASH_KEY) != 0) {
+                STRING_CODER.encode(userRecord.getExplicitHashKey(), outStream, nested);
+            }
+            if (shardId != null) {
+                SHARD_ID_CODER.encode(shardId, outStream, nested);
+            }
+        }
     }
 
     @Override
     public Record decode(InputStream inStream, Context context) throws CoderException, IOException {
-        Context nested = context.nested();
-        return new Record().
-                withData(ByteBuffer.wrap(byteArrayCoder.decode(inStream, nested))).
-                withSequenceNumber(stringCoder.decode(inStream, nested)).
-                withPartitionKey(stringCoder.decode(inStream, nested)).
-                withApproximateArrivalTimestamp(instantCoder.decode(inStream, nested).toDate());
+        Context nested = Context.NESTED;
+        PushbackInputStream in = new PushbackInputStream(inStream, FORMAT_MARKER.length);
+        for (int i = 0; i < FORMAT_MARKER.length; ++i) {
+            int b = readByte(in);
+            if (b != FORMAT_MARKER[i]) {
+                in.unread(b);
+                for (int j = i - 1; j >= 0; --j) {
+                    in.unread(FORMAT_MARKER[j]);
+                }
+                return decodeFirstFormat(in);
+            }
+        }
+        // whole marker was read, so nothing is left to be read again from the pushback stream
+        int version = readByte(inStream);
+        if (version != VERSION) {
+            throw new CoderException("Unknown version of encoded record: " + version);
+        }
+        int flags = readByte(inStream);
+
+        Record record = new Record()
+                .withData(ByteBuffer.wrap(
+                        SequenceNumberCoder.readFully(inStream, VarInt.decodeInt(inStream))))
+                .withSequenceNumber(SEQUENCE_NUMBER_CODER.decode(inStream, nested))
+                .withPartitionKey(STRING_CODER.decode(inStream, nested));
+        if ((flags & HAS_ARRIVAL_TIMESTAMP) != 0) {
+            record.setApproximateArrivalTimestamp(new Date(VarInt.decodeLong(inStream)));
+        }
+        if ((flags & USER_RECORD) == 0) {
+            return record;
+        }
+        long subSequenceNumber = VarInt.decodeLong(inStream);
+        String explicitHashKey = (flags & HAS_EXPLICIT_HASH_KEY) != 0 ?
+                STRING_CODER.decode(inStream, nested) : null;
+        String shardId = (flags & HAS_SHARD_ID) != 0 ?
+                SHARD_ID_CODER.decode(inStream, nested) : null;
+        return new KinesisRecord((flags & AGGREGATED) != 0, record, subSequenceNumber,
+                explicitHashKey, null, shardId);
     }
 
-    @Override
-    public List<? extends Coder<?>> getCoderArguments() {
-        return null;
+    private Record decodeFirstFormat(InputStream inStream) throws IOException {
+        Context nested = Context.NESTED;
+        return new Record()
+                .withData(ByteBuffer.wrap(BYTE_ARRAY_CODER.decode(inStream, nested)))
+                .withSequenceNumber(STRING_CODER.decode(inStream, nested))
+                .withPartitionKey(STRING_CODER.decode(inStream, nested))
+                .withApproximateArrivalTimestamp(INSTANT_CODER.decode(inStream, nested).toDate());
     }
 
-    @Override
-    public void verifyDeterministic() throws NonDeterministicException {
-        stringCoder.verifyDeterministic();
-        byteArrayCoder.verifyDeterministic();
-        instantCoder.verifyDeterministic();
+    private static int readByte(InputStream inStream) throws IOException {
+        int b = inStream.read();
+        if (b < 0) {
+            throw new CoderException("Unexpected end of stream");
+        }
+        return b;
+    }
+
+    private void writeData(ByteBuffer data, OutputStream outStream) throws IOException {
+        int length = data.remaining();
+        VarInt.encode(length, outStream);
+        if (data.hasArray()) {
+            outStream.write(data.array(), data.arrayOffset() + data.position(), length);
+            return;
+        }
+        ByteBuffer source = data.duplicate();
+        byte[] chunk = new byte[Math.min(length, COPY_CHUNK_SIZE)];
+        while (source.hasRemaining()) {
+            int count = Math.min(chunk.length, source.remaining());
+            source.get(chunk, 0, count);
+            outStream.write(chunk, 0, count);
+        }
     }
 }
@@ -18,23 +18,32 @@
 package org.apache.beam.sdk.io.kinesis.source;
 
 import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions.checkNotNull;
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Sets.newHashSet;
 import org.apache.beam.sdk.coders.Coder;
-import org.apache.beam.sdk.coders.SerializableCoder;
 import org.apache.beam.sdk.io.UnboundedSource;
 import org.apache.beam.sdk.io.kinesis.client.KinesisClientProvider;
 import org.apache.beam.sdk.io.kinesis.client.SimplifiedKinesisClient;
 import org.apache.beam.sdk.io.kinesis.source.checkpoint.KinesisReaderCheckpoint;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.KinesisReaderCheckpointCoder;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.ShardCheckpoint;
 import org.apache.beam.sdk.io.kinesis.source.checkpoint.generator.CheckpointGenerator;
 import org.apache.beam.sdk.io.kinesis.source.checkpoint.generator.DynamicCheckpointGenerator;
 import org.apache.beam.sdk.io.kinesis.source.checkpoint.generator.StaticCheckpointGenerator;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.generator
+        .StoredPositionCheckpointGenerator;
 import org.apache.beam.sdk.options.PipelineOptions;
 import static com.google.api.client.util.Lists.newArrayList;
 
 import com.amazonaws.services.kinesis.clientlibrary.lib.worker.InitialPositionInStream;
 import com.amazonaws.services.kinesis.model.Record;
+import com.amazonaws.services.kinesis.model.Shard;
+import org.joda.time.Instant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 
 /***
@@ -44,34 +53,110 @@ public class KinesisSource extends UnboundedSource<Record, KinesisReaderCheckpoi
     private static final Logger LOG = LoggerFactory.getLogger(KinesisSource.class);
 
     private final KinesisClientProvider kinesis;
+    private final String streamName;
+    private final ReaderSettings settings;
     private CheckpointGenerator initialCheckpointGenerator;
 
     public KinesisSource(KinesisClientProvider kinesis, String streamName,
                          InitialPositionInStream initialPositionInStream) {
-        this(kinesis, new DynamicCheckpointGenerator(streamName, initialPositionInStream));
+        this(kinesis, streamName, initialPositionInStream, ReaderSettings.defaults());
+    }
+
+    public KinesisSource(KinesisClientProvider kinesis, String streamName,
+                         InitialPositionInStream initialPositionInStream,
+                         ReaderSettings settings) {
+        this(kinesis, streamName,
+                initialCheckpointGenerator(streamName, initialPositionInStream, null, settings),
+                settings);
+    }
+
+    /***
+     * Reads every shard starting at the first record which arrived at or after given timestamp.
+     */
+    public KinesisSource(KinesisClientProvider kinesis, String streamName,
+                         Instant startTimestamp, ReaderSettings settings) {
+        this(kinesis, streamName,
+                initialCheckpointGenerator(streamName, InitialPositionInStream.TRIM_HORIZON,
+                        checkNotNull(startTimestamp), settings),
+                settings);
     }
 
     private KinesisSource(KinesisClientProvider kinesisClientProvider,
-                          CheckpointGenerator initialCheckpoint) {
+                          String streamName,
+                          CheckpointGenerator initialCheckpoint,
+                          ReaderSettings settings) {
         this.kinesis = kinesisClientProvider;
+        this.streamName = streamName;
         this.initialCheckpointGenerator = initialCheckpoint;
+        this.settings = settings;
         validate();
     }
 
+    private static CheckpointGenerator initialCheckpointGenerator(
+            String streamName, InitialPositionInStream initialPositionInStream,
+            Instant startTimestamp, ReaderSettings settings) {
+        if (settings.isPositionStoreEnabled()) {
+            return startTimestamp != null ?
+                    new StoredPositionCheckpointGenerator(streamName, startTimestamp,
+                            settings.getPositionStore()) :
+                    new StoredPositionCheckpointGenerator(streamName, initialPositionInStream,
+                            settings.getPositionStore());
+        }
+        return startTimestamp != null ?
+                new DynamicCheckpointGenerator(streamName, startTimestamp) :
+                new DynamicCheckpointGenerator(streamName, initialPositionInStream);
+    }
+
     @Override
     public List<KinesisSource> generateInitialSplits(int desiredNumSplits,
                                                      PipelineOptions options) throws Exception {
-        KinesisReaderCheckpoint checkpoint =
-                initialCheckpointGenerator.generate(SimplifiedKinesisClient.from(kinesis));
+        if (settings.isEnhancedFanOutEnabled()) {
+            LOG.info("Registering stream consumer {}", settings.getConsumerName());
+            settings.getFanOutClientProvider().get()
+                    .registerStreamConsumer(streamName, settings.getConsumerName());
+        }
 
-        List<KinesisSource> sources = newArrayList();
+        SimplifiedKinesisClient client =
+                SimplifiedKinesisClient.shared(kinesis, settings.getRetryPolicy());
+        try {
+            KinesisReaderCheckpoint checkpoint = initialCheckpointGenerator.generate(client);
+
+            List<KinesisSource> sources = newArrayList();
+
+            for (KinesisReaderCheckpoint partition :
+                    split(checkpoint, desiredNumSplits, client)) {
+                sources.add(new KinesisSource(
+                        kinesis,
+                        streamName,
+                        new StaticCheckpointGenerator(partition),
+                        settings));
+            }
+            return sources;
+        } finally {
+            client.close();
+        }
+    }
 
-        for (KinesisReaderCheckpoint partition : checkpoint.splitInto(desiredNumSplits)) {
-            sources.add(new KinesisSource(
-                    kinesis,
-                    new StaticCheckpointGenerator(partition)));
+    private List<KinesisReaderCheckpoint> split(KinesisReaderCheckpoint checkpoint,
+                                                int desiredNumSplits,
+                                                SimplifiedKinesisClient client)
+            throws IOException {
+        if (!settings.isSplitBalancingEnabled()) {
+            return checkpoint.splitInto(desiredNumSplits);
+        }
+        Set<String> shardIds = newHashSet();
+        for (ShardCheckpoint shardCheckpoint : checkpoint) {
+            shardIds.add(shardCheckpoint.getShardId());
+        }
+        List<Shard> shards = newArrayList();
+        for (Shard shard : client.listShards(streamName)) {
+            if (shardIds.contains(shard.getShardId())) {
+                shards.add(shard);
+            }
         }
-        return sources;
+        Map<String, Double> weights = settings.getShardWeigher().weigh(streamName, shards);
+        LOG.info("Balancing splits by shard weights {}", weights);
+        return checkpoint.splitInto(desiredNumSplits, weights);
     }
 
     @Override
@@ -87,20 +172,23 @@ public class KinesisSource extends UnboundedSource<Record, KinesisReaderCheckpoi
         LOG.info("Creating new reader using {}", checkpointGenerator);
 
         return new KinesisReader(
-                SimplifiedKinesisClient.from(kinesis),
+                SimplifiedKinesisClient.shared(kinesis, settings.getRetryPolicy()),
                 checkpointGenerator,
-                this);
+                this,
+                settings);
     }
 
     @Override
     public Coder<KinesisReaderCheckpoint> getCheckpointMarkCoder() {
-        return SerializableCoder.of(KinesisReaderCheckpoint.class);
+        return KinesisReaderCheckpointCoder.of();
     }
 
     @Override
     public void validate() {
         checkNotNull(kinesis);
+        checkNotNull(streamName);
         checkNotNull(initialCheckpointGenerator);
+        checkNotNull(settings);
     }
 
     @Override
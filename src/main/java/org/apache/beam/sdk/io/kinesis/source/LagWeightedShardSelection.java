@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkArgument;
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkNotNull;
+
+import org.joda.time.Duration;
+
+/***
+ * Favours shards which are further behind the tip of the stream, so that the reader
+ * (and its watermark, held back by the slowest shard) catches up sooner.
+ * <p>
+ * Weight of a shard grows by one with every {@code lagPerWeight} of its lag reported by Kinesis,
+ * starting from one for shards which are up to date (or whose lag is not known yet),
+ * up to {@code maxWeight}.
+ */
+public class LagWeightedShardSelection implements ShardSelectionPolicy {
+    public static final Duration DEFAULT_LAG_PER_WEIGHT = Duration.standardMinutes(1);
+    public static final double DEFAULT_MAX_WEIGHT = 10;
+
+    private final long lagMillisPerWeight;
+    private final double maxWeight;
+
+    public LagWeightedShardSelection() {
+        this(DEFAULT_LAG_PER_WEIGHT, DEFAULT_MAX_WEIGHT);
+    }
+
+    public LagWeightedShardSelection(Duration lagPerWeight, double maxWeight) {
+        checkNotNull(lagPerWeight);
+        checkArgument(lagPerWeight.getMillis() > 0, "Lag per weight must be positive");
+        checkArgument(maxWeight >= 1, "Max weight must be at least 1");
+
+        this.lagMillisPerWeight = lagPerWeight.getMillis();
+        this.maxWeight = maxWeight;
+    }
+
+    @Override
+    public double weightOf(ShardRecordsIterator shard) {
+        long lag = shard.getMillisBehindLatest();
+        if (lag <= 0) {
+            return 1;
+        }
+        return Math.min(maxWeight, 1 + (double) lag / lagMillisPerWeight);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkArgument;
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkNotNull;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/***
+ * Keeps fetching batches from the underlying {@link RecordBatchFetcher} in the background,
+ * so that the next batch is usually already available when the current one is consumed.
+ * Nothing is fetched before the first call to {@link #fetch()}.
+ * <p>
+ * At most {@code depth} batches are buffered and there's at most one fetch in flight at any
+ * time, as each request to Kinesis depends on the iterator returned by the previous one.
+ * If the underlying fetcher asks to wait before the next call, the background fetch is
+ * rescheduled accordingly. The background fetching stops as soon as Kinesis returns no records
+ * and is resumed on next call to {@link #fetch()}.
+ * <p>
+ * When there's nothing buffered, the lag reported with the last empty response of Kinesis is
+ * returned, so that the consumer knows if the shard has been read up to its tip.
+ * <p>
+ * Failures of background fetches are reported by {@link #fetch()} after all batches
+ * which were fetched successfully before the failure have been consumed. Each failure is
+ * reported once and the background fetching is resumed on the following call.
+ * <p>
+ * Size of buffered batches is reported to {@link BatchLimitTuner}, so that the following
+ * batches fit into memory budget of the shard.
+ */
+class PrefetchingRecordBatchFetcher implements RecordBatchFetcher {
+    private final RecordBatchFetcher delegate;
+    private final ScheduledExecutorService executor;
+    private final BlockingQueue<RecordBatch> batches;
+    private final BatchLimitTuner limitTuner;
+    private final AtomicBoolean fetching = new AtomicBoolean(false);
+    private final Runnable fetchTask = new Runnable() {
+        @Override
+        public void run() {
+            fetchUntilFull();
+        }
+    };
+    private volatile Exception failure;
+    private volatile long idleMillisBehindLatest = RecordBatch.UNKNOWN_LAG;
+    private volatile boolean closed;
+
+    public PrefetchingRecordBatchFetcher(RecordBatchFetcher delegate,
+                                         ScheduledExecutorService executor,
+                                         int depth,
+                                         BatchLimitTuner limitTuner) {
+        checkNotNull(delegate);
+        checkNotNull(executor);
+        checkArgument(depth > 0, "Prefetch depth must be positive");
+        checkNotNull(limitTuner);
+
+        this.delegate = delegate;
+        this.executor = executor;
+        this.limitTuner = limitTuner;
+        this.batches = new ArrayBlockingQueue<>(depth);
+    }
+
+    @Override
+    public RecordBatch fetch() throws IOException {
+        RecordBatch batch = batches.poll();
+        if (batch == null) {
+            rethrowFailure();
+            batch = RecordBatch.withNoRecords(idleMillisBehindLatest);
+        } else {
+            limitTuner.recordConsumed(BatchLimitTuner.sizeOf(batch.getRecords()));
+        }
+        prefetchIfPossible();
+        return batch;
+    }
+
+    /***
+     * Buffered batches can be consumed right away, otherwise the background fetch decides when
+     * the next call to Kinesis happens.
+     */
+    @Override
+    public long nanosUntilNextFetch() {
+        if (!batches.isEmpty() || fetching.get()) {
+            return 0;
+        }
+        return delegate.nanosUntilNextFetch();
+    }
+
+    @Override
+    public boolean isPushBased() {
+        return delegate.isPushBased();
+    }
+
+    /***
+     * The order of checks matters: the underlying fetcher is closed only during a fetch,
+     * whose batch is buffered before the fetch is marked as finished.
+     */
+    @Override
+    public boolean isShardClosed() {
+        return delegate.isShardClosed() && !fetching.get() && batches.isEmpty();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        delegate.close();
+    }
+
+    private void prefetchIfPossible() {
+        if (!closed && failure == null && batches.remainingCapacity() > 0 &&
+                !delegate.isShardClosed() && fetching.compareAndSet(false, true)) {
+            executor.execute(fetchTask);
+        }
+    }
+
+    private void fetchUntilFull() {
+        try {
+            while (!closed && batches.remainingCapacity() > 0 && !delegate.isShardClosed()) {
+                long delay = delegate.nanosUntilNextFetch();
+                if (delay > 0) {
+                    executor.schedule(fetchTask, delay, TimeUnit.NANOSECONDS);
+                    return;
+                }
+                RecordBatch batch = delegate.fetch();
+                if (batch.isEmpty()) {
+                    if (batch.isLagKnown()) {
+                        idleMillisBehindLatest = batch.getMillisBehindLatest();
+                    }
+                    fetching.set(false);
+                    return;
+                }
+                idleMillisBehindLatest = RecordBatch.UNKNOWN_LAG;
+                limitTuner.recordBuffered(BatchLimitTuner.sizeOf(batch.getRecords()));
+                batches.add(batch);
+            }
+        } catch (Exception e) {
+            failure = e;
+        }
+        fetching.set(false);
+        // a batch might have been consumed after the buffer was found full
+        prefetchIfPossible();
+    }
+
+    private void rethrowFailure() throws IOException {
+        Exception e = failure;
+        failure = null;
+        if (e instanceof IOException) {
+            throw new IOException("Background fetch failed", e);
+        } else if (e != null) {
+            throw new RuntimeException("Background fetch failed", e);
+        }
+    }
+}
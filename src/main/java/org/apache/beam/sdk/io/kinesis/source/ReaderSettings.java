@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkArgument;
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkNotNull;
+import org.apache.beam.sdk.io.kinesis.client.EnhancedFanOutClientProvider;
+import org.apache.beam.sdk.io.kinesis.client.RetryPolicy;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.store.ShardPositionStore;
+
+import org.joda.time.Duration;
+import java.io.Serializable;
+
+/***
+ * Tuning knobs of {@link KinesisReader}, shared by all splits of a single {@link KinesisSource}.
+ * This class is immutable, every "with" method returns a modified copy.
+ */
+public class ReaderSettings implements Serializable {
+    public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+    private int prefetchDepth;
+    private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+    private double readShare = 1.0;
+    private EnhancedFanOutClientProvider fanOutClientProvider;
+    private String consumerName;
+    private RetryPolicy retryPolicy = RetryPolicy.defaults();
+    private Duration watermarkIdleTimeout;
+    private ShardSelectionPolicy shardSelectionPolicy = new RoundRobinShardSelection();
+    private ShardWeigher shardWeigher;
+    private ShardPositionStore positionStore;
+
+    private ReaderSettings() {
+    }
+
+    private ReaderSettings(ReaderSettings other) {
+        this.prefetchDepth = other.prefetchDepth;
+        this.memoryBudget = other.memoryBudget;
+        this.readShare = other.readShare;
+        this.fanOutClientProvider = other.fanOutClientProvider;
+        this.consumerName = other.consumerName;
+        this.retryPolicy = other.retryPolicy;
+        this.watermarkIdleTimeout = other.watermarkIdleTimeout;
+        this.shardSelectionPolicy = other.shardSelectionPolicy;
+        this.shardWeigher = other.shardWeigher;
+        this.positionStore = other.positionStore;
+    }
+
+    public static ReaderSettings defaults() {
+        return new ReaderSettings();
+    }
+
+    /***
+     * Number of batches, which are fetched from each shard in the background
+     * ahead of being consumed by the reader. Zero disables prefetching - batches are then
+     * fetched synchronously, only when the previous one has been fully consumed.
+     * With enhanced fan-out it's the number of pushed batches buffered per shard.
+     */
+    public ReaderSettings withPrefetchDepth(int prefetchDepth) {
+        checkArgument(prefetchDepth >= 0, "Prefetch depth must not be negative");
+        ReaderSettings copy = new ReaderSettings(this);
+        copy.prefetchDepth = prefetchDepth;
+        return copy;
+    }
+
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+    public boolean isPrefetchEnabled() {
+        return prefetchDepth > 0;
+    }
+
+    /***
+     * How many bytes of records can be buffered by the reader, in total for all its shards.
+     * Sizes of GetRecords batches are adjusted to fit into this budget.
+     */
+    public ReaderSettings withMemoryBudget(long memoryBudget) {
+        checkArgument(memoryBudget > 0, "Memory budget must be positive");
+        ReaderSettings copy = new ReaderSettings(this);
+        copy.memoryBudget = memoryBudget;
+        return copy;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /***
+     * Fraction of per-shard read limits (5 calls and 2 MB per second) which can be used by the
+     * reader. Useful when there are other applications reading from the same stream.
+     */
+    public ReaderSettings withReadShare(double readShare) {
+        checkArgument(readShare > 0 && readShare <= 1, "Read share must be in (0, 1] range");
+        ReaderSettings copy = new ReaderSettings(this);
+        copy.readShare = readShare;
+        return copy;
+    }
+
+    public double getReadShare() {
+        return readShare;
+    }
+
+    /***
+     * How Kinesis calls made by the reader are retried in case of transient failures.
+     */
+    public ReaderSettings withRetryPolicy(RetryPolicy retryPolicy) {
+        checkNotNull(retryPolicy);
+        ReaderSettings copy = new ReaderSettings(this);
+        copy.retryPolicy = retryPolicy;
+        return copy;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /***
+     * How the reader divides its time between shards which have records available,
+     * {@link RoundRobinShardSelection} by default.
+     */
+    public ReaderSettings withShardSelectionPolicy(ShardSelectionPolicy shardSelectionPolicy) {
+        checkNotNull(shardSelectionPolicy);
+        ReaderSettings copy = new ReaderSettings(this);
+        copy.shardSelectionPolicy = shardSelectionPolicy;
+        return copy;
+    }
+
+    public ShardSelectionPolicy getShardSelectionPolicy() {
+        return shardSelectionPolicy;
+    }
+
+    /***
+     * Makes initial splits balanced by total weight of their shards, as given by
+     * the {@link ShardWeigher}, instead of by number of shards.
+     */
+    public ReaderSettings withSplitBalancing(ShardWeigher shardWeigher) {
+        checkNotNull(shardWeigher);
+        ReaderSettings copy = new ReaderSettings(this);
+        copy.shardWeigher = shardWeigher;
+        return copy;
+    }
+
+    public boolean isSplitBalancingEnabled() {
+        return shardWeigher != null;
+    }
+
+    public ShardWeigher getShardWeigher() {
+        return shardWeigher;
+    }
+
+    /***
+     * Makes readers commit positions of finalized checkpoints to the store and new pipelines
+     * resume from positions found there.
+     */
+    public ReaderSettings withPositionStore(ShardPositionStore positionStore) {
+        checkNotNull(positionStore);
+        ReaderSettings copy = new ReaderSettings(this);
+        copy.positionStore = positionStore;
+        return copy;
+    }
+
+    public boolean isPositionStoreEnabled() {
+        return positionStore != null;
+    }
+
+    public ShardPositionStore getPositionStore() {
+        return positionStore;
+    }
+
+    /***
+     * Makes the reader use approximate arrival timestamps of records as their timestamps and
+     * estimate the watermark from them, instead of using processing time.
+     * Shards from which no record was read for the idle timeout don't hold back the watermark.
+     */
+    public ReaderSettings withArrivalTimeWatermark(Duration idleTimeout) {
+        checkNotNull(idleTimeout);
+        checkArgument(idleTimeout.getMillis() >= 0, "Idle timeout must not be negative");
+        ReaderSettings copy = new ReaderSettings(this);
+        copy.watermarkIdleTimeout = idleTimeout;
+        return copy;
+    }
+
+    public boolean isArrivalTimeWatermarkEnabled() {
+        return watermarkIdleTimeout != null;
+    }
+
+    public Duration getWatermarkIdleTimeout() {
+        return watermarkIdleTimeout;
+    }
+
+    /***
+     * Makes the reader receive records through enhanced fan-out subscriptions of consumer with
+     * given name instead of polling shards with GetRecords calls.
+     */
+    public ReaderSettings withEnhancedFanOut(String consumerName,
+                                             EnhancedFanOutClientProvider provider) {
+        checkNotNull(consumerName);
+        checkNotNull(provider);
+        ReaderSettings copy = new ReaderSettings(this);
+        copy.consumerName = consumerName;
+        copy.fanOutClientProvider = provider;
+        return copy;
+    }
+
+    public boolean isEnhancedFanOutEnabled() {
+        return fanOutClientProvider != null;
+    }
+
+    public EnhancedFanOutClientProvider getFanOutClientProvider() {
+        return fanOutClientProvider;
+    }
+
+    public String getConsumerName() {
+        return consumerName;
+    }
+}
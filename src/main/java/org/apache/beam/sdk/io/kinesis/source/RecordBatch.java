@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkNotNull;
+import org.apache.beam.sdk.io.kinesis.client.response.GetKinesisRecordsResult;
+import org.apache.beam.sdk.io.kinesis.client.response.KinesisRecord;
+
+import java.util.Collections;
+import java.util.List;
+
+/***
+ * Records returned by single {@link RecordBatchFetcher#fetch()} together with the lag of the
+ * shard reported by Kinesis, i.e. how far behind the tip of the stream the batch is.
+ */
+class RecordBatch {
+    public static final long UNKNOWN_LAG = GetKinesisRecordsResult.UNKNOWN_LAG;
+
+    private final List<KinesisRecord> records;
+    private final long millisBehindLatest;
+
+    public RecordBatch(List<KinesisRecord> records, long millisBehindLatest) {
+        checkNotNull(records);
+        this.records = records;
+        this.millisBehindLatest = millisBehindLatest;
+    }
+
+    /***
+     * No records and no information about the lag, i.e. when Kinesis was not called at all.
+     */
+    public static RecordBatch empty() {
+        return withNoRecords(UNKNOWN_LAG);
+    }
+
+    public static RecordBatch withNoRecords(long millisBehindLatest) {
+        return new RecordBatch(Collections.<KinesisRecord>emptyList(), millisBehindLatest);
+    }
+
+    public List<KinesisRecord> getRecords() {
+        return records;
+    }
+
+    public boolean isEmpty() {
+        return records.isEmpty();
+    }
+
+    /***
+     * @return lag of the shard in milliseconds or {@link #UNKNOWN_LAG}
+     */
+    public long getMillisBehindLatest() {
+        return millisBehindLatest;
+    }
+
+    public boolean isLagKnown() {
+        return millisBehindLatest != UNKNOWN_LAG;
+    }
+}
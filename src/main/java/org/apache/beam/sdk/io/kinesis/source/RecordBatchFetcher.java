@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import java.io.IOException;
+
+/***
+ * Source of consecutive batches of records from a single shard.
+ * Records which were already returned are never returned again.
+ */
+interface RecordBatchFetcher {
+    /***
+     * Returns next batch of records.
+     * Returns empty batch if there are no new records available at this time.
+     */
+    RecordBatch fetch() throws IOException;
+
+    /***
+     * @return how long one should wait before calling {@link #fetch()} again, so that the call
+     * is not rejected because of Kinesis limits.
+     */
+    long nanosUntilNextFetch();
+
+    /***
+     * @return true if records are pushed to the fetcher by Kinesis, so calling {@link #fetch()}
+     * doesn't make any Kinesis calls and is not limited by them
+     */
+    boolean isPushBased();
+
+    /***
+     * @return true if the shard was closed by resharding and all its records have already
+     * been returned by {@link #fetch()}
+     */
+    boolean isShardClosed();
+
+    void close();
+}
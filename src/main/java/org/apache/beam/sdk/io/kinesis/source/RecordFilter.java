@@ -19,7 +19,6 @@ package org.apache.beam.sdk.io.kinesis.source;
 
 import org.apache.beam.sdk.io.kinesis.client.response.KinesisRecord;
 import org.apache.beam.sdk.io.kinesis.source.checkpoint.ShardCheckpoint;
-import static com.google.api.client.util.Lists.newArrayList;
 
 import java.util.List;
 
@@ -28,15 +27,55 @@ import java.util.List;
  * <p>
  * We need this step, because we can get iterators from Kinesis only with "sequenceNumber" accuracy,
  * not with "subSequenceNumber" accuracy.
+ * <p>
+ * Records come from Kinesis in order, so such records can only be at the beginning of the first
+ * batch read with a new shard iterator. Only that batch is examined (using binary search),
+ * all the following ones are returned as they are, until {@link #rearm()} is called.
+ * <p>
+ * When the checkpoint has a start timestamp, records which arrived before it are filtered out
+ * as well, and the filter stays armed until some record is returned. Shards are read from
+ * {@code AT_TIMESTAMP} iterators, so that's only a safety net for records Kinesis returns anyway.
+ * Instances are therefore stateful and must not be shared between shards.
  */
 class RecordFilter {
+    private volatile boolean armed = true;
+
+    /***
+     * @return view of {@code records} without the ones already processed
+     */
     public List<KinesisRecord> apply(List<KinesisRecord> records, ShardCheckpoint checkpoint) {
-        List<KinesisRecord> filteredRecords = newArrayList();
-        for (KinesisRecord record : records) {
-            if (checkpoint.isBeforeOrAt(record.getExtendedSequenceNumber())) {
-                filteredRecords.add(record);
+        if (!armed || records.isEmpty()) {
+            return records;
+        }
+        int cut = firstNotProcessed(records, checkpoint);
+        while (cut < records.size() && checkpoint.isBeforeStart(records.get(cut))) {
+            ++cut;
+        }
+        if (cut < records.size()) {
+            armed = false;
+        }
+        return cut == 0 ? records : records.subList(cut, records.size());
+    }
+
+    /***
+     * Makes the next batch checked again, to be called whenever a new shard iterator
+     * (or subscription) is obtained from the checkpoint.
+     */
+    public void rearm() {
+        armed = true;
+    }
+
+    private int firstNotProcessed(List<KinesisRecord> records, ShardCheckpoint checkpoint) {
+        int low = 0;
+        int high = records.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (checkpoint.isBeforeOrAt(records.get(middle).getExtendedSequenceNumber())) {
+                high = middle;
+            } else {
+                low = middle + 1;
             }
         }
-        return filteredRecords;
+        return low;
     }
 }
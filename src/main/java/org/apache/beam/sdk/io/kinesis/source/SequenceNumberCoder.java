@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import org.apache.beam.sdk.coders.AtomicCoder;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.util.VarInt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+
+/***
+ * Writes decimal sequence numbers (up to 56 digits, i.e. 56 bytes as a string) as binary
+ * big integers, preceded by their length. Values which could not be restored from their numeric
+ * value (e.g. with leading zeros) are written as strings after zero length.
+ * The encoding is self-delimiting, the same in both outer and nested context.
+ */
+public class SequenceNumberCoder extends AtomicCoder<String> {
+    private static final StringUtf8Coder STRING_CODER = StringUtf8Coder.of();
+    private static final SequenceNumberCoder INSTANCE = new SequenceNumberCoder();
+
+    public static SequenceNumberCoder of() {
+        return INSTANCE;
+    }
+
+    private SequenceNumberCoder() {
+    }
+
+    @Override
+    public void encode(String value, OutputStream outStream, Context context)
+            throws IOException {
+        if (value == null) {
+            throw new CoderException("Cannot encode null sequence number");
+        }
+        BigInteger number = parseCanonicalNumber(value);
+        if (number == null) {
+            VarInt.encode(0, outStream);
+            STRING_CODER.encode(value, outStream, Context.NESTED);
+        } else {
+            byte[] bytes = number.toByteArray();
+            VarInt.encode(bytes.length, outStream);
+            outStream.write(bytes);
+        }
+    }
+
+    @Override
+    public String decode(InputStream inStream, Context context) throws IOException {
+        int length = VarInt.decodeInt(inStream);
+        if (length == 0) {
+            return STRING_CODER.decode(inStream, Context.NESTED);
+        }
+        return new BigInteger(readFully(inStream, length)).toString();
+    }
+
+    private static BigInteger parseCanonicalNumber(String value) {
+        if (value.isEmpty() || (value.length() > 1 && value.charAt(0) == '0')) {
+            return null;
+        }
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return null;
+            }
+        }
+        return new BigInteger(value);
+    }
+
+    static byte[] readFully(InputStream inStream, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int count = inStream.read(bytes, read, length - read);
+            if (count < 0) {
+                throw new CoderException("Unexpected end of stream");
+            }
+            read += count;
+        }
+        return bytes;
+    }
+}
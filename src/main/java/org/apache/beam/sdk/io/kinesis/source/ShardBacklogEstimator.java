@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import org.apache.beam.sdk.io.UnboundedSource;
+import org.apache.beam.sdk.io.kinesis.client.response.KinesisRecord;
+
+import java.util.Date;
+
+/***
+ * Estimates how many bytes are left to be read from a single shard.
+ * <p>
+ * The estimate is the lag of the shard reported by Kinesis ({@code MillisBehindLatest})
+ * multiplied by the rate at which data is written to the shard. The rate is observed as bytes
+ * of fetched records per millisecond of their approximate arrival timestamps and
+ * smoothed with exponentially weighted moving average.
+ */
+class ShardBacklogEstimator {
+    private static final double SMOOTHING = 0.2;
+
+    private long millisBehindLatest = RecordBatch.UNKNOWN_LAG;
+    private double bytesPerMilli;
+    private boolean rateObserved;
+    private long lastArrivalMillis;
+    private boolean arrivalObserved;
+    private long bytesSinceLastArrival;
+
+    public void recordFetched(RecordBatch batch) {
+        if (batch.isLagKnown()) {
+            millisBehindLatest = batch.getMillisBehindLatest();
+        }
+        for (KinesisRecord record : batch.getRecords()) {
+            bytesSinceLastArrival += record.getData().remaining();
+            Date arrivalTimestamp = record.getApproximateArrivalTimestamp();
+            if (arrivalTimestamp != null) {
+                observeArrival(arrivalTimestamp.getTime());
+            }
+        }
+    }
+
+    private void observeArrival(long arrivalMillis) {
+        if (!arrivalObserved) {
+            arrivalObserved = true;
+            lastArrivalMillis = arrivalMillis;
+            bytesSinceLastArrival = 0;
+        } else if (arrivalMillis > lastArrivalMillis) {
+            double sample = (double) bytesSinceLastArrival / (arrivalMillis - lastArrivalMillis);
+            bytesPerMilli = rateObserved ?
+                    bytesPerMilli + SMOOTHING * (sample - bytesPerMilli) : sample;
+            rateObserved = true;
+            lastArrivalMillis = arrivalMillis;
+            bytesSinceLastArrival = 0;
+        }
+    }
+
+    /***
+     * @return last lag reported by Kinesis, or {@link RecordBatch#UNKNOWN_LAG}
+     */
+    public long getMillisBehindLatest() {
+        return millisBehindLatest;
+    }
+
+    /***
+     * @return estimated backlog in bytes or
+     * {@link UnboundedSource.UnboundedReader#BACKLOG_UNKNOWN}
+     */
+    public long getBacklogBytes() {
+        if (millisBehindLatest == 0) {
+            return 0;
+        }
+        if (millisBehindLatest == RecordBatch.UNKNOWN_LAG || !rateObserved) {
+            return UnboundedSource.UnboundedReader.BACKLOG_UNKNOWN;
+        }
+        return (long) (millisBehindLatest * bytesPerMilli);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import org.apache.beam.sdk.coders.AtomicCoder;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.util.VarInt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/***
+ * Writes shard ids in the form used by Kinesis ({@code shardId-000000000123}) as
+ * variable-length numbers, increased by one. Other ids are written as strings after zero.
+ * The encoding is self-delimiting, the same in both outer and nested context.
+ */
+public class ShardIdCoder extends AtomicCoder<String> {
+    private static final Pattern SHARD_ID = Pattern.compile("shardId-(\\d{12})");
+    private static final String SHARD_ID_FORMAT = "shardId-%012d";
+    private static final StringUtf8Coder STRING_CODER = StringUtf8Coder.of();
+    private static final ShardIdCoder INSTANCE = new ShardIdCoder();
+
+    public static ShardIdCoder of() {
+        return INSTANCE;
+    }
+
+    private ShardIdCoder() {
+    }
+
+    @Override
+    public void encode(String value, OutputStream outStream, Context context)
+            throws IOException {
+        if (value == null) {
+            throw new CoderException("Cannot encode null shard id");
+        }
+        Matcher matcher = SHARD_ID.matcher(value);
+        if (matcher.matches()) {
+            VarInt.encode(Long.parseLong(matcher.group(1)) + 1, outStream);
+        } else {
+            VarInt.encode(0L, outStream);
+            STRING_CODER.encode(value, outStream, Context.NESTED);
+        }
+    }
+
+    @Override
+    public String decode(InputStream inStream, Context context) throws IOException {
+        long number = VarInt.decodeLong(inStream);
+        if (number == 0) {
+            return STRING_CODER.decode(inStream, Context.NESTED);
+        }
+        return String.format(SHARD_ID_FORMAT, number - 1);
+    }
+}
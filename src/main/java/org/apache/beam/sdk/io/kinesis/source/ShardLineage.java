@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Lists.newArrayList;
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Maps.newLinkedHashMap;
+import org.apache.beam.sdk.io.kinesis.client.SimplifiedKinesisClient;
+
+import com.amazonaws.services.kinesis.model.Shard;
+import java.util.List;
+import java.util.Map;
+
+/***
+ * Parent-child relations between shards of a stream, as listed by
+ * {@link SimplifiedKinesisClient#listShards(String)}.
+ * <p>
+ * Resharding closes shards and creates their children: splitting a shard creates two children
+ * with the same parent, merging two shards creates a child with a parent and an adjacent parent.
+ * Closed shards stay listed until their records expire. Records with the same partition key
+ * are read in order only if parents are read before their children.
+ */
+public class ShardLineage {
+    private final Map<String, Shard> shards = newLinkedHashMap();
+
+    public ShardLineage(List<Shard> shards) {
+        for (Shard shard : shards) {
+            this.shards.put(shard.getShardId(), shard);
+        }
+    }
+
+    public boolean contains(String shardId) {
+        return shards.containsKey(shardId);
+    }
+
+    /***
+     * @return true if the shard is listed and was not closed by resharding
+     */
+    public boolean isOpen(String shardId) {
+        Shard shard = shards.get(shardId);
+        return shard != null && shard.getSequenceNumberRange().getEndingSequenceNumber() == null;
+    }
+
+    /***
+     * @return shards which don't have to wait for any of their parents, because none of them
+     * is listed anymore
+     */
+    public List<Shard> getRootShards() {
+        List<Shard> roots = newArrayList();
+        for (Shard shard : shards.values()) {
+            if (!contains(shard.getParentShardId()) &&
+                    !contains(shard.getAdjacentParentShardId())) {
+                roots.add(shard);
+            }
+        }
+        return roots;
+    }
+
+    /***
+     * @return shards which were not closed by resharding
+     */
+    public List<Shard> getOpenShards() {
+        List<Shard> open = newArrayList();
+        for (Shard shard : shards.values()) {
+            if (shard.getSequenceNumberRange().getEndingSequenceNumber() == null) {
+                open.add(shard);
+            }
+        }
+        return open;
+    }
+
+    /***
+     * @return shards having given shard as their parent or adjacent parent
+     */
+    public List<Shard> getChildrenOf(String shardId) {
+        List<Shard> children = newArrayList();
+        for (Shard shard : shards.values()) {
+            if (shardId.equals(shard.getParentShardId()) ||
+                    shardId.equals(shard.getAdjacentParentShardId())) {
+                children.add(shard);
+            }
+        }
+        return children;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkNotNull;
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkState;
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Lists.newArrayList;
+import org.apache.beam.sdk.repackaged.com.google.common.base.Ticker;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Decides which shard should be read next by {@link KinesisReader}.
+ * <p>
+ * Shards which may have records are kept in a ready list. The current one is read for as long
+ * as it has fetched records, so advancing over buffered records takes constant time. Once they
+ * are all returned, its turn ends and the next current shard is chosen from the ready ones
+ * according to their weights given by {@link ShardSelectionPolicy}, using smooth weighted round
+ * robin: with every choice each ready shard earns credit equal to its weight, the one with
+ * the most credit is chosen and pays back the weights of all of them.
+ * A shard which returned no records is put aside until it may be polled again, i.e. until
+ * Kinesis limits allow it and its idle backoff passes. The backoff grows exponentially with
+ * each consecutive empty poll, up to {@link #MAX_IDLE_BACKOFF_NANOS}, and is reset once
+ * the shard returns a record. So idle shards cost neither API calls nor CPU time on each advance.
+ * Shards whose records are pushed by Kinesis (enhanced fan-out) have no calls to save, so their
+ * backoff never exceeds {@link #PUSHED_SHARD_IDLE_BACKOFF_NANOS}, which keeps the latency of
+ * the next pushed record low.
+ */
+class ShardPollScheduler implements Iterable<ShardRecordsIterator> {
+    static final long MIN_IDLE_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    static final long MAX_IDLE_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(1);
+    static final long PUSHED_SHARD_IDLE_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final ShardSelectionPolicy selectionPolicy;
+    private final Ticker ticker;
+    private final List<ScheduledShard> ready = newArrayList();
+    private final PriorityQueue<ScheduledShard> waiting =
+            new PriorityQueue<>(11, new Comparator<ScheduledShard>() {
+                @Override
+                public int compare(ScheduledShard a, ScheduledShard b) {
+                    int result = Long.compare(a.nextPollNanos - b.nextPollNanos, 0);
+                    return result != 0 ? result : Long.compare(a.order, b.order);
+                }
+            });
+    private ScheduledShard current;
+    private long scheduledCount;
+
+    public ShardPollScheduler(Iterable<ShardRecordsIterator> shards,
+                              ShardSelectionPolicy selectionPolicy) {
+        this(shards, selectionPolicy, Ticker.systemTicker());
+    }
+
+    public ShardPollScheduler(Iterable<ShardRecordsIterator> shards,
+                              ShardSelectionPolicy selectionPolicy, Ticker ticker) {
+        checkNotNull(shards);
+        checkNotNull(selectionPolicy);
+        checkNotNull(ticker);
+
+        this.selectionPolicy = selectionPolicy;
+        this.ticker = ticker;
+        for (ShardRecordsIterator shard : shards) {
+            add(shard);
+        }
+    }
+
+    /***
+     * @return shard which should be read now, null if none of them should be read yet
+     */
+    public ShardRecordsIterator getCurrent() {
+        long now = ticker.read();
+        while (!waiting.isEmpty() && waiting.peek().nextPollNanos - now <= 0) {
+            ready.add(waiting.poll());
+        }
+        if (current == null && !ready.isEmpty()) {
+            current = chooseNext();
+        }
+        return current == null ? null : current.shard;
+    }
+
+    private ScheduledShard chooseNext() {
+        double totalWeight = 0;
+        int chosen = 0;
+        for (int i = 0; i < ready.size(); ++i) {
+            ScheduledShard candidate = ready.get(i);
+            double weight = selectionPolicy.weightOf(candidate.shard);
+            checkState(weight > 0, "Weight of shard must be positive, was %s", weight);
+            candidate.credit += weight;
+            totalWeight += weight;
+            if (candidate.credit > ready.get(chosen).credit) {
+                chosen = i;
+            }
+        }
+        ScheduledShard next = ready.remove(chosen);
+        next.credit -= totalWeight;
+        return next;
+    }
+
+    /***
+     * Current shard returned a record. It stays current until it has no more fetched records.
+     */
+    public void markCurrentActive() {
+        current.emptyPolls = 0;
+        if (!current.shard.hasFetchedRecords()) {
+            ready.add(current);
+            current = null;
+        }
+    }
+
+    /***
+     * Current shard returned no records, so it is put aside for the idle backoff,
+     * or longer if it can't be polled again earlier.
+     */
+    public void markCurrentIdle(long nanosUntilNextPoll) {
+        current.emptyPolls++;
+        long backoff = idleBackoff(current.emptyPolls);
+        if (current.shard.isPushBased()) {
+            backoff = Math.min(backoff, PUSHED_SHARD_IDLE_BACKOFF_NANOS);
+        }
+        postponeCurrent(Math.max(nanosUntilNextPoll, backoff));
+    }
+
+    /***
+     * Current shard can't be polled yet, it's put aside without extending its backoff.
+     */
+    public void postponeCurrent(long nanos) {
+        current.nextPollNanos = ticker.read() + nanos;
+        current.order = scheduledCount++;
+        waiting.add(current);
+        current = null;
+    }
+
+    /***
+     * Removes current shard, the next one is chosen from the ready ones.
+     */
+    public ShardRecordsIterator removeCurrent() {
+        ShardRecordsIterator removed = current.shard;
+        current = null;
+        return removed;
+    }
+
+    /***
+     * Adds shard, which is ready to be polled.
+     */
+    public void add(ShardRecordsIterator shard) {
+        ready.add(new ScheduledShard(shard));
+    }
+
+    public int size() {
+        return (current == null ? 0 : 1) + ready.size() + waiting.size();
+    }
+
+    @Override
+    public Iterator<ShardRecordsIterator> iterator() {
+        List<ShardRecordsIterator> shards = newArrayList();
+        if (current != null) {
+            shards.add(current.shard);
+        }
+        for (ScheduledShard scheduled : ready) {
+            shards.add(scheduled.shard);
+        }
+        for (ScheduledShard scheduled : waiting) {
+            shards.add(scheduled.shard);
+        }
+        return shards.iterator();
+    }
+
+    private static long idleBackoff(int emptyPolls) {
+        int doublings = Math.min(emptyPolls - 1, 30);
+        return Math.min(MAX_IDLE_BACKOFF_NANOS, MIN_IDLE_BACKOFF_NANOS << doublings);
+    }
+
+    /***
+     * Shard with its polling schedule.
+     */
+    private static class ScheduledShard {
+        private final ShardRecordsIterator shard;
+        private int emptyPolls;
+        private double credit;
+        private long nextPollNanos;
+        private long order;
+
+        ScheduledShard(ShardRecordsIterator shard) {
+            this.shard = shard;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkArgument;
+import org.apache.beam.sdk.io.kinesis.utils.TokenBucket;
+import org.apache.beam.sdk.repackaged.com.google.common.base.Ticker;
+
+/***
+ * Keeps reads from a single shard within the limits imposed by Kinesis, i.e. 5 GetRecords calls
+ * and 2 MB of data per second.
+ * <p>
+ * Both limits are shared by all applications reading from the same stream, so the reader can be
+ * restricted to use only some share of them.
+ * <p>
+ * The size of a response is known only after the call, so a single large response can put the
+ * bytes budget into debt. No further calls are allowed until the debt is paid back, which is
+ * exactly what Kinesis would enforce by throttling us otherwise.
+ */
+class ShardReadLimiter {
+    static final double GET_RECORDS_CALLS_PER_SECOND = 5;
+    static final double READ_BYTES_PER_SECOND = 2 * 1024 * 1024;
+
+    private final TokenBucket calls;
+    private final TokenBucket bytes;
+
+    public ShardReadLimiter(double readShare) {
+        this(readShare, Ticker.systemTicker());
+    }
+
+    public ShardReadLimiter(double readShare, Ticker ticker) {
+        checkArgument(readShare > 0 && readShare <= 1, "Read share must be in (0, 1] range");
+
+        this.calls = new TokenBucket(1, GET_RECORDS_CALLS_PER_SECOND * readShare, ticker);
+        double bytesPerSecond = READ_BYTES_PER_SECOND * readShare;
+        this.bytes = new TokenBucket(bytesPerSecond, bytesPerSecond, ticker);
+    }
+
+    /***
+     * @return true if a GetRecords call can be made now. The call is then accounted for.
+     */
+    public boolean tryAcquireCall() {
+        return bytes.nanosUntilAvailable(0) == 0 && calls.tryTake(1);
+    }
+
+    public void recordBytesRead(long byteCount) {
+        bytes.take(byteCount);
+    }
+
+    /***
+     * @return how long one has to wait until the next GetRecords call is allowed.
+     */
+    public long nanosUntilNextCall() {
+        return Math.max(calls.nanosUntilAvailable(1), bytes.nanosUntilAvailable(0));
+    }
+}
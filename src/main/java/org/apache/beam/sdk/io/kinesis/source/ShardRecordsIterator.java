@@ -21,51 +21,54 @@ import static org.apache.beam.sdk.repackaged.com.google.common.base.Precondition
         .checkNotNull;
 import static org.apache.beam.sdk.repackaged.com.google.common.collect.Queues
         .newArrayDeque;
+import org.apache.beam.sdk.io.UnboundedSource;
 import org.apache.beam.sdk.io.kinesis.client.SimplifiedKinesisClient;
-import org.apache.beam.sdk.io.kinesis.client.response.GetKinesisRecordsResult;
 import org.apache.beam.sdk.io.kinesis.client.response.KinesisRecord;
-import org.apache.beam.sdk.io.kinesis.source.checkpoint.PositionInShard;
 import org.apache.beam.sdk.io.kinesis.source.checkpoint.ShardCheckpoint;
 import org.apache.beam.sdk.repackaged.com.google.common.base.CustomOptional;
 import org.apache.beam.sdk.repackaged.com.google.common.base.Optional;
 
-import com.amazonaws.services.kinesis.model.ExpiredIteratorException;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
 import java.io.IOException;
 import java.util.Deque;
 
 /***
  * Iterates over records in a single shard.
- * Under the hood records are retrieved from Kinesis in batches and stored in the in-memory queue.
+ * Under the hood records are retrieved from Kinesis in batches (by {@link RecordBatchFetcher})
+ * and stored in the in-memory queue.
  * Then the caller of {@link ShardRecordsIterator#next()} can read from queue one by one.
+ * {@link #getCheckpoint()} reflects only records which were already returned by
+ * {@link #next()}, no matter how many records were fetched ahead.
  */
 public class ShardRecordsIterator {
-    private static final Logger LOG = LoggerFactory.getLogger(ShardRecordsIterator.class);
-
-    private final SimplifiedKinesisClient kinesis;
-    private final RecordFilter filter;
+    private final RecordBatchFetcher fetcher;
+    private final ShardWatermarkTracker watermarkTracker = new ShardWatermarkTracker(Instant.now());
+    private final ShardBacklogEstimator backlogEstimator = new ShardBacklogEstimator();
     private ShardCheckpoint checkpoint;
-    private String nextShardIterator;
     private Deque<KinesisRecord> data = newArrayDeque();
+    private long dataBytes;
 
     public ShardRecordsIterator(final ShardCheckpoint initialCheckpoint,
-                                SimplifiedKinesisClient simplifiedKinesisClient) throws
-            IOException {
+                                SimplifiedKinesisClient simplifiedKinesisClient) {
         this(initialCheckpoint, simplifiedKinesisClient, new RecordFilter());
     }
 
     public ShardRecordsIterator(final ShardCheckpoint initialCheckpoint,
                                 SimplifiedKinesisClient simplifiedKinesisClient,
-                                RecordFilter filter) throws
-            IOException {
+                                RecordFilter filter) {
+        this(initialCheckpoint,
+                new DirectRecordBatchFetcher(initialCheckpoint, simplifiedKinesisClient, filter,
+                        new ShardReadLimiter(1.0),
+                        new BatchLimitTuner(ReaderSettings.DEFAULT_MEMORY_BUDGET)));
+    }
+
+    ShardRecordsIterator(final ShardCheckpoint initialCheckpoint, RecordBatchFetcher fetcher) {
         checkNotNull(initialCheckpoint);
-        checkNotNull(simplifiedKinesisClient);
+        checkNotNull(fetcher);
 
         this.checkpoint = initialCheckpoint;
-        this.filter = filter;
-        this.kinesis = simplifiedKinesisClient;
-        nextShardIterator = checkpoint.getShardIterator();
+        this.fetcher = fetcher;
     }
 
 
@@ -80,31 +83,89 @@ public class ShardRecordsIterator {
             return CustomOptional.absent();
         } else {
             KinesisRecord record = data.removeFirst();
+            dataBytes -= record.getData().remaining();
             checkpoint = checkpoint.moveAfter(record);
+            watermarkTracker.recordConsumed(record, Instant.now());
             return CustomOptional.of(record);
         }
     }
 
     private void readMoreIfNecessary() throws IOException {
         if (data.isEmpty()) {
-            GetKinesisRecordsResult response;
-            try {
-                response = kinesis.getRecords(nextShardIterator);
-            } catch (ExpiredIteratorException e) {
-                LOG.info("Refreshing expired iterator", e);
-                checkpoint = checkpoint.renewShardIterator(kinesis);
-                nextShardIterator = checkpoint.getShardIterator();
-                response = kinesis.getRecords(nextShardIterator);
-            }
-            LOG.debug("Fetched {} new records", response.getRecords().size());
-            nextShardIterator = response.getNextShardIterator();
-            data.addAll(filter.apply(response.getRecords(), checkpoint));
+            RecordBatch batch = fetcher.fetch();
+            watermarkTracker.recordFetched(batch);
+            backlogEstimator.recordFetched(batch);
+            data.addAll(batch.getRecords());
+            dataBytes += BatchLimitTuner.sizeOf(batch.getRecords());
         }
     }
 
+    /***
+     * @return how long one should wait before calling {@link #next()}, so that it doesn't
+     * need to call Kinesis before that is allowed. Zero if there are records already fetched.
+     */
+    public long nanosUntilNextRecord() {
+        return data.isEmpty() ? fetcher.nanosUntilNextFetch() : 0;
+    }
+
+    /***
+     * @return true if records of the shard are pushed by Kinesis, i.e. polling it is free
+     */
+    public boolean isPushBased() {
+        return fetcher.isPushBased();
+    }
+
+    /***
+     * @return true if there are records fetched, but not returned by {@link #next()} yet
+     */
+    public boolean hasFetchedRecords() {
+        return !data.isEmpty();
+    }
+
+    /***
+     * @return how far behind the tip of the shard was the last fetched batch,
+     * {@link RecordBatch#UNKNOWN_LAG} if not known yet
+     */
+    public long getMillisBehindLatest() {
+        return backlogEstimator.getMillisBehindLatest();
+    }
+
     public ShardCheckpoint getCheckpoint() {
         return checkpoint;
     }
 
+    public String getShardId() {
+        return checkpoint.getShardId();
+    }
 
+    /***
+     * @return true if the shard was closed by resharding and all its records were returned
+     */
+    public boolean isClosed() {
+        return data.isEmpty() && fetcher.isShardClosed();
+    }
+
+    /***
+     * Event time watermark of the shard, based on arrival timestamps of records,
+     * see {@link ShardWatermarkTracker}.
+     */
+    public Instant getWatermark(Instant now, Duration idleTimeout) {
+        return watermarkTracker.getWatermark(!data.isEmpty(), now, idleTimeout);
+    }
+
+    /***
+     * Bytes left to be read from the shard, including records fetched but not returned yet.
+     * See {@link ShardBacklogEstimator}.
+     */
+    public long getBacklogBytes() {
+        long backlog = backlogEstimator.getBacklogBytes();
+        if (backlog == UnboundedSource.UnboundedReader.BACKLOG_UNKNOWN) {
+            return backlog;
+        }
+        return backlog + dataBytes;
+    }
+
+    public void close() {
+        fetcher.close();
+    }
 }
@@ -0,0 +1,34 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import java.io.Serializable;
+
+/***
+ * Decides how often {@link KinesisReader} reads each of its shards, relative to the others.
+ * <p>
+ * Shards with records available get turns (each turn is a single batch of records) in
+ * proportion to their weights, using smooth weighted round robin. Weights are bounded, so
+ * every shard gets its turn eventually.
+ */
+public interface ShardSelectionPolicy extends Serializable {
+    /***
+     * @return positive weight of the shard, evaluated before each turn is given
+     */
+    double weightOf(ShardRecordsIterator shard);
+}
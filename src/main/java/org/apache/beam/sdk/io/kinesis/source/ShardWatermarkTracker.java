@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import org.apache.beam.sdk.io.kinesis.client.response.KinesisRecord;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import java.util.Date;
+
+/***
+ * Estimates event time watermark of a single shard based on approximate arrival timestamps
+ * of records consumed from it.
+ * <p>
+ * The watermark is the latest arrival timestamp consumed so far. Shard, which has been read up
+ * to its tip (as reported by Kinesis) and from which no record was consumed for the idle
+ * timeout, is considered idle - its watermark then follows the current time, delayed by
+ * the idle timeout, so that it doesn't hold back the watermark of the whole reader.
+ * The idle timeout should therefore also cover possible clock skew between the reader and
+ * Kinesis.
+ * <p>
+ * The watermark never goes back.
+ */
+class ShardWatermarkTracker {
+    private Instant watermark = BoundedWindow.TIMESTAMP_MIN_VALUE;
+    private Instant lastConsumedAt;
+    private long millisBehindLatest = RecordBatch.UNKNOWN_LAG;
+
+    public ShardWatermarkTracker(Instant now) {
+        this.lastConsumedAt = now;
+    }
+
+    public void recordConsumed(KinesisRecord record, Instant now) {
+        Date arrivalTimestamp = record.getApproximateArrivalTimestamp();
+        if (arrivalTimestamp != null) {
+            advanceTo(new Instant(arrivalTimestamp.getTime()));
+        }
+        lastConsumedAt = now;
+    }
+
+    public void recordFetched(RecordBatch batch) {
+        if (batch.isLagKnown()) {
+            millisBehindLatest = batch.getMillisBehindLatest();
+        }
+    }
+
+    public Instant getWatermark(boolean hasBufferedRecords, Instant now, Duration idleTimeout) {
+        boolean idle = !hasBufferedRecords && millisBehindLatest == 0 &&
+                !now.isBefore(lastConsumedAt.plus(idleTimeout));
+        if (idle) {
+            advanceTo(now.minus(idleTimeout));
+        }
+        return watermark;
+    }
+
+    private void advanceTo(Instant timestamp) {
+        if (timestamp.isAfter(watermark)) {
+            watermark = timestamp;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import com.amazonaws.services.kinesis.model.Shard;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/***
+ * Estimates how much load each shard puts on its reader, so that
+ * {@link KinesisSource#generateInitialSplits} can give each split a similar load instead of
+ * a similar number of shards.
+ * <p>
+ * Implement it to use e.g. recent {@code IncomingBytes} metrics of shards.
+ */
+public interface ShardWeigher extends Serializable {
+    /***
+     * @return non-negative weights of shards, by their ids. Shards missing in the map are
+     * assumed to have the average weight.
+     */
+    Map<String, Double> weigh(String streamName, List<Shard> shards) throws IOException;
+}
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkArgument;
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkNotNull;
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Iterables.getLast;
+import org.apache.beam.sdk.io.kinesis.client.EnhancedFanOutClient;
+import org.apache.beam.sdk.io.kinesis.client.ShardEventHandler;
+import org.apache.beam.sdk.io.kinesis.client.ShardSubscription;
+import org.apache.beam.sdk.io.kinesis.client.response.KinesisRecord;
+import org.apache.beam.sdk.io.kinesis.client.response.RecordDeaggregator;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.ShardCheckpoint;
+
+import com.amazonaws.services.kinesis.model.Record;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Receives records pushed by Kinesis through enhanced fan-out subscription to the shard.
+ * <p>
+ * Pushed batches are buffered until {@link #fetch()} is called. When the buffer is full,
+ * handling of the next event blocks, which slows down the subscription.
+ * Kinesis ends every subscription after 5 minutes, it is then renewed on next call to
+ * {@link #fetch()}, starting right after the last record received so far, unless the shard
+ * was closed by resharding.
+ * <p>
+ * A failed subscription is reported once by {@link #fetch()}, after the batches received
+ * before the failure have been consumed. The following call subscribes again, likewise
+ * starting right after the last record received.
+ */
+class SubscriptionRecordBatchFetcher implements RecordBatchFetcher {
+    private static final Logger LOG =
+            LoggerFactory.getLogger(SubscriptionRecordBatchFetcher.class);
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private final EnhancedFanOutClient client;
+    private final String consumerName;
+    private final RecordFilter filter;
+    private final BlockingQueue<RecordBatch> batches;
+    private volatile ShardCheckpoint position;
+    private volatile Throwable failure;
+    private volatile long idleMillisBehindLatest = RecordBatch.UNKNOWN_LAG;
+    private volatile boolean closed;
+    private volatile boolean shardEnded;
+    private volatile Handler activeHandler;
+    private ShardSubscription subscription;
+
+    public SubscriptionRecordBatchFetcher(ShardCheckpoint initialCheckpoint,
+                                          EnhancedFanOutClient client,
+                                          String consumerName,
+                                          RecordFilter filter,
+                                          int bufferSize) {
+        checkNotNull(initialCheckpoint);
+        checkNotNull(client);
+        checkNotNull(consumerName);
+        checkNotNull(filter);
+        checkArgument(bufferSize > 0, "Buffer size must be positive");
+
+        this.position = initialCheckpoint;
+        this.client = client;
+        this.consumerName = consumerName;
+        this.filter = filter;
+        this.batches = new ArrayBlockingQueue<>(bufferSize);
+    }
+
+    @Override
+    public RecordBatch fetch() throws IOException {
+        RecordBatch batch = batches.poll();
+        if (batch != null) {
+            return batch;
+        }
+        rethrowFailure();
+        subscribeIfNecessary();
+        return RecordBatch.withNoRecords(idleMillisBehindLatest);
+    }
+
+    @Override
+    public long nanosUntilNextFetch() {
+        return 0;
+    }
+
+    @Override
+    public boolean isPushBased() {
+        return true;
+    }
+
+    @Override
+    public boolean isShardClosed() {
+        return shardEnded && batches.isEmpty();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        activeHandler = null;
+        if (subscription != null) {
+            subscription.cancel();
+        }
+    }
+
+    private void subscribeIfNecessary() throws IOException {
+        if (activeHandler == null && !closed && !shardEnded) {
+            Handler handler = new Handler();
+            filter.rearm();
+            activeHandler = handler;
+            LOG.debug("Subscribing to shard at {}", position);
+            try {
+                subscription = position.subscribe(client, consumerName, handler);
+            } catch (IOException | RuntimeException e) {
+                activeHandler = null;
+                throw e;
+            }
+        }
+    }
+
+    private void rethrowFailure() throws IOException {
+        Throwable e = failure;
+        failure = null;
+        if (e != null) {
+            throw new IOException("Shard subscription failed", e);
+        }
+    }
+
+    /***
+     * Handles events of a single subscription, ignores them once the subscription is not
+     * the active one anymore.
+     */
+    private class Handler implements ShardEventHandler {
+        @Override
+        public void onEvent(List<Record> records, long millisBehindLatest) {
+            if (activeHandler != this) {
+                return;
+            }
+            List<KinesisRecord> batch = RecordDeaggregator.deaggregate(records, null,
+                    position.getShardId());
+            List<KinesisRecord> received = batch;
+            batch = filter.apply(batch, position);
+            if (batch.isEmpty()) {
+                if (!received.isEmpty() && position.isBeforeStart(getLast(received))) {
+                    position = position.moveAfter(getLast(received));
+                }
+                idleMillisBehindLatest = millisBehindLatest;
+                return;
+            }
+            idleMillisBehindLatest = RecordBatch.UNKNOWN_LAG;
+            RecordBatch recordBatch = new RecordBatch(batch, millisBehindLatest);
+            try {
+                while (!batches.offer(recordBatch, OFFER_TIMEOUT_MILLIS,
+                        TimeUnit.MILLISECONDS)) {
+                    if (activeHandler != this) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            position = position.moveAfter(getLast(batch));
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            if (activeHandler == this) {
+                failure = error;
+                activeHandler = null;
+            }
+        }
+
+        @Override
+        public void onShardEnd() {
+            if (activeHandler == this) {
+                shardEnded = true;
+                activeHandler = null;
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            if (activeHandler == this) {
+                activeHandler = null;
+            }
+        }
+    }
+}
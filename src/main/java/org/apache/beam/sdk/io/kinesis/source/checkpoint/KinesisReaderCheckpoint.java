@@ -20,33 +20,58 @@ package org.apache.beam.sdk.io.kinesis.source.checkpoint;
 import static org.apache.beam.sdk.repackaged.com.google.common.collect.Iterables.transform;
 import org.apache.beam.sdk.io.UnboundedSource;
 import org.apache.beam.sdk.io.kinesis.source.ShardRecordsIterator;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.store.ShardPositionStore;
 import org.apache.beam.sdk.repackaged.com.google.common.base.Function;
 import org.apache.beam.sdk.repackaged.com.google.common.collect.ImmutableList;
+import org.apache.beam.sdk.repackaged.com.google.common.collect.Lists;
 import static com.google.api.client.util.Lists.newArrayList;
 import static com.google.common.collect.Lists.partition;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import javax.annotation.Nullable;
 
 /***
  * Checkpoint representing a total progress in a set of shards in single stream.
  * The set of shards covered by {@link KinesisReaderCheckpoint} may or may not be equal to set of
  * all shards present in the stream.
+ * <p>
+ * If the checkpoint was taken by a reader with {@link ShardPositionStore}, its positions are
+ * committed to the store once the checkpoint is finalized. The store is not persisted with
+ * the checkpoint.
  * This class is immutable.
  */
 public class KinesisReaderCheckpoint implements Iterable<ShardCheckpoint>, UnboundedSource
         .CheckpointMark, Serializable {
+    private static final long serialVersionUID = 5689714018986558372L;
     private final List<ShardCheckpoint> shardCheckpoints;
+    private final transient ShardPositionStore positionStore;
 
     public KinesisReaderCheckpoint(Iterable<ShardCheckpoint> shardCheckpoints) {
+        this(shardCheckpoints, null);
+    }
+
+    public KinesisReaderCheckpoint(Iterable<ShardCheckpoint> shardCheckpoints,
+                                   @Nullable ShardPositionStore positionStore) {
         this.shardCheckpoints = ImmutableList.copyOf(shardCheckpoints);
+        this.positionStore = positionStore;
     }
 
     public static KinesisReaderCheckpoint asCurrentStateOf(Iterable<ShardRecordsIterator>
                                                                    iterators) {
+        return asCurrentStateOf(iterators, null);
+    }
+
+    public static KinesisReaderCheckpoint asCurrentStateOf(
+            Iterable<ShardRecordsIterator> iterators,
+            @Nullable ShardPositionStore positionStore) {
         return new KinesisReaderCheckpoint(transform(iterators,
                 new Function<ShardRecordsIterator, ShardCheckpoint>() {
 
@@ -58,7 +83,7 @@ public class KinesisReaderCheckpoint implements Iterable<ShardCheckpoint>, Unbou
                         assert shardRecordsIterator != null;
                         return shardRecordsIterator.getCheckpoint();
                     }
-                }));
+                }), positionStore);
     }
 
     /***
@@ -77,13 +102,114 @@ public class KinesisReaderCheckpoint implements Iterable<ShardCheckpoint>, Unbou
         return checkpoints;
     }
 
+    /***
+     * Splits given multi-shard checkpoint into partitions of approximately equal total weight
+     * of their shards, by assigning shards from the heaviest one to the currently lightest
+     * partition. Shards without weight are assumed to have the average one.
+     *
+     * @param desiredNumSplits - upper limit for number of partitions to generate.
+     * @param weights - weights of shards by their ids
+     * @return list of checkpoints covering partitions of current checkpoint, shards keep their
+     *     relative order within each partition.
+     */
+    public List<KinesisReaderCheckpoint> splitInto(int desiredNumSplits,
+                                                   Map<String, Double> weights) {
+        int splitCount = Math.min(desiredNumSplits, shardCheckpoints.size());
+        if (splitCount <= 1) {
+            return splitInto(desiredNumSplits);
+        }
+        double defaultWeight = averageOf(weights.values());
+        final double[] shardWeights = new double[shardCheckpoints.size()];
+        List<Integer> heaviestFirst = newArrayList();
+        for (int i = 0; i < shardCheckpoints.size(); ++i) {
+            Double weight = weights.get(shardCheckpoints.get(i).getShardId());
+            shardWeights[i] = weight == null ? defaultWeight : weight;
+            heaviestFirst.add(i);
+        }
+        Collections.sort(heaviestFirst, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int result = Double.compare(shardWeights[b], shardWeights[a]);
+                return result != 0 ? result : Integer.compare(a, b);
+            }
+        });
+
+        PriorityQueue<Partition> lightestFirst = new PriorityQueue<>(splitCount);
+        for (int i = 0; i < splitCount; ++i) {
+            lightestFirst.add(new Partition(i));
+        }
+        List<List<Integer>> assignments = newArrayList();
+        for (int i = 0; i < splitCount; ++i) {
+            assignments.add(Lists.<Integer>newArrayList());
+        }
+        for (int shard : heaviestFirst) {
+            Partition partition = lightestFirst.poll();
+            assignments.get(partition.index).add(shard);
+            partition.weight += shardWeights[shard];
+            partition.shardCount++;
+            lightestFirst.add(partition);
+        }
+
+        List<KinesisReaderCheckpoint> checkpoints = newArrayList();
+        for (List<Integer> assignment : assignments) {
+            Collections.sort(assignment);
+            List<ShardCheckpoint> partition = newArrayList();
+            for (int shard : assignment) {
+                partition.add(shardCheckpoints.get(shard));
+            }
+            checkpoints.add(new KinesisReaderCheckpoint(partition));
+        }
+        return checkpoints;
+    }
+
+    private static double averageOf(Collection<Double> values) {
+        if (values.isEmpty()) {
+            return 1;
+        }
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum / values.size();
+    }
+
     private int divideAndRoundUp(int nominator, int denominator) {
         return (nominator + denominator - 1) / denominator;
     }
 
+    /***
+     * Partition being filled by {@link #splitInto(int, Map)}, the lightest one (or with fewer
+     * shards, if weights are equal) comes first.
+     */
+    private static class Partition implements Comparable<Partition> {
+        private final int index;
+        private double weight;
+        private int shardCount;
+
+        Partition(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public int compareTo(Partition other) {
+            int result = Double.compare(weight, other.weight);
+            if (result == 0) {
+                result = Integer.compare(shardCount, other.shardCount);
+            }
+            return result != 0 ? result : Integer.compare(index, other.index);
+        }
+    }
+
     @Override
     public void finalizeCheckpoint() throws IOException {
-
+        if (positionStore == null || shardCheckpoints.isEmpty()) {
+            return;
+        }
+        List<PositionInShard> positions = newArrayList();
+        for (ShardCheckpoint shardCheckpoint : shardCheckpoints) {
+            positions.add(shardCheckpoint.getPositionInShard());
+        }
+        positionStore.commit(shardCheckpoints.get(0).getStreamName(), positions);
     }
 
     @Override
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source.checkpoint;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Lists.newArrayList;
+import org.apache.beam.sdk.coders.AtomicCoder;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.coders.SerializableCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.io.kinesis.source.SequenceNumberCoder;
+import org.apache.beam.sdk.io.kinesis.source.ShardIdCoder;
+import org.apache.beam.sdk.util.VarInt;
+
+import com.amazonaws.services.kinesis.model.ShardIteratorType;
+import org.joda.time.Instant;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.List;
+
+/***
+ * Compact, deterministic coder of {@link KinesisReaderCheckpoint}.
+ * <p>
+ * Stream name is written once per checkpoint. Shard ids in the usual form are written as
+ * numbers ({@link ShardIdCoder}), sequence numbers as binary big integers
+ * ({@link SequenceNumberCoder}) and all lengths and counts as variable-length integers.
+ * Shard iterators are not written, as they expire long before most checkpoints are restored.
+ * <p>
+ * Every checkpoint starts with format version. Checkpoints written with Java serialization
+ * (i.e. by {@link SerializableCoder}, which was used before) are recognized by the magic number
+ * of Java serialization stream and can still be decoded.
+ */
+public class KinesisReaderCheckpointCoder extends AtomicCoder<KinesisReaderCheckpoint> {
+    private static final int VERSION = 1;
+    private static final int JAVA_SERIALIZATION_MAGIC = 0xAC;
+    private static final ShardIteratorType[] ITERATOR_TYPES = {
+            ShardIteratorType.TRIM_HORIZON,
+            ShardIteratorType.LATEST,
+            ShardIteratorType.AT_SEQUENCE_NUMBER,
+            ShardIteratorType.AFTER_SEQUENCE_NUMBER,
+            ShardIteratorType.AT_TIMESTAMP
+    };
+    private static final StringUtf8Coder STRING_CODER = StringUtf8Coder.of();
+    private static final ShardIdCoder SHARD_ID_CODER = ShardIdCoder.of();
+    private static final SequenceNumberCoder SEQUENCE_NUMBER_CODER = SequenceNumberCoder.of();
+    private static final KinesisReaderCheckpointCoder INSTANCE =
+            new KinesisReaderCheckpointCoder();
+
+    public static KinesisReaderCheckpointCoder of() {
+        return INSTANCE;
+    }
+
+    private KinesisReaderCheckpointCoder() {
+    }
+
+    @Override
+    public void encode(KinesisReaderCheckpoint value, OutputStream outStream, Context context)
+            throws IOException {
+        List<ShardCheckpoint> shards = newArrayList(value);
+        outStream.write(VERSION);
+        VarInt.encode(shards.size(), outStream);
+        if (shards.isEmpty()) {
+            return;
+        }
+        String streamName = shards.get(0).getStreamName();
+        STRING_CODER.encode(streamName, outStream, Context.NESTED);
+        for (ShardCheckpoint shard : shards) {
+            if (!streamName.equals(shard.getStreamName())) {
+                throw new CoderException("All shards of checkpoint must belong to one stream");
+            }
+            encodeShard(shard, outStream);
+        }
+    }
+
+    @Override
+    public KinesisReaderCheckpoint decode(InputStream inStream, Context context)
+            throws IOException {
+        int version = inStream.read();
+        if (version == JAVA_SERIALIZATION_MAGIC) {
+            return SerializableCoder.of(KinesisReaderCheckpoint.class).decode(
+                    new SequenceInputStream(
+                            new ByteArrayInputStream(new byte[]{(byte) version}), inStream),
+                    context);
+        } else if (version != VERSION) {
+            throw new CoderException("Unknown checkpoint format version " + version);
+        }
+        int count = VarInt.decodeInt(inStream);
+        List<ShardCheckpoint> shards = newArrayList();
+        if (count > 0) {
+            String streamName = STRING_CODER.decode(inStream, Context.NESTED);
+            for (int i = 0; i < count; ++i) {
+                shards.add(decodeShard(streamName, inStream));
+            }
+        }
+        return new KinesisReaderCheckpoint(shards);
+    }
+
+    private void encodeShard(ShardCheckpoint shard, OutputStream outStream) throws IOException {
+        PositionInShard position = shard.getPositionInShard();
+        SHARD_ID_CODER.encode(position.getShardId(), outStream, Context.NESTED);
+        outStream.write(iteratorTypeCode(position.getShardIteratorType()));
+        if (position.getSequenceNumber() != null) {
+            SEQUENCE_NUMBER_CODER.encode(position.getSequenceNumber(), outStream, Context.NESTED);
+        }
+        Long subSequenceNumber = position.getSubSequenceNumber();
+        VarInt.encode(subSequenceNumber == null ? 0 : subSequenceNumber + 1, outStream);
+        Instant startTimestamp = position.getStartTimestamp();
+        VarInt.encode(startTimestamp == null ? 0 : startTimestamp.getMillis() + 1, outStream);
+    }
+
+    private ShardCheckpoint decodeShard(String streamName, InputStream inStream)
+            throws IOException {
+        String shardId = SHARD_ID_CODER.decode(inStream, Context.NESTED);
+        ShardIteratorType type = iteratorType(inStream.read());
+        String sequenceNumber = null;
+        if (type == ShardIteratorType.AT_SEQUENCE_NUMBER ||
+                type == ShardIteratorType.AFTER_SEQUENCE_NUMBER) {
+            sequenceNumber = SEQUENCE_NUMBER_CODER.decode(inStream, Context.NESTED);
+        }
+        long subSequenceNumber = VarInt.decodeLong(inStream);
+        long startTimestamp = VarInt.decodeLong(inStream);
+        return new ShardCheckpoint(
+                new PositionInShard(streamName, shardId, type, sequenceNumber,
+                        subSequenceNumber == 0 ? null : subSequenceNumber - 1,
+                        startTimestamp == 0 ? null : new Instant(startTimestamp - 1)));
+    }
+
+    private int iteratorTypeCode(ShardIteratorType type) throws CoderException {
+        for (int i = 0; i < ITERATOR_TYPES.length; ++i) {
+            if (ITERATOR_TYPES[i] == type) {
+                return i;
+            }
+        }
+        throw new CoderException("Unsupported shard iterator type " + type);
+    }
+
+    private ShardIteratorType iteratorType(int code) throws CoderException {
+        if (code < 0 || code >= ITERATOR_TYPES.length) {
+            throw new CoderException("Unknown shard iterator type " + code);
+        }
+        return ITERATOR_TYPES[code];
+    }
+}
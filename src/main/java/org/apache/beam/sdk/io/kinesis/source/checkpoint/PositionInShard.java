@@ -21,18 +21,23 @@ import static org.apache.beam.sdk.repackaged.com.google.common.base.Precondition
         .checkArgument;
 import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
         .checkNotNull;
+import org.apache.beam.sdk.io.kinesis.client.EnhancedFanOutClient;
+import org.apache.beam.sdk.io.kinesis.client.ShardEventHandler;
+import org.apache.beam.sdk.io.kinesis.client.ShardSubscription;
 import org.apache.beam.sdk.io.kinesis.client.SimplifiedKinesisClient;
 import org.apache.beam.sdk.io.kinesis.client.response.KinesisRecord;
-import org.apache.beam.sdk.io.kinesis.source.ShardRecordsIterator;
 
 import static com.amazonaws.services.kinesis.model.ShardIteratorType.AFTER_SEQUENCE_NUMBER;
 import static com.amazonaws.services.kinesis.model.ShardIteratorType.AT_SEQUENCE_NUMBER;
+import static com.amazonaws.services.kinesis.model.ShardIteratorType.AT_TIMESTAMP;
 import com.amazonaws.services.kinesis.clientlibrary.lib.worker.InitialPositionInStream;
 import com.amazonaws.services.kinesis.clientlibrary.types.ExtendedSequenceNumber;
 import com.amazonaws.services.kinesis.model.Record;
 import com.amazonaws.services.kinesis.model.ShardIteratorType;
+import org.joda.time.Instant;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Date;
 
 /***
  * Checkpoint mark for single shard in the stream.
@@ -40,19 +45,24 @@ import java.io.Serializable;
  * <ul>
  * <li>{@link #shardIteratorType} if it is equal to {@link ShardIteratorType#LATEST} or
  * {@link ShardIteratorType#TRIM_HORIZON}</li>
+ * <li>{@link #startTimestamp} if {@link ShardIteratorType#AT_TIMESTAMP}</li>
  * <li>combination of
  * {@link #sequenceNumber} and {@link #subSequenceNumber} if
  * {@link ShardIteratorType#AFTER_SEQUENCE_NUMBER} or
  * {@link ShardIteratorType#AT_SEQUENCE_NUMBER}</li>
  * </ul>
+ * Records which arrived to Kinesis before {@link #startTimestamp} are skipped also on the client
+ * side, as arrival timestamps are approximate, so positions moved after such records keep it.
  * This class is immutable.
  */
 public class PositionInShard implements Serializable {
+    private static final long serialVersionUID = -7423739459362774087L;
     private final String streamName;
     private final String shardId;
     private final String sequenceNumber;
     private final ShardIteratorType shardIteratorType;
     private final Long subSequenceNumber;
+    private final Instant startTimestamp;
 
     public PositionInShard(String streamName, String shardId, InitialPositionInStream
             initialPositionInStream) {
@@ -66,8 +76,21 @@ public class PositionInShard implements Serializable {
         this(streamName, shardId, shardIteratorType, sequenceNumber, null);
     }
 
+    /***
+     * Position at the first record which arrived to Kinesis at or after given timestamp.
+     */
+    public PositionInShard(String streamName, String shardId, Instant startTimestamp) {
+        this(streamName, shardId, AT_TIMESTAMP, null, null, checkNotNull(startTimestamp));
+    }
+
     public PositionInShard(String streamName, String shardId, ShardIteratorType
             shardIteratorType, String sequenceNumber, Long subSequenceNumber) {
+        this(streamName, shardId, shardIteratorType, sequenceNumber, subSequenceNumber, null);
+    }
+
+    public PositionInShard(String streamName, String shardId, ShardIteratorType
+            shardIteratorType, String sequenceNumber, Long subSequenceNumber,
+                           Instant startTimestamp) {
 
         checkNotNull(streamName);
         checkNotNull(shardId);
@@ -78,7 +101,10 @@ public class PositionInShard implements Serializable {
                             " or AFTER_SEQUENCE_NUMBER");
         } else {
             checkArgument(sequenceNumber == null,
-                    "Sequence number must be null for LATEST or TRIM_HORIZON");
+                    "Sequence number must be null for LATEST, TRIM_HORIZON or AT_TIMESTAMP");
+        }
+        if (shardIteratorType == AT_TIMESTAMP) {
+            checkNotNull(startTimestamp, "You must provide start timestamp for AT_TIMESTAMP");
         }
 
         this.subSequenceNumber = subSequenceNumber;
@@ -86,6 +112,7 @@ public class PositionInShard implements Serializable {
         this.streamName = streamName;
         this.shardId = shardId;
         this.sequenceNumber = sequenceNumber;
+        this.startTimestamp = startTimestamp;
     }
 
     /***
@@ -102,22 +129,70 @@ public class PositionInShard implements Serializable {
         return result < 0;
     }
 
+    /***
+     * @return true if given record arrived to Kinesis before {@link #startTimestamp}
+     * and therefore must not be read
+     */
+    public boolean isBeforeStart(KinesisRecord record) {
+        if (startTimestamp == null) {
+            return false;
+        }
+        Date arrival = record.getApproximateArrivalTimestamp();
+        return arrival != null && arrival.getTime() < startTimestamp.getMillis();
+    }
+
     private ExtendedSequenceNumber extendedSequenceNumber() {
         String fullSequenceNumber = sequenceNumber;
-        if (fullSequenceNumber == null) {
+        if (shardIteratorType == AT_TIMESTAMP) {
+            // every record of the shard is after it, like after the trim horizon
+            fullSequenceNumber = ShardIteratorType.TRIM_HORIZON.toString();
+        } else if (fullSequenceNumber == null) {
             fullSequenceNumber = shardIteratorType.toString();
         }
         return new ExtendedSequenceNumber(fullSequenceNumber, subSequenceNumber);
     }
 
+    public String getStreamName() {
+        return streamName;
+    }
+
+    public String getShardId() {
+        return shardId;
+    }
+
+    public ShardIteratorType getShardIteratorType() {
+        return shardIteratorType;
+    }
+
+    public String getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    public Long getSubSequenceNumber() {
+        return subSequenceNumber;
+    }
+
+    /***
+     * @return timestamp before which records are skipped, null if none are
+     */
+    public Instant getStartTimestamp() {
+        return startTimestamp;
+    }
+
     @Override
     public String toString() {
-        return String.format("Position %s for stream %s, shard %s: %s", shardIteratorType,
-                streamName, shardId,
-                sequenceNumber);
+        String position = String.format("Position %s for stream %s, shard %s: %s",
+                shardIteratorType, streamName, shardId, sequenceNumber);
+        if (startTimestamp == null) {
+            return position;
+        }
+        return position + ", starting at " + startTimestamp;
     }
 
     public String obtainShardIterator(SimplifiedKinesisClient kinesisClient) throws IOException {
+        if (shardIteratorType == AT_TIMESTAMP) {
+            return kinesisClient.getShardIterator(streamName, shardId, startTimestamp);
+        }
         if (wasInsideBatchedRecord()) {
             return kinesisClient.getShardIterator(streamName,
                     shardId, AT_SEQUENCE_NUMBER,
@@ -128,12 +203,31 @@ public class PositionInShard implements Serializable {
                 sequenceNumber);
     }
 
+    /***
+     * Subscribes to the shard starting at this position, with the same semantics as
+     * {@link #obtainShardIterator(SimplifiedKinesisClient)}.
+     */
+    public ShardSubscription subscribe(EnhancedFanOutClient client, String consumerName,
+                                       ShardEventHandler handler) throws IOException {
+        if (shardIteratorType == AT_TIMESTAMP) {
+            return client.subscribeToShard(streamName, consumerName, shardId,
+                    AT_TIMESTAMP, null, startTimestamp, handler);
+        }
+        if (wasInsideBatchedRecord()) {
+            return client.subscribeToShard(streamName, consumerName, shardId,
+                    AT_SEQUENCE_NUMBER, sequenceNumber, null, handler);
+        }
+        return client.subscribeToShard(streamName, consumerName, shardId,
+                shardIteratorType, sequenceNumber, null, handler);
+    }
+
     private boolean wasInsideBatchedRecord() {
         return shardIteratorType == AFTER_SEQUENCE_NUMBER && subSequenceNumber != null;
     }
 
     /***
      * Used to advance checkpoint mark to position after given {@link Record}.
+     * Start timestamp is kept only while the records are still older than it.
      *
      * @param record
      * @return new checkpoint object pointing directly after given {@link Record}
@@ -143,6 +237,7 @@ public class PositionInShard implements Serializable {
                 streamName, shardId,
                 AFTER_SEQUENCE_NUMBER,
                 record.getSequenceNumber(),
-                record.getSubSequenceNumber());
+                record.getSubSequenceNumber(),
+                isBeforeStart(record) ? startTimestamp : null);
     }
 }
@@ -1,4 +1,4 @@
-package org.apache.beam.sdk.io.kinesis.source.checkpoint;/*
+/*
  * Licensed to the Apache Software Foundation (ASF) under one
  * or more contributor license agreements.  See the NOTICE file
  * distributed with this work for additional information
@@ -15,7 +15,11 @@ package org.apache.beam.sdk.io.kinesis.source.checkpoint;/*
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+package org.apache.beam.sdk.io.kinesis.source.checkpoint;
 
+import org.apache.beam.sdk.io.kinesis.client.EnhancedFanOutClient;
+import org.apache.beam.sdk.io.kinesis.client.ShardEventHandler;
+import org.apache.beam.sdk.io.kinesis.client.ShardSubscription;
 import org.apache.beam.sdk.io.kinesis.client.SimplifiedKinesisClient;
 import org.apache.beam.sdk.io.kinesis.client.response.KinesisRecord;
 import org.apache.beam.sdk.io.kinesis.source.ShardRecordsIterator;
@@ -24,9 +28,23 @@ import com.amazonaws.services.kinesis.clientlibrary.types.ExtendedSequenceNumber
 import java.io.IOException;
 import java.io.Serializable;
 
+/***
+ * Checkpoint for a single shard: {@link PositionInShard} together with the last known
+ * shard iterator pointing at (or before) that position, if there is one.
+ * <p>
+ * Only the position is persisted. Shard iterators expire after 5 minutes, so the iterator is
+ * merely a hint for the reader which created the checkpoint; readers restored from a checkpoint
+ * obtain fresh iterators for its positions.
+ * This class is immutable.
+ */
 public class ShardCheckpoint implements Serializable {
+    private static final long serialVersionUID = 4345853515789533980L;
     private final PositionInShard positionInShard;
-    private final String lastKnownShardIterator;
+    private final transient String lastKnownShardIterator;
+
+    public ShardCheckpoint(PositionInShard positionInShard) {
+        this(positionInShard, (String) null);
+    }
 
     public ShardCheckpoint(PositionInShard positionInShard, SimplifiedKinesisClient
             kinesisClient) throws IOException {
@@ -51,8 +69,7 @@ public class ShardCheckpoint implements Serializable {
                 lastKnownShardIterator);
     }
 
-    public ShardRecordsIterator getShardRecordsIterator(SimplifiedKinesisClient kinesis)
-            throws IOException {
+    public ShardRecordsIterator getShardRecordsIterator(SimplifiedKinesisClient kinesis) {
         return new ShardRecordsIterator(this, kinesis);
     }
 
@@ -60,6 +77,27 @@ public class ShardCheckpoint implements Serializable {
         return new ShardCheckpoint(positionInShard, positionInShard.obtainShardIterator(client));
     }
 
+    public ShardSubscription subscribe(EnhancedFanOutClient client, String consumerName,
+                                       ShardEventHandler handler) throws IOException {
+        return positionInShard.subscribe(client, consumerName, handler);
+    }
+
+    public PositionInShard getPositionInShard() {
+        return positionInShard;
+    }
+
+    public String getStreamName() {
+        return positionInShard.getStreamName();
+    }
+
+    public String getShardId() {
+        return positionInShard.getShardId();
+    }
+
+    /***
+     * @return last known shard iterator, null if there is none (e.g. after restoring from
+     * a persisted checkpoint)
+     */
     public String getShardIterator() {
         return lastKnownShardIterator;
     }
@@ -67,4 +105,8 @@ public class ShardCheckpoint implements Serializable {
     public boolean isBeforeOrAt(ExtendedSequenceNumber extendedSequenceNumber) {
         return positionInShard.isBeforeOrAt(extendedSequenceNumber);
     }
+
+    public boolean isBeforeStart(KinesisRecord record) {
+        return positionInShard.isBeforeStart(record);
+    }
 }
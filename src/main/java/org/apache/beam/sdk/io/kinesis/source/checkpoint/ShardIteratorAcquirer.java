@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source.checkpoint;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkArgument;
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Lists.newArrayList;
+import org.apache.beam.sdk.io.kinesis.client.SimplifiedKinesisClient;
+import org.apache.beam.sdk.io.kinesis.utils.TokenBucket;
+import org.apache.beam.sdk.repackaged.com.google.common.base.Ticker;
+import org.apache.beam.sdk.repackaged.com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Obtains shard iterators for many {@link PositionInShard}s at once.
+ * <p>
+ * Calls are spread over at most {@code parallelism} threads and together never exceed
+ * {@code callsPerSecond}, so that startup time doesn't grow linearly with the number of shards
+ * and yet a large stream doesn't flood the account with GetShardIterator calls. Throttled calls
+ * are still retried by {@link SimplifiedKinesisClient}.
+ */
+public class ShardIteratorAcquirer {
+    public static final int DEFAULT_PARALLELISM = 16;
+    public static final double DEFAULT_CALLS_PER_SECOND = 100.0;
+
+    private final int parallelism;
+    private final double callsPerSecond;
+
+    public ShardIteratorAcquirer(int parallelism, double callsPerSecond) {
+        checkArgument(parallelism > 0, "Parallelism must be positive");
+        checkArgument(callsPerSecond > 0, "Call rate must be positive");
+
+        this.parallelism = parallelism;
+        this.callsPerSecond = callsPerSecond;
+    }
+
+    public static ShardIteratorAcquirer defaults() {
+        return new ShardIteratorAcquirer(DEFAULT_PARALLELISM, DEFAULT_CALLS_PER_SECOND);
+    }
+
+    /***
+     * @return checkpoints for given positions, in the same order
+     * @throws IOException first failure encountered, remaining calls are abandoned
+     */
+    public List<ShardCheckpoint> acquire(List<PositionInShard> positions,
+                                         SimplifiedKinesisClient kinesis) throws IOException {
+        List<ShardCheckpoint> checkpoints = newArrayList();
+        if (positions.size() <= 1) {
+            for (PositionInShard position : positions) {
+                checkpoints.add(new ShardCheckpoint(position, kinesis));
+            }
+            return checkpoints;
+        }
+
+        TokenBucket rateLimiter = new TokenBucket(parallelism, callsPerSecond,
+                Ticker.systemTicker());
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(parallelism, positions.size()),
+                new ThreadFactoryBuilder()
+                        .setDaemon(true)
+                        .setNameFormat("kinesis-iterator-acquirer-%d")
+                        .build());
+        try {
+            List<Future<ShardCheckpoint>> futures = newArrayList();
+            for (PositionInShard position : positions) {
+                futures.add(executor.submit(
+                        new AcquireIterator(position, kinesis, rateLimiter)));
+            }
+            for (Future<ShardCheckpoint> future : futures) {
+                checkpoints.add(get(future));
+            }
+            return checkpoints;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static ShardCheckpoint get(Future<ShardCheckpoint> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while obtaining shard iterators");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Acquiring shard iterators with %d threads at %.1f calls/s",
+                parallelism, callsPerSecond);
+    }
+
+    private static class AcquireIterator implements Callable<ShardCheckpoint> {
+        private final PositionInShard position;
+        private final SimplifiedKinesisClient kinesis;
+        private final TokenBucket rateLimiter;
+
+        AcquireIterator(PositionInShard position, SimplifiedKinesisClient kinesis,
+                        TokenBucket rateLimiter) {
+            this.position = position;
+            this.kinesis = kinesis;
+            this.rateLimiter = rateLimiter;
+        }
+
+        @Override
+        public ShardCheckpoint call() throws Exception {
+            while (!rateLimiter.tryTake(1)) {
+                TimeUnit.NANOSECONDS.sleep(rateLimiter.nanosUntilAvailable(1));
+            }
+            return new ShardCheckpoint(position, kinesis);
+        }
+    }
+}
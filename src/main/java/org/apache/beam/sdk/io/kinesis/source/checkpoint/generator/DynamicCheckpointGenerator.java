@@ -18,6 +18,7 @@
 package org.apache.beam.sdk.io.kinesis.source.checkpoint.generator;
 
 import org.apache.beam.sdk.io.kinesis.client.SimplifiedKinesisClient;
+import org.apache.beam.sdk.io.kinesis.source.ShardLineage;
 import org.apache.beam.sdk.io.kinesis.source.checkpoint.KinesisReaderCheckpoint;
 import org.apache.beam.sdk.io.kinesis.source.checkpoint.PositionInShard;
 import org.apache.beam.sdk.io.kinesis.source.checkpoint.ShardCheckpoint;
@@ -26,41 +27,70 @@ import com.google.api.client.util.Lists;
 
 import com.amazonaws.services.kinesis.clientlibrary.lib.worker.InitialPositionInStream;
 import com.amazonaws.services.kinesis.model.Shard;
+import org.joda.time.Instant;
 import java.io.IOException;
 import java.util.List;
 
 /**
  * Creates {@link KinesisReaderCheckpoint}, which spans over all shards in given stream.
  * List of shards is obtained dynamically on call to {@link #generate(SimplifiedKinesisClient)}.
+ * <p>
+ * Shards, which still have one of their parents listed, are left out - they are read only after
+ * their parents have been closed (see {@link ShardLineage}). When reading from the latest
+ * position, only open shards are taken into account, as closed ones won't get new records.
+ * When starting at a timestamp, shards are read from the first record which arrived at or after
+ * it (see {@link PositionInShard#PositionInShard(String, String, Instant)}).
+ * <p>
+ * Checkpoints contain only positions - shard iterators are obtained by readers, which start
+ * reading from them.
  */
 public class DynamicCheckpointGenerator implements CheckpointGenerator {
     private final String streamName;
     private final InitialPositionInStream startPosition;
+    private final Instant startTimestamp;
 
     public DynamicCheckpointGenerator(String streamName, InitialPositionInStream startPosition) {
+        this(streamName, startPosition, null);
+    }
+
+    public DynamicCheckpointGenerator(String streamName, Instant startTimestamp) {
+        this(streamName, InitialPositionInStream.TRIM_HORIZON, checkNotNull(startTimestamp));
+    }
+
+    private DynamicCheckpointGenerator(String streamName, InitialPositionInStream startPosition,
+                                       Instant startTimestamp) {
         checkNotNull(streamName);
         checkNotNull(startPosition);
 
         this.streamName = streamName;
         this.startPosition = startPosition;
+        this.startTimestamp = startTimestamp;
     }
 
     @Override
     public KinesisReaderCheckpoint generate(final SimplifiedKinesisClient kinesis) throws
             IOException {
+        ShardLineage lineage = new ShardLineage(kinesis.listShards(streamName));
+        List<Shard> shards = startPosition == InitialPositionInStream.LATEST ?
+                lineage.getOpenShards() : lineage.getRootShards();
         List<ShardCheckpoint> shardCheckpoints = Lists.newArrayList();
-
-        for (Shard shard : kinesis.listShards(streamName)) {
-            ShardCheckpoint checkpoint = new ShardCheckpoint(
-                    new PositionInShard(streamName, shard.getShardId(), startPosition), kinesis);
-            shardCheckpoints.add(checkpoint);
+        for (Shard shard : shards) {
+            shardCheckpoints.add(new ShardCheckpoint(startPositionIn(shard.getShardId())));
         }
 
         return new KinesisReaderCheckpoint(shardCheckpoints);
     }
 
+    private PositionInShard startPositionIn(String shardId) {
+        if (startTimestamp != null) {
+            return new PositionInShard(streamName, shardId, startTimestamp);
+        }
+        return new PositionInShard(streamName, shardId, startPosition);
+    }
+
     @Override
     public String toString() {
-        return String.format("Checkpoint generator for %s: %s", streamName, startPosition);
+        return String.format("Checkpoint generator for %s: %s", streamName,
+                startTimestamp != null ? startTimestamp : startPosition);
     }
 }
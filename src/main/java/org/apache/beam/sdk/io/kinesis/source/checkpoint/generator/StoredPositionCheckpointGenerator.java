@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source.checkpoint.generator;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkNotNull;
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Lists.newArrayList;
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Maps.newHashMap;
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Sets.newHashSet;
+import org.apache.beam.sdk.io.kinesis.client.SimplifiedKinesisClient;
+import org.apache.beam.sdk.io.kinesis.source.ShardLineage;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.KinesisReaderCheckpoint;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.PositionInShard;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.ShardCheckpoint;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.store.ShardPositionStore;
+
+import com.amazonaws.services.kinesis.clientlibrary.lib.worker.InitialPositionInStream;
+import com.amazonaws.services.kinesis.model.Shard;
+import org.joda.time.Instant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/***
+ * Creates {@link KinesisReaderCheckpoint} resuming from positions in {@link ShardPositionStore},
+ * committed by a previous pipeline reading the same stream. Shards the store knows nothing about
+ * are read from the initial position, as by {@link DynamicCheckpointGenerator}. When the initial
+ * position is a timestamp, children of finished shards start at it as well.
+ * <p>
+ * Shards may have been resharded since the positions were committed, so (see
+ * {@link ShardLineage}):
+ * <ul>
+ * <li>shard whose child started to be read after it (i.e. the child has a position or is itself
+ * finished) was read to its end and is left out,</li>
+ * <li>child without position of such finished shard, or of shard which is not listed anymore,
+ * is read from its beginning,</li>
+ * <li>shard without position is left out if any of its ancestors has one, as it's reached when
+ * the ancestor is closed.</li>
+ * </ul>
+ * Child of merged shards is read from its beginning as soon as one of its parents is finished,
+ * even if the adjacent parent is still being read, just like a reader does when parents are
+ * read by different readers.
+ */
+public class StoredPositionCheckpointGenerator implements CheckpointGenerator {
+    private static final Logger LOG =
+            LoggerFactory.getLogger(StoredPositionCheckpointGenerator.class);
+
+    private final String streamName;
+    private final InitialPositionInStream startPosition;
+    private final Instant startTimestamp;
+    private final ShardPositionStore store;
+
+    public StoredPositionCheckpointGenerator(String streamName,
+                                             InitialPositionInStream startPosition,
+                                             ShardPositionStore store) {
+        this(streamName, startPosition, null, store);
+    }
+
+    public StoredPositionCheckpointGenerator(String streamName, Instant startTimestamp,
+                                             ShardPositionStore store) {
+        this(streamName, InitialPositionInStream.TRIM_HORIZON, checkNotNull(startTimestamp),
+                store);
+    }
+
+    private StoredPositionCheckpointGenerator(String streamName,
+                                              InitialPositionInStream startPosition,
+                                              Instant startTimestamp,
+                                              ShardPositionStore store) {
+        checkNotNull(streamName);
+        checkNotNull(startPosition);
+        checkNotNull(store);
+
+        this.streamName = streamName;
+        this.startPosition = startPosition;
+        this.startTimestamp = startTimestamp;
+        this.store = store;
+    }
+
+    @Override
+    public KinesisReaderCheckpoint generate(SimplifiedKinesisClient kinesis) throws IOException {
+        List<Shard> shards = kinesis.listShards(streamName);
+        Map<String, PositionInShard> stored = store.load(streamName);
+        LOG.info("Resuming {} from {} stored positions", streamName, stored.size());
+
+        ShardLineage lineage = new ShardLineage(shards);
+        Set<String> startShards = shardIdsOf(startPosition == InitialPositionInStream.LATEST ?
+                lineage.getOpenShards() : lineage.getRootShards());
+        Map<String, Shard> shardsById = newHashMap();
+        for (Shard shard : shards) {
+            shardsById.put(shard.getShardId(), shard);
+        }
+
+        List<ShardCheckpoint> shardCheckpoints = newArrayList();
+        for (Shard shard : shards) {
+            String shardId = shard.getShardId();
+            if (isFinished(shardId, lineage, stored)) {
+                continue;
+            }
+            if (stored.containsKey(shardId)) {
+                shardCheckpoints.add(new ShardCheckpoint(stored.get(shardId)));
+            } else if (hasFinishedParent(shard, lineage, stored)) {
+                shardCheckpoints.add(new ShardCheckpoint(beginningOf(shardId)));
+            } else if (startShards.contains(shardId) &&
+                    !hasStoredAncestor(shard, shardsById, stored)) {
+                shardCheckpoints.add(new ShardCheckpoint(startTimestamp != null ?
+                        beginningOf(shardId) :
+                        new PositionInShard(streamName, shardId, startPosition)));
+            }
+        }
+        return new KinesisReaderCheckpoint(shardCheckpoints);
+    }
+
+    private PositionInShard beginningOf(String shardId) {
+        if (startTimestamp != null) {
+            return new PositionInShard(streamName, shardId, startTimestamp);
+        }
+        return new PositionInShard(streamName, shardId, InitialPositionInStream.TRIM_HORIZON);
+    }
+
+    /***
+     * Reader of a shard starts reading its child (of which it is the parent, not the adjacent
+     * parent) only after it's read to the end.
+     */
+    private boolean isFinished(String shardId, ShardLineage lineage,
+                               Map<String, PositionInShard> stored) {
+        for (Shard child : lineage.getChildrenOf(shardId)) {
+            if (shardId.equals(child.getParentShardId()) &&
+                    (stored.containsKey(child.getShardId()) ||
+                            isFinished(child.getShardId(), lineage, stored))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasFinishedParent(Shard shard, ShardLineage lineage,
+                                      Map<String, PositionInShard> stored) {
+        for (String parentId : parentIdsOf(shard)) {
+            if (lineage.contains(parentId) ? isFinished(parentId, lineage, stored) :
+                    stored.containsKey(parentId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasStoredAncestor(Shard shard, Map<String, Shard> shardsById,
+                                      Map<String, PositionInShard> stored) {
+        for (String parentId : parentIdsOf(shard)) {
+            if (stored.containsKey(parentId)) {
+                return true;
+            }
+            Shard parent = shardsById.get(parentId);
+            if (parent != null && hasStoredAncestor(parent, shardsById, stored)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<String> parentIdsOf(Shard shard) {
+        List<String> parentIds = newArrayList();
+        if (shard.getParentShardId() != null) {
+            parentIds.add(shard.getParentShardId());
+        }
+        if (shard.getAdjacentParentShardId() != null) {
+            parentIds.add(shard.getAdjacentParentShardId());
+        }
+        return parentIds;
+    }
+
+    private Set<String> shardIdsOf(List<Shard> shards) {
+        Set<String> shardIds = newHashSet();
+        for (Shard shard : shards) {
+            shardIds.add(shard.getShardId());
+        }
+        return shardIds;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Checkpoint generator for %s: %s, falling back to %s", streamName,
+                store, startTimestamp != null ? startTimestamp : startPosition);
+    }
+}
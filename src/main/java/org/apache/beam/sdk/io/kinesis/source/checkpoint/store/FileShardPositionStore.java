@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source.checkpoint.store;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkNotNull;
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Maps.newLinkedHashMap;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.PositionInShard;
+
+import com.amazonaws.services.kinesis.model.ShardIteratorType;
+import org.joda.time.Instant;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/***
+ * Keeps positions in a properties file per stream in a local directory.
+ * <p>
+ * The file is replaced atomically on every commit, so it's never left half-written. As it's
+ * local to a single machine, it's meant for tests and for pipelines running on a single worker
+ * (e.g. with the direct runner); distributed pipelines need a store shared by all workers.
+ * <p>
+ * Position is stored as its iterator type, sequence number and subsequence number, followed
+ * by start timestamp in milliseconds, if it has one.
+ */
+public class FileShardPositionStore implements ShardPositionStore {
+    private static final Object LOCK = new Object();
+    private static final String NONE = "-";
+
+    private final String directory;
+
+    public FileShardPositionStore(String directory) {
+        checkNotNull(directory);
+        this.directory = directory;
+    }
+
+    @Override
+    public void commit(String streamName, List<PositionInShard> positions) throws IOException {
+        synchronized (LOCK) {
+            Properties properties = read(streamName);
+            for (PositionInShard position : positions) {
+                properties.setProperty(position.getShardId(), format(position));
+            }
+            Path file = fileOf(streamName);
+            Files.createDirectories(file.getParent());
+            Path temporary = Files.createTempFile(file.getParent(), streamName, ".tmp");
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                properties.store(out, "Positions in shards of " + streamName);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    @Override
+    public Map<String, PositionInShard> load(String streamName) throws IOException {
+        Properties properties;
+        synchronized (LOCK) {
+            properties = read(streamName);
+        }
+        Map<String, PositionInShard> positions = newLinkedHashMap();
+        for (String shardId : properties.stringPropertyNames()) {
+            positions.put(shardId,
+                    parse(streamName, shardId, properties.getProperty(shardId)));
+        }
+        return positions;
+    }
+
+    private Properties read(String streamName) throws IOException {
+        Properties properties = new Properties();
+        Path file = fileOf(streamName);
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                properties.load(in);
+            }
+        }
+        return properties;
+    }
+
+    private Path fileOf(String streamName) {
+        return Paths.get(directory, streamName + ".properties");
+    }
+
+    private String format(PositionInShard position) {
+        Long subSequenceNumber = position.getSubSequenceNumber();
+        String value = String.format("%s %s %s", position.getShardIteratorType(),
+                position.getSequenceNumber() == null ? NONE : position.getSequenceNumber(),
+                subSequenceNumber == null ? NONE : subSequenceNumber.toString());
+        if (position.getStartTimestamp() == null) {
+            return value;
+        }
+        return value + " " + position.getStartTimestamp().getMillis();
+    }
+
+    private PositionInShard parse(String streamName, String shardId, String value)
+            throws IOException {
+        String[] parts = value.split(" ");
+        if (parts.length != 3 && parts.length != 4) {
+            throw new IOException(String.format("Malformed position of shard %s: %s",
+                    shardId, value));
+        }
+        return new PositionInShard(streamName, shardId,
+                ShardIteratorType.fromValue(parts[0]),
+                NONE.equals(parts[1]) ? null : parts[1],
+                NONE.equals(parts[2]) ? null : Long.valueOf(parts[2]),
+                parts.length == 4 ? new Instant(Long.parseLong(parts[3])) : null);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Positions stored in %s", directory);
+    }
+}
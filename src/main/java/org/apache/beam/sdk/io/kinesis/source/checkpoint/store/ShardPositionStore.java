@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source.checkpoint.store;
+
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.PositionInShard;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.generator
+        .StoredPositionCheckpointGenerator;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/***
+ * Durable store of positions in shards, outliving the pipeline, so that a redeployed pipeline
+ * can continue where the previous one stopped (see {@link StoredPositionCheckpointGenerator}).
+ * <p>
+ * Positions are committed when the checkpoint they belong to is finalized, i.e. once all records
+ * before them were durably processed by the pipeline.
+ */
+public interface ShardPositionStore extends Serializable {
+    /***
+     * Stores given positions, replacing the ones stored before for the same shards.
+     */
+    void commit(String streamName, List<PositionInShard> positions) throws IOException;
+
+    /***
+     * @return positions stored for shards of the stream, by shard ids
+     */
+    Map<String, PositionInShard> load(String streamName) throws IOException;
+}
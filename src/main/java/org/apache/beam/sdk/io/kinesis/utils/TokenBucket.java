@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.utils;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkArgument;
+import static org.apache.beam.sdk.repackaged.com.google.common.base.Preconditions
+        .checkNotNull;
+import org.apache.beam.sdk.repackaged.com.google.common.base.Ticker;
+
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Classic token bucket: holds up to {@code capacity} tokens and is refilled at constant rate.
+ * <p>
+ * Apart from taking tokens only if they're available, tokens can also be taken unconditionally.
+ * This puts the bucket into debt, which has to be paid back by refills before any further
+ * tokens can be taken. It's useful when the cost of an operation is known only after it's done.
+ */
+public class TokenBucket {
+    private final double capacity;
+    private final double tokensPerNano;
+    private final Ticker ticker;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(double capacity, double tokensPerSecond, Ticker ticker) {
+        checkArgument(capacity > 0, "Capacity must be positive");
+        checkArgument(tokensPerSecond > 0, "Refill rate must be positive");
+        checkNotNull(ticker);
+
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.ticker = ticker;
+        this.tokens = capacity;
+        this.lastRefill = ticker.read();
+    }
+
+    /***
+     * Takes given number of tokens if they're available.
+     *
+     * @return true if tokens were taken
+     */
+    public synchronized boolean tryTake(double count) {
+        refill();
+        if (tokens >= count) {
+            tokens -= count;
+            return true;
+        }
+        return false;
+    }
+
+    /***
+     * Takes given number of tokens, even if it puts the bucket into debt.
+     */
+    public synchronized void take(double count) {
+        refill();
+        tokens -= count;
+    }
+
+    /***
+     * @return how long one has to wait until given number of tokens is available, 0 if they
+     * already are.
+     */
+    public synchronized long nanosUntilAvailable(double count) {
+        refill();
+        if (tokens >= count) {
+            return 0;
+        }
+        return (long) Math.ceil((count - tokens) / tokensPerNano);
+    }
+
+    private void refill() {
+        long now = ticker.read();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}
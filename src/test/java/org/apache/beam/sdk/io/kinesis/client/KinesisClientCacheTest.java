@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.client;
+
+import org.apache.beam.sdk.repackaged.com.google.common.base.Ticker;
+
+import com.amazonaws.services.kinesis.AmazonKinesis;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import org.junit.Test;
+
+/***
+ *
+ */
+public class KinesisClientCacheTest {
+    private final FakeTicker ticker = new FakeTicker();
+    private final KinesisClientCache cache = new KinesisClientCache(ticker);
+
+    @Test
+    public void sharesClientOfEqualProviders() {
+        KinesisClientCache.Lease first = cache.acquire(new MockProvider("a"));
+        KinesisClientCache.Lease second = cache.acquire(new MockProvider("a"));
+        KinesisClientCache.Lease other = cache.acquire(new MockProvider("b"));
+
+        assertThat(second.getClient()).isSameAs(first.getClient());
+        assertThat(other.getClient()).isNotSameAs(first.getClient());
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void keepsUnusedClientForIdleTimeout() {
+        KinesisClientCache.Lease first = cache.acquire(new MockProvider("a"));
+        first.close();
+        first.close();
+        ticker.advance(KinesisClientCache.IDLE_TIMEOUT_NANOS - 1);
+
+        KinesisClientCache.Lease second = cache.acquire(new MockProvider("a"));
+
+        assertThat(second.getClient()).isSameAs(first.getClient());
+        verify(first.getClient(), never()).shutdown();
+    }
+
+    @Test
+    public void shutsDownClientUnusedForIdleTimeout() {
+        KinesisClientCache.Lease first = cache.acquire(new MockProvider("a"));
+        KinesisClientCache.Lease second = cache.acquire(new MockProvider("a"));
+        first.close();
+        ticker.advance(KinesisClientCache.IDLE_TIMEOUT_NANOS);
+        cache.acquire(new MockProvider("b"));
+        verify(first.getClient(), never()).shutdown();
+
+        second.close();
+        ticker.advance(KinesisClientCache.IDLE_TIMEOUT_NANOS);
+        KinesisClientCache.Lease third = cache.acquire(new MockProvider("a"));
+
+        verify(first.getClient()).shutdown();
+        assertThat(third.getClient()).isNotSameAs(first.getClient());
+    }
+
+    @Test
+    public void doesNotShareClientOfProviderWhichCannotBeSerialized() {
+        KinesisClientCache.Lease first = cache.acquire(new UnserializableProvider());
+        KinesisClientCache.Lease second = cache.acquire(new UnserializableProvider());
+
+        assertThat(second.getClient()).isNotSameAs(first.getClient());
+        assertThat(cache.size()).isEqualTo(0);
+        first.close();
+        verify(first.getClient(), never()).shutdown();
+    }
+
+    private static class MockProvider implements KinesisClientProvider {
+        private final String name;
+
+        MockProvider(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public AmazonKinesis get() {
+            return mock(AmazonKinesis.class);
+        }
+    }
+
+    private static class UnserializableProvider implements KinesisClientProvider {
+        private final Object notSerializable = new Object();
+
+        @Override
+        public AmazonKinesis get() {
+            return mock(AmazonKinesis.class);
+        }
+    }
+
+    private static class FakeTicker extends Ticker {
+        private long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        void advance(long delta) {
+            nanos += delta;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.client;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Lists.newArrayList;
+import org.apache.beam.sdk.repackaged.com.google.common.base.Ticker;
+import com.google.api.client.util.Sleeper;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/***
+ *
+ */
+public class RetrierTest {
+    private final FakeClock clock = new FakeClock();
+
+    @Test
+    public void retriesUntilCallSucceeds() throws IOException {
+        Retrier retrier = retrier(RetryPolicy.defaults());
+
+        assertThat(retrier.call(failingTimes(3))).isEqualTo("result");
+        assertThat(clock.sleeps).hasSize(3);
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() {
+        Retrier retrier = retrier(RetryPolicy.defaults().withMaxAttempts(3));
+        FailingAttempt attempt = failingTimes(5);
+
+        expectFailure(retrier, attempt);
+        assertThat(attempt.calls).isEqualTo(3);
+    }
+
+    @Test
+    public void doesNotRetryOnceBudgetIsExhausted() {
+        Retrier retrier = retrier(RetryPolicy.defaults().withRetryBudget(2, 1));
+        FailingAttempt attempt = failingTimes(5);
+
+        expectFailure(retrier, attempt);
+        assertThat(attempt.calls).isEqualTo(3);
+    }
+
+    @Test
+    public void opensCircuitAfterConsecutiveFailuresAndClosesAfterCoolDown()
+            throws IOException {
+        Retrier retrier = retrier(RetryPolicy.noRetries().withCircuitBreaker(2, 1000));
+        expectFailure(retrier, failingTimes(1));
+        expectFailure(retrier, failingTimes(1));
+
+        FailingAttempt attempt = failingTimes(0);
+        expectFailure(retrier, attempt);
+        assertThat(attempt.calls).isEqualTo(0);
+
+        clock.advance(TimeUnit.MILLISECONDS.toNanos(1000));
+        assertThat(retrier.call(attempt)).isEqualTo("result");
+    }
+
+    @Test
+    public void delaysStayBetweenBaseAndMaxDelay() {
+        Retrier retrier = retrier(RetryPolicy.defaults()
+                .withDelays(10, 200).withMaxAttempts(50).withRetryBudget(100, 1)
+                .withCircuitBreaker(100, 1000));
+
+        expectFailure(retrier, failingTimes(50));
+        assertThat(clock.sleeps).hasSize(49);
+        for (Long delay : clock.sleeps) {
+            assertThat(delay).isGreaterThanOrEqualTo(10L).isLessThanOrEqualTo(200L);
+        }
+    }
+
+    private Retrier retrier(RetryPolicy policy) {
+        return new Retrier(policy, clock, clock.ticker, new Random(0));
+    }
+
+    private void expectFailure(Retrier retrier, FailingAttempt attempt) {
+        try {
+            retrier.call(attempt);
+            fail("Call should have failed");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private FailingAttempt failingTimes(int failures) {
+        return new FailingAttempt(failures);
+    }
+
+    private static class FailingAttempt implements Retrier.Attempt<String> {
+        private final int failures;
+        private int calls;
+
+        FailingAttempt(int failures) {
+            this.failures = failures;
+        }
+
+        @Override
+        public String run() throws IOException {
+            if (calls++ < failures) {
+                throw new IOException("transient failure");
+            }
+            return "result";
+        }
+    }
+
+    private static class FakeClock implements Sleeper {
+        private final List<Long> sleeps = newArrayList();
+        private long nanos;
+        private final Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return nanos;
+            }
+        };
+
+        @Override
+        public void sleep(long millis) {
+            sleeps.add(millis);
+            advance(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        void advance(long delta) {
+            nanos += delta;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.client;
+
+import org.apache.beam.sdk.repackaged.com.google.common.base.Ticker;
+
+import com.amazonaws.services.kinesis.AmazonKinesis;
+import com.amazonaws.services.kinesis.model.DescribeStreamResult;
+import com.amazonaws.services.kinesis.model.Shard;
+import com.amazonaws.services.kinesis.model.StreamDescription;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.junit.Test;
+import static java.util.Arrays.asList;
+import java.io.IOException;
+import java.util.List;
+
+/***
+ *
+ */
+public class ShardListCacheTest {
+    private final FakeTicker ticker = new FakeTicker();
+    private final ShardListCache cache = new ShardListCache(ticker);
+    private final AmazonKinesis client = mock(AmazonKinesis.class);
+
+    @Test
+    public void reusesListForMaxAge() throws IOException {
+        CountingLoader loader = new CountingLoader();
+
+        List<Shard> first = cache.get(client, "stream", loader);
+        ticker.advance(ShardListCache.MAX_AGE_NANOS - 1);
+        List<Shard> second = cache.get(client, "stream", loader);
+
+        assertThat(second).isSameAs(first);
+        assertThat(loader.calls).isEqualTo(1);
+    }
+
+    @Test
+    public void listsShardsAgainAfterMaxAge() throws IOException {
+        CountingLoader loader = new CountingLoader();
+
+        cache.get(client, "stream", loader);
+        ticker.advance(ShardListCache.MAX_AGE_NANOS);
+        cache.get(client, "stream", loader);
+
+        assertThat(loader.calls).isEqualTo(2);
+    }
+
+    @Test
+    public void listsShardsAgainAfterInvalidation() throws IOException {
+        CountingLoader loader = new CountingLoader();
+
+        cache.get(client, "stream", loader);
+        cache.invalidate(client, "stream");
+        cache.get(client, "stream", loader);
+
+        assertThat(loader.calls).isEqualTo(2);
+    }
+
+    @Test
+    public void keepsListsOfStreamsAndClientsApart() throws IOException {
+        CountingLoader loader = new CountingLoader();
+
+        cache.get(client, "stream", loader);
+        cache.get(client, "other-stream", loader);
+        cache.get(mock(AmazonKinesis.class), "stream", loader);
+
+        assertThat(loader.calls).isEqualTo(3);
+    }
+
+    @Test
+    public void doesNotCacheFailedListing() throws IOException {
+        CountingLoader loader = new CountingLoader();
+        try {
+            cache.get(client, "stream", new ShardListCache.Loader() {
+                @Override
+                public List<Shard> load() throws IOException {
+                    throw new IOException("throttled");
+                }
+            });
+        } catch (IOException e) {
+            cache.get(client, "stream", loader);
+        }
+
+        assertThat(loader.calls).isEqualTo(1);
+    }
+
+    @Test
+    public void simplifiedClientPagesThroughShardsAndCachesThem() throws IOException {
+        when(client.describeStream("stream", null)).thenReturn(page(true, "shard-0", "shard-1"));
+        when(client.describeStream("stream", "shard-1")).thenReturn(page(false, "shard-2"));
+        SimplifiedKinesisClient kinesis = new SimplifiedKinesisClient(client);
+
+        List<Shard> shards = kinesis.listShards("stream");
+        kinesis.listShards("stream");
+
+        assertThat(shards).hasSize(3);
+        assertThat(shards.get(2).getShardId()).isEqualTo("shard-2");
+        verify(client, times(1)).describeStream("stream", null);
+        verify(client, times(1)).describeStream("stream", "shard-1");
+
+        kinesis.refreshShards("stream");
+        verify(client, times(2)).describeStream("stream", null);
+    }
+
+    private DescribeStreamResult page(boolean hasMoreShards, String... shardIds) {
+        StreamDescription description = new StreamDescription().withHasMoreShards(hasMoreShards);
+        for (String shardId : shardIds) {
+            description.withShards(new Shard().withShardId(shardId));
+        }
+        return new DescribeStreamResult().withStreamDescription(description);
+    }
+
+    private static class CountingLoader implements ShardListCache.Loader {
+        private int calls;
+
+        @Override
+        public List<Shard> load() {
+            calls++;
+            return asList(new Shard().withShardId("shard-" + calls));
+        }
+    }
+
+    private static class FakeTicker extends Ticker {
+        private long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        void advance(long delta) {
+            nanos += delta;
+        }
+    }
+}
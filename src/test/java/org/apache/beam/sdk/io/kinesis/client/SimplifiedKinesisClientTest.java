@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.client;
+
+import com.amazonaws.services.kinesis.AmazonKinesis;
+import com.amazonaws.services.kinesis.model.PutRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import com.amazonaws.services.kinesis.model.PutRecordsResult;
+import com.amazonaws.services.kinesis.model.PutRecordsResultEntry;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import static java.util.Arrays.asList;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/***
+ *
+ */
+public class SimplifiedKinesisClientTest {
+    private final AmazonKinesis kinesis = mock(AmazonKinesis.class);
+    private final SimplifiedKinesisClient client = new SimplifiedKinesisClient(kinesis,
+            RetryPolicy.defaults().withDelays(1, 1).withMaxAttempts(3));
+
+    @Test
+    public void putsAgainOnlyRejectedRecords() throws IOException {
+        when(kinesis.putRecords(any(PutRecordsRequest.class))).thenReturn(
+                result(accepted(), rejected(), accepted(), rejected()),
+                result(accepted(), rejected()),
+                result(accepted()));
+
+        client.putRecords("stream", asList(entry("a"), entry("b"), entry("c"), entry("d")));
+
+        ArgumentCaptor<PutRecordsRequest> requests =
+                ArgumentCaptor.forClass(PutRecordsRequest.class);
+        verify(kinesis, times(3)).putRecords(requests.capture());
+        List<PutRecordsRequest> calls = requests.getAllValues();
+        assertThat(calls.get(0).getStreamName()).isEqualTo("stream");
+        assertThat(calls.get(0).getRecords()).hasSize(4);
+        assertThat(calls.get(1).getRecords()).isEqualTo(asList(entry("b"), entry("d")));
+        assertThat(calls.get(2).getRecords()).isEqualTo(asList(entry("d")));
+    }
+
+    @Test
+    public void failsWhenRecordsAreRejectedByLastAttempt() throws IOException {
+        when(kinesis.putRecords(any(PutRecordsRequest.class))).thenReturn(
+                result(accepted(), rejected()), result(rejected()));
+
+        try {
+            client.putRecords("stream", asList(entry("a"), entry("b")));
+            throw new AssertionError("Expected IOException");
+        } catch (IOException e) {
+            assertThat(e.getMessage()).contains("ProvisionedThroughputExceededException");
+        }
+        verify(kinesis, times(3)).putRecords(any(PutRecordsRequest.class));
+    }
+
+    private PutRecordsRequestEntry entry(String data) {
+        return new PutRecordsRequestEntry()
+                .withData(ByteBuffer.wrap(data.getBytes()))
+                .withPartitionKey(data);
+    }
+
+    private PutRecordsResult result(PutRecordsResultEntry... entries) {
+        int failed = 0;
+        for (PutRecordsResultEntry entry : entries) {
+            if (entry.getErrorCode() != null) {
+                ++failed;
+            }
+        }
+        return new PutRecordsResult().withRecords(entries).withFailedRecordCount(failed);
+    }
+
+    private PutRecordsResultEntry accepted() {
+        return new PutRecordsResultEntry().withShardId("shard-0").withSequenceNumber("1");
+    }
+
+    private PutRecordsResultEntry rejected() {
+        return new PutRecordsResultEntry()
+                .withErrorCode("ProvisionedThroughputExceededException")
+                .withErrorMessage("Rate exceeded for shard shard-0");
+    }
+}
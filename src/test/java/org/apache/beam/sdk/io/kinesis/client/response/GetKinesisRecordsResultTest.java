@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.client.response;
+
+import com.amazonaws.services.kinesis.clientlibrary.types.UserRecord;
+import com.amazonaws.services.kinesis.model.GetRecordsResult;
+import com.amazonaws.services.kinesis.model.Record;
+import static org.fest.assertions.Assertions.assertThat;
+import org.junit.Test;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+/***
+ *
+ */
+public class GetKinesisRecordsResultTest {
+    @Test
+    public void createsRecordsOnceAndKeepsMetadata() {
+        Record record = record(new byte[]{1, 2, 3});
+        GetRecordsResult response = new GetRecordsResult()
+                .withRecords(record)
+                .withNextShardIterator("next")
+                .withMillisBehindLatest(1000L);
+
+        GetKinesisRecordsResult result = GetKinesisRecordsResult.from(response, "current",
+                "shardId-000000000001");
+
+        List<KinesisRecord> records = result.getRecords();
+        assertThat(records).hasSize(1);
+        assertThat(records.get(0)).isSameAs(result.getRecords().get(0));
+        assertThat(records.get(0).getData()).isEqualTo(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+        assertThat(records.get(0).isAggregated()).isFalse();
+        assertThat(records.get(0).getShardIterator()).isEqualTo("current");
+        assertThat(records.get(0).getShardId()).isEqualTo("shardId-000000000001");
+        assertThat(result.getNextShardIterator()).isEqualTo("next");
+        assertThat(result.getMillisBehindLatest()).isEqualTo(1000L);
+        assertThat(result.getKinesisRecordCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void keepsLagUnknownIfNotReported() {
+        GetRecordsResult response = new GetRecordsResult()
+                .withRecords(record(new byte[]{1}))
+                .withNextShardIterator("next");
+
+        GetKinesisRecordsResult result = GetKinesisRecordsResult.from(response, "current", null);
+
+        assertThat(result.getMillisBehindLatest()).isEqualTo(GetKinesisRecordsResult.UNKNOWN_LAG);
+    }
+
+    @Test
+    public void keepsLagUnknownIfNotGiven() {
+        GetKinesisRecordsResult result = new GetKinesisRecordsResult(
+                Collections.<UserRecord>emptyList(), "current", "next");
+
+        assertThat(result.getMillisBehindLatest()).isEqualTo(GetKinesisRecordsResult.UNKNOWN_LAG);
+    }
+
+    @Test
+    public void keepsRecordWithMagicButInvalidChecksumAsItIs() {
+        byte[] data = {(byte) 0xF3, (byte) 0x89, (byte) 0x9A, (byte) 0xC2, 1, 2, 3};
+        GetRecordsResult response = new GetRecordsResult().withRecords(record(data));
+
+        List<KinesisRecord> records = GetKinesisRecordsResult.from(response, "current", null)
+                .getRecords();
+
+        assertThat(records).hasSize(1);
+        assertThat(records.get(0).getData()).isEqualTo(ByteBuffer.wrap(data));
+        assertThat(records.get(0).getSubSequenceNumber()).isEqualTo(0L);
+    }
+
+    private Record record(byte[] data) {
+        return new Record()
+                .withData(ByteBuffer.wrap(data))
+                .withSequenceNumber("1")
+                .withPartitionKey("key");
+    }
+}
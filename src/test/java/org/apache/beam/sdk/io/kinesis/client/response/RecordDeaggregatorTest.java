@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.client.response;
+
+import org.apache.beam.sdk.repackaged.com.google.common.base.Charsets;
+
+import com.amazonaws.services.kinesis.clientlibrary.types.UserRecord;
+import com.amazonaws.services.kinesis.model.Record;
+import static org.fest.assertions.Assertions.assertThat;
+import org.junit.Test;
+import static java.util.Arrays.asList;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/***
+ *
+ */
+public class RecordDeaggregatorTest {
+    @Test
+    public void givesSameRecordsAsKinesisClientLibrary() throws Exception {
+        Record aggregated = record(aggregate(
+                message(string(1, "key1"), string(1, "key2"), string(2, "123"),
+                        bytes(3, message(varint(1, 0), bytes(3, data("a")))),
+                        bytes(3, message(varint(1, 1), varint(2, 0), bytes(3, data("bb")))),
+                        bytes(3, message(varint(1, 0), varint(4 << 3, 1), bytes(3, data(""))))
+                )));
+        Record plain = record(data("plain"));
+
+        List<KinesisRecord> records = RecordDeaggregator.deaggregate(asList(aggregated, plain),
+                "iterator", "shardId-000000000000");
+        List<UserRecord> expected = UserRecord.deaggregate(asList(aggregated, plain));
+
+        assertThat(records).hasSize(4);
+        for (int i = 0; i < expected.size(); ++i) {
+            assertSame(records.get(i), expected.get(i));
+            assertThat(records.get(i).getShardIterator()).isEqualTo("iterator");
+            assertThat(records.get(i).getShardId()).isEqualTo("shardId-000000000000");
+        }
+    }
+
+    @Test
+    public void slicesDataOfAggregatedRecord() throws Exception {
+        Record aggregated = record(aggregate(message(string(1, "key"),
+                bytes(3, message(varint(1, 0), bytes(3, data("abc")))))));
+
+        KinesisRecord record = RecordDeaggregator.deaggregate(aggregated, null, null).next();
+
+        assertThat(record.getData().array()).isSameAs(aggregated.getData().array());
+        assertThat(record.getData()).isEqualTo(ByteBuffer.wrap(data("abc")));
+    }
+
+    @Test
+    public void returnsRecordWithWrongDigestAsItIs() throws Exception {
+        byte[] data = aggregate(message(string(1, "key"),
+                bytes(3, message(varint(1, 0), bytes(3, data("abc"))))));
+        data[data.length - 1]++;
+
+        assertNotDeaggregated(record(data));
+    }
+
+    @Test
+    public void returnsRecordWithInvalidProtobufAsItIs() throws Exception {
+        assertNotDeaggregated(record(aggregate(message(string(1, "key"),
+                bytes(3, message(bytes(3, data("abc"))))))));
+        assertNotDeaggregated(record(aggregate(new byte[]{0x1A, 0x7F})));
+    }
+
+    @Test
+    public void dropsSubRecordsStartingWithOneReferringToMissingKey() throws Exception {
+        Record aggregated = record(aggregate(message(string(1, "key"),
+                bytes(3, message(varint(1, 0), bytes(3, data("a")))),
+                bytes(3, message(varint(1, 1), bytes(3, data("b")))),
+                bytes(3, message(varint(1, 0), bytes(3, data("c")))))));
+
+        List<KinesisRecord> records = RecordDeaggregator.deaggregate(
+                Collections.singletonList(aggregated), null, null);
+
+        assertThat(records).hasSize(1);
+        assertThat(records.get(0).getData()).isEqualTo(ByteBuffer.wrap(data("a")));
+        assertThat(records.get(0).isAggregated()).isTrue();
+    }
+
+    private void assertNotDeaggregated(Record record) {
+        List<KinesisRecord> records = RecordDeaggregator.deaggregate(
+                Collections.singletonList(record), null, null);
+        List<UserRecord> expected = UserRecord.deaggregate(Collections.singletonList(record));
+
+        assertThat(records).hasSize(1);
+        assertThat(expected).hasSize(1);
+        assertThat(records.get(0).isAggregated()).isFalse();
+        assertSame(records.get(0), expected.get(0));
+    }
+
+    private void assertSame(KinesisRecord actual, UserRecord expected) {
+        assertThat(actual.getData()).isEqualTo(expected.getData());
+        assertThat(actual.getPartitionKey()).isEqualTo(expected.getPartitionKey());
+        assertThat(actual.getExplicitHashKey()).isEqualTo(expected.getExplicitHashKey());
+        assertThat(actual.getSequenceNumber()).isEqualTo(expected.getSequenceNumber());
+        assertThat(actual.getSubSequenceNumber()).isEqualTo(expected.getSubSequenceNumber());
+        assertThat(actual.isAggregated()).isEqualTo(expected.isAggregated());
+        assertThat(actual.getApproximateArrivalTimestamp())
+                .isEqualTo(expected.getApproximateArrivalTimestamp());
+    }
+
+    private Record record(byte[] data) {
+        return new Record()
+                .withData(ByteBuffer.wrap(data))
+                .withSequenceNumber("100")
+                .withPartitionKey("aggregateKey")
+                .withApproximateArrivalTimestamp(new Date(1234L));
+    }
+
+    private static byte[] aggregate(byte[] protobuf) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(RecordDeaggregator.AGGREGATED_RECORD_MAGIC);
+        out.write(protobuf);
+        out.write(RecordDeaggregator.newMd5().digest(protobuf));
+        return out.toByteArray();
+    }
+
+    private static byte[] message(byte[]... fields) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] field : fields) {
+            out.write(field);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] varint(int field, long value) throws Exception {
+        return message(rawVarint(field << 3), rawVarint(value));
+    }
+
+    private static byte[] string(int field, String value) throws Exception {
+        return bytes(field, data(value));
+    }
+
+    private static byte[] bytes(int field, byte[] value) throws Exception {
+        return message(rawVarint((field << 3) | 2), rawVarint(value.length), value);
+    }
+
+    private static byte[] rawVarint(long value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+        return out.toByteArray();
+    }
+
+    private static byte[] data(String value) {
+        return value.getBytes(Charsets.UTF_8);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.sink;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Lists.newArrayList;
+import org.apache.beam.sdk.io.kinesis.client.SimplifiedKinesisClient;
+
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/***
+ *
+ */
+public class KinesisWriterTest {
+    private final SimplifiedKinesisClient kinesis = mock(SimplifiedKinesisClient.class);
+    private final List<Integer> batchSizes =
+            Collections.synchronizedList(new ArrayList<Integer>());
+    private final KinesisWriter writer = new KinesisWriter(kinesis, "stream", 2);
+
+    @Test
+    public void putsFullBatchesOfRecords() throws IOException {
+        recordBatchSizes();
+
+        for (int i = 0; i < 1200; ++i) {
+            writer.write(record(10));
+        }
+        writer.flush();
+
+        assertThat(newArrayList(batchSizes)).containsOnly(500, 200);
+        assertThat(batchSizes).hasSize(3);
+    }
+
+    @Test
+    public void limitsBytesOfBatch() throws IOException {
+        recordBatchSizes();
+
+        for (int i = 0; i < 6; ++i) {
+            writer.write(record(1000 * 1000));
+        }
+        writer.flush();
+
+        assertThat(newArrayList(batchSizes)).containsOnly(5, 1);
+    }
+
+    @Test
+    public void putsNothingUntilBatchIsFullOrFlushed() throws IOException {
+        writer.write(record(10));
+
+        verify(kinesis, never()).putRecords(eq("stream"),
+                anyListOf(PutRecordsRequestEntry.class));
+    }
+
+    @Test
+    public void keepsSeveralBatchesInFlight() throws Exception {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                bothStarted.countDown();
+                if (!bothStarted.await(10, TimeUnit.SECONDS)) {
+                    throw new IOException("Batches were not put concurrently");
+                }
+                return null;
+            }
+        }).when(kinesis).putRecords(eq("stream"), anyListOf(PutRecordsRequestEntry.class));
+
+        for (int i = 0; i < 1000; ++i) {
+            writer.write(record(10));
+        }
+        writer.flush();
+
+        assertThat(bothStarted.getCount()).isEqualTo(0);
+    }
+
+    @Test(expected = IOException.class)
+    public void rethrowsFailureOfBatchOnFlush() throws IOException {
+        doThrow(new IOException("rejected")).when(kinesis)
+                .putRecords(eq("stream"), anyListOf(PutRecordsRequestEntry.class));
+
+        writer.write(record(10));
+        writer.flush();
+    }
+
+    @Test
+    public void awaitsBatchesInFlightWithoutPuttingPartialBatch() throws Exception {
+        final CountDownLatch putStarted = new CountDownLatch(1);
+        final CountDownLatch putAllowed = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                putStarted.countDown();
+                putAllowed.await(10, TimeUnit.SECONDS);
+                batchSizes.add(((List<?>) invocation.getArguments()[1]).size());
+                return null;
+            }
+        }).when(kinesis).putRecords(eq("stream"), anyListOf(PutRecordsRequestEntry.class));
+
+        for (int i = 0; i < 501; ++i) {
+            writer.write(record(10));
+        }
+        putStarted.await(10, TimeUnit.SECONDS);
+        putAllowed.countDown();
+        writer.awaitInFlight();
+
+        assertThat(batchSizes).containsOnly(500);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRecordLargerThanKinesisAllows() throws IOException {
+        writer.write(record((int) KinesisWriter.MAX_RECORD_BYTES));
+    }
+
+    private void recordBatchSizes() throws IOException {
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                batchSizes.add(((List<?>) invocation.getArguments()[1]).size());
+                return null;
+            }
+        }).when(kinesis).putRecords(eq("stream"), anyListOf(PutRecordsRequestEntry.class));
+    }
+
+    private PutRecordsRequestEntry record(int bytes) {
+        return new PutRecordsRequestEntry()
+                .withData(ByteBuffer.wrap(new byte[bytes]))
+                .withPartitionKey("k");
+    }
+}
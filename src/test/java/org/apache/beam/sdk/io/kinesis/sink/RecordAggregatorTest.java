@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.sink;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Lists.newArrayList;
+import org.apache.beam.sdk.io.kinesis.client.response.KinesisRecord;
+import org.apache.beam.sdk.io.kinesis.client.response.RecordDeaggregator;
+import org.apache.beam.sdk.repackaged.com.google.common.base.Charsets;
+
+import com.amazonaws.services.kinesis.clientlibrary.types.UserRecord;
+import com.amazonaws.services.kinesis.model.HashKeyRange;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import com.amazonaws.services.kinesis.model.Record;
+import com.amazonaws.services.kinesis.model.SequenceNumberRange;
+import com.amazonaws.services.kinesis.model.Shard;
+import static org.fest.assertions.Assertions.assertThat;
+import org.junit.Test;
+import static java.util.Arrays.asList;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/***
+ *
+ */
+public class RecordAggregatorTest {
+    private static final BigInteger HALF = BigInteger.ONE.shiftLeft(127);
+    private static final BigInteger MAX = BigInteger.ONE.shiftLeft(128).subtract(BigInteger.ONE);
+
+    private final ShardMap twoShards = new ShardMap(asList(
+            shard("shard-1", HALF, MAX), shard("shard-0", BigInteger.ZERO,
+                    HALF.subtract(BigInteger.ONE))));
+    private final ShardMap oneShard = new ShardMap(Collections.singletonList(
+            shard("shard-0", BigInteger.ZERO, MAX)));
+
+    @Test
+    public void packsRecordsReadableByKinesisClientLibrary() {
+        RecordAggregator aggregator = new RecordAggregator(oneShard, 1000);
+        List<PutRecordsRequestEntry> records = asList(
+                record("a", "key1", null), record("bb", "key2", null),
+                record("", "key1", "123"), record("ccc", "key3", "123"));
+        for (PutRecordsRequestEntry record : records) {
+            assertThat(aggregator.add(record)).isEmpty();
+        }
+
+        List<PutRecordsRequestEntry> aggregated = aggregator.drain();
+
+        assertThat(aggregated).hasSize(1);
+        assertThat(aggregated.get(0).getPartitionKey()).isEqualTo("key1");
+        assertThat(aggregated.get(0).getExplicitHashKey())
+                .isEqualTo(ShardMap.hashKeyOf("key1", null).toString());
+        assertThat(aggregator.drain()).isEmpty();
+
+        List<UserRecord> expected = UserRecord.deaggregate(
+                Collections.singletonList(asRecord(aggregated.get(0))));
+        List<KinesisRecord> actual = RecordDeaggregator.deaggregate(
+                Collections.singletonList(asRecord(aggregated.get(0))), null, null);
+        assertThat(expected).hasSize(records.size());
+        assertThat(actual).hasSize(records.size());
+        for (int i = 0; i < records.size(); ++i) {
+            PutRecordsRequestEntry record = records.get(i);
+            assertThat(expected.get(i).isAggregated()).isTrue();
+            assertThat(expected.get(i).getData()).isEqualTo(record.getData());
+            assertThat(expected.get(i).getPartitionKey()).isEqualTo(record.getPartitionKey());
+            assertThat(actual.get(i).getData()).isEqualTo(record.getData());
+            assertThat(actual.get(i).getPartitionKey()).isEqualTo(record.getPartitionKey());
+            assertThat(actual.get(i).getExplicitHashKey())
+                    .isEqualTo(expected.get(i).getExplicitHashKey());
+        }
+        assertThat(expected.get(2).getExplicitHashKey()).isEqualTo("123");
+    }
+
+    @Test
+    public void groupsRecordsByShard() {
+        RecordAggregator aggregator = new RecordAggregator(twoShards, 1000);
+        String upperHashKey = HALF.add(BigInteger.ONE).toString();
+
+        aggregator.add(record("a", "key", "1"));
+        aggregator.add(record("b", "key", upperHashKey));
+        aggregator.add(record("c", "key", "2"));
+        List<PutRecordsRequestEntry> aggregated = aggregator.drain();
+
+        assertThat(aggregated).hasSize(2);
+        assertThat(aggregated.get(0).getExplicitHashKey()).isEqualTo("1");
+        assertThat(deaggregate(aggregated.get(0))).containsExactly("a", "c");
+        assertThat(aggregated.get(1)).isEqualTo(record("b", "key", upperHashKey));
+    }
+
+    @Test
+    public void limitsSizeOfAggregatedRecords() {
+        RecordAggregator aggregator = new RecordAggregator(oneShard, 100);
+        List<PutRecordsRequestEntry> aggregated = newArrayList();
+
+        for (int i = 0; i < 10; ++i) {
+            aggregated.addAll(aggregator.add(record("0123456789012345678" + i, "key", null)));
+        }
+        aggregated.addAll(aggregator.drain());
+
+        assertThat(aggregated).hasSize(5);
+        int records = 0;
+        for (PutRecordsRequestEntry record : aggregated) {
+            assertThat(KinesisWriter.sizeOf(record)).isLessThanOrEqualTo(100);
+            records += deaggregate(record).size();
+        }
+        assertThat(records).isEqualTo(10);
+    }
+
+    @Test
+    public void putsRecordsWhichCannotBeAggregatedAsTheyAre() {
+        RecordAggregator aggregator = new RecordAggregator(twoShards, 10);
+        PutRecordsRequestEntry large = record("0123456789", "key", "1");
+        PutRecordsRequestEntry uncovered = record("a", "key", MAX.add(BigInteger.ONE).toString());
+
+        assertThat(aggregator.add(large)).containsExactly(large);
+        assertThat(aggregator.add(uncovered)).containsExactly(uncovered);
+        assertThat(aggregator.drain()).isEmpty();
+    }
+
+    private static List<String> deaggregate(PutRecordsRequestEntry entry) {
+        List<String> data = newArrayList();
+        for (UserRecord record : UserRecord.deaggregate(
+                Collections.singletonList(asRecord(entry)))) {
+            data.add(new String(record.getData().array(), record.getData().arrayOffset() +
+                    record.getData().position(), record.getData().remaining(), Charsets.UTF_8));
+        }
+        return data;
+    }
+
+    private static Record asRecord(PutRecordsRequestEntry entry) {
+        return new Record()
+                .withData(entry.getData().duplicate())
+                .withPartitionKey(entry.getPartitionKey())
+                .withSequenceNumber("100")
+                .withApproximateArrivalTimestamp(new Date(1234L));
+    }
+
+    private static PutRecordsRequestEntry record(String data, String partitionKey,
+                                                 String explicitHashKey) {
+        return new PutRecordsRequestEntry()
+                .withData(ByteBuffer.wrap(data.getBytes(Charsets.UTF_8)))
+                .withPartitionKey(partitionKey)
+                .withExplicitHashKey(explicitHashKey);
+    }
+
+    private static Shard shard(String shardId, BigInteger startingHashKey,
+                               BigInteger endingHashKey) {
+        return new Shard()
+                .withShardId(shardId)
+                .withHashKeyRange(new HashKeyRange()
+                        .withStartingHashKey(startingHashKey.toString())
+                        .withEndingHashKey(endingHashKey.toString()))
+                .withSequenceNumberRange(new SequenceNumberRange()
+                        .withStartingSequenceNumber("0"));
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import static org.fest.assertions.Assertions.assertThat;
+import org.junit.Test;
+
+/***
+ *
+ */
+public class BatchLimitTunerTest {
+    private static final long BUDGET = 1000 * 1000;
+
+    private final BatchLimitTuner tuner = new BatchLimitTuner(BUDGET);
+
+    @Test
+    public void startsWithModestLimit() {
+        assertThat(tuner.nextLimit()).isEqualTo(BatchLimitTuner.INITIAL_LIMIT);
+    }
+
+    @Test
+    public void requestsLargeBatchesWhileCatchingUp() {
+        tuner.recordResponse(100, 100 * 10, 60 * 1000);
+
+        assertThat(tuner.isCatchingUp()).isTrue();
+        assertThat(tuner.nextLimit()).isEqualTo(BatchLimitTuner.MAX_LIMIT);
+    }
+
+    @Test
+    public void fitsBatchIntoMemoryBudget() {
+        tuner.recordResponse(100, 100 * 1000, 60 * 1000);
+        assertThat(tuner.nextLimit()).isEqualTo(1000);
+
+        tuner.recordBuffered(BUDGET / 2);
+        assertThat(tuner.nextLimit()).isEqualTo(500);
+
+        tuner.recordBuffered(BUDGET);
+        assertThat(tuner.nextLimit()).isEqualTo(1);
+
+        tuner.recordConsumed(BUDGET + BUDGET / 2);
+        assertThat(tuner.nextLimit()).isEqualTo(1000);
+    }
+
+    @Test
+    public void followsRecentBatchSizesWhenTailing() {
+        tuner.recordResponse(300, 300 * 10, 0);
+        assertThat(tuner.isCatchingUp()).isFalse();
+        assertThat(tuner.nextLimit()).isEqualTo(600);
+
+        tuner.recordResponse(0, 0, 0);
+        assertThat(tuner.nextLimit()).isEqualTo(480);
+
+        for (int i = 0; i < 100; ++i) {
+            tuner.recordResponse(0, 0, 0);
+        }
+        assertThat(tuner.nextLimit()).isEqualTo(BatchLimitTuner.MIN_TAILING_LIMIT);
+    }
+}
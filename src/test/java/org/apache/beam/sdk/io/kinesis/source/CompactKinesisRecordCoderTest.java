@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import org.apache.beam.sdk.io.kinesis.client.response.CompactKinesisRecord;
+import org.apache.beam.sdk.io.kinesis.client.response.KinesisRecord;
+import org.apache.beam.sdk.util.CoderUtils;
+
+import com.amazonaws.services.kinesis.model.Record;
+import static org.fest.assertions.Assertions.assertThat;
+import org.joda.time.Instant;
+import org.junit.Test;
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+/***
+ *
+ */
+public class CompactKinesisRecordCoderTest {
+    private static final String SEQUENCE_NUMBER =
+            "49559730349463487463870497431473219262470069212302557186";
+
+    private final CompactKinesisRecordCoder coder = CompactKinesisRecordCoder.of();
+
+    @Test
+    public void copiesAllFieldsFromKinesisRecord() {
+        ByteBuffer data = ByteBuffer.wrap(new byte[]{0, 1, 2, 3});
+        data.position(1);
+        KinesisRecord kinesisRecord = new KinesisRecord(true, record(data), 7L, null,
+                "iterator", "shardId-000000000042");
+
+        CompactKinesisRecord record = CompactKinesisRecord.from(kinesisRecord);
+
+        assertThat(record.getData()).isEqualTo(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+        assertThat(data.position()).isEqualTo(1);
+        assertThat(record.getPartitionKey()).isEqualTo("key");
+        assertThat(record.getShardId()).isEqualTo("shardId-000000000042");
+        assertThat(record.getSequenceNumber()).isEqualTo(SEQUENCE_NUMBER);
+        assertThat(record.getSubSequenceNumber()).isEqualTo(7L);
+        assertThat(record.getApproximateArrivalTimestamp()).isEqualTo(new Instant(1234L));
+        assertThat(record.getUniqueId()).isEqualTo(kinesisRecord.getUniqueId());
+    }
+
+    @Test
+    public void roundTripsRecord() throws Exception {
+        CompactKinesisRecord record = CompactKinesisRecord.from(new KinesisRecord(false,
+                record(ByteBuffer.wrap(new byte[]{1, 2})), 0L, null, "iterator",
+                "shardId-000000000042"));
+
+        assertThat(roundTrip(record)).isEqualTo(record);
+    }
+
+    @Test
+    public void roundTripsRecordWithoutShardId() throws Exception {
+        CompactKinesisRecord record = CompactKinesisRecord.from(new KinesisRecord(false,
+                record(ByteBuffer.wrap(new byte[0])), 0L, null, "iterator", null));
+
+        CompactKinesisRecord decoded = roundTrip(record);
+
+        assertThat(decoded).isEqualTo(record);
+        assertThat(decoded.getShardId()).isNull();
+        assertThat(decoded.getDataSize()).isEqualTo(0);
+    }
+
+    @Test
+    public void keepsUnknownArrivalTimestampAbsent() throws Exception {
+        CompactKinesisRecord record = CompactKinesisRecord.from(new KinesisRecord(false,
+                record(ByteBuffer.wrap(new byte[]{1})).withApproximateArrivalTimestamp(null), 0L,
+                null, "iterator", "shardId-000000000042"));
+
+        CompactKinesisRecord decoded = roundTrip(record);
+
+        assertThat(record.getApproximateArrivalTimestamp()).isNull();
+        assertThat(decoded).isEqualTo(record);
+        assertThat(decoded.getApproximateArrivalTimestamp()).isNull();
+    }
+
+    private CompactKinesisRecord roundTrip(CompactKinesisRecord record) throws Exception {
+        return CoderUtils.decodeFromByteArray(coder, CoderUtils.encodeToByteArray(coder, record));
+    }
+
+    private Record record(ByteBuffer data) {
+        return new Record()
+                .withData(data)
+                .withSequenceNumber(SEQUENCE_NUMBER)
+                .withPartitionKey("key")
+                .withApproximateArrivalTimestamp(new Date(1234L));
+    }
+}
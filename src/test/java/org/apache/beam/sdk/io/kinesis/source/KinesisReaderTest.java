@@ -1,116 +1,326 @@
-///*
-// * Licensed to the Apache Software Foundation (ASF) under one
-// * or more contributor license agreements.  See the NOTICE file
-// * distributed with this work for additional information
-// * regarding copyright ownership.  The ASF licenses this file
-// * to you under the Apache License, Version 2.0 (the
-// * "License"); you may not use this file except in compliance
-// * with the License.  You may obtain a copy of the License at
-// *
-// *     http://www.apache.org/licenses/LICENSE-2.0
-// *
-// * Unless required by applicable law or agreed to in writing, software
-// * distributed under the License is distributed on an "AS IS" BASIS,
-// * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-// * See the License for the specific language governing permissions and
-// * limitations under the License.
-// */
-//package org.apache.beam.sdk.io.kinesis.source;
-//
-//import org.apache.beam.sdk.io.kinesis.client.SimplifiedKinesisClient;
-//import org.apache.beam.sdk.io.kinesis.client.response.KinesisRecord;
-//import org.apache.beam.sdk.io.kinesis.source.checkpoint.KinesisReaderCheckpoint;
-//import org.apache.beam.sdk.io.kinesis.source.checkpoint.PositionInShard;
-//import org.apache.beam.sdk.io.kinesis.source.checkpoint.generator.CheckpointGenerator;
-//import org.apache.beam.sdk.repackaged.com.google.common.base.CustomOptional;
-//import org.apache.beam.sdk.repackaged.com.google.common.base.Optional;
-//
-//import static org.fest.assertions.Assertions.assertThat;
-//import static org.mockito.Mockito.when;
-//import org.junit.Before;
-//import org.junit.Test;
-//import org.junit.runner.RunWith;
-//import org.mockito.Mock;
-//import org.mockito.runners.MockitoJUnitRunner;
-//import static java.util.Arrays.asList;
-//import java.io.IOException;
-//import java.util.NoSuchElementException;
-//
-///**
-// * Created by ppastuszka on 12.12.15.
-// */
-//@RunWith(MockitoJUnitRunner.class)
-//public class KinesisReaderTest {
-//    @Mock
-//    private SimplifiedKinesisClient kinesis;
-//    @Mock
-//    private CheckpointGenerator generator;
-//    @Mock
-//    private PositionInShard firstCheckpoint, secondCheckpoint;
-//    @Mock
-//    private ShardRecordsIterator firstIterator, secondIterator;
-//    @Mock
-//    private KinesisRecord a, b, c, d;
-//
-//    private KinesisReader reader;
-//
-//    @Before
-//    public void setUp() throws IOException {
-//        when(generator.generate(kinesis)).thenReturn(new KinesisReaderCheckpoint(
-//                asList(firstCheckpoint, secondCheckpoint)
-//        ));
-//        when(firstCheckpoint.getShardRecordsIterator(kinesis)).thenReturn(firstIterator);
-//        when(secondCheckpoint.getShardRecordsIterator(kinesis)).thenReturn(secondIterator);
-//        when(firstIterator.next()).thenReturn(CustomOptional.<KinesisRecord>absent());
-//        when(secondIterator.next()).thenReturn(CustomOptional.<KinesisRecord>absent());
-//
-//        reader = new KinesisReader(kinesis, generator, null);
-//    }
-//
-//    @Test
-//    public void startReturnsFalseIfNoDataAtTheBeginning() throws IOException {
-//        assertThat(reader.start()).isFalse();
-//    }
-//
-//    @Test(expected = NoSuchElementException.class)
-//    public void throwsNoSuchElementExceptionIfNoData() throws IOException {
-//        reader.start();
-//        reader.getCurrent();
-//    }
-//
-//    @Test
-//    public void startReturnsTrueIfSomeDataAvailable() throws IOException {
-//        when(firstIterator.next()).
-//                thenReturn(Optional.of(a)).
-//                thenReturn(CustomOptional.<KinesisRecord>absent());
-//
-//        assertThat(reader.start()).isTrue();
-//    }
-//
-//    @Test
-//    public void readsThroughAllDataAvailable() throws IOException {
-//        when(firstIterator.next()).
-//                thenReturn(CustomOptional.<KinesisRecord>absent()).
-//                thenReturn(Optional.of(a)).
-//                thenReturn(CustomOptional.<KinesisRecord>absent()).
-//                thenReturn(Optional.of(b)).
-//                thenReturn(CustomOptional.<KinesisRecord>absent());
-//
-//        when(secondIterator.next()).
-//                thenReturn(Optional.of(c)).
-//                thenReturn(CustomOptional.<KinesisRecord>absent()).
-//                thenReturn(Optional.of(d)).
-//                thenReturn(CustomOptional.<KinesisRecord>absent());
-//
-//        assertThat(reader.start()).isTrue();
-//        assertThat(reader.getCurrent()).isEqualTo(c);
-//        assertThat(reader.advance()).isTrue();
-//        assertThat(reader.getCurrent()).isEqualTo(a);
-//        assertThat(reader.advance()).isTrue();
-//        assertThat(reader.getCurrent()).isEqualTo(d);
-//        assertThat(reader.advance()).isTrue();
-//        assertThat(reader.getCurrent()).isEqualTo(b);
-//        assertThat(reader.advance()).isFalse();
-//    }
-//
-//}
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Lists.newArrayList;
+import org.apache.beam.sdk.io.kinesis.client.SimplifiedKinesisClient;
+import org.apache.beam.sdk.io.kinesis.client.response.GetKinesisRecordsResult;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.KinesisReaderCheckpoint;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.PositionInShard;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.ShardCheckpoint;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.generator.CheckpointGenerator;
+import org.apache.beam.sdk.repackaged.com.google.common.base.Ticker;
+
+import com.amazonaws.services.kinesis.clientlibrary.lib.worker.InitialPositionInStream;
+import com.amazonaws.services.kinesis.clientlibrary.types.UserRecord;
+import com.amazonaws.services.kinesis.model.Record;
+import com.amazonaws.services.kinesis.model.SequenceNumberRange;
+import com.amazonaws.services.kinesis.model.Shard;
+import com.amazonaws.services.kinesis.model.ShardIteratorType;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import static java.util.Arrays.asList;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/***
+ *
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class KinesisReaderTest {
+    private static final String STREAM = "stream";
+
+    @Mock
+    private SimplifiedKinesisClient kinesis;
+    @Mock
+    private CheckpointGenerator generator;
+    private final FakeTicker ticker = new FakeTicker();
+
+    @Test
+    public void startReturnsFalseIfNoDataAtTheBeginning() throws IOException {
+        KinesisReader reader = readerOf("shard-0");
+        shardReturns("shard-0", "next");
+
+        assertThat(reader.start()).isFalse();
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void throwsNoSuchElementExceptionIfNoData() throws IOException {
+        KinesisReader reader = readerOf("shard-0");
+        shardReturns("shard-0", "next");
+
+        reader.start();
+        reader.getCurrent();
+    }
+
+    @Test
+    public void startsFromCheckpointWithoutShards() throws IOException {
+        KinesisReader reader = readerOf();
+
+        assertThat(reader.start()).isFalse();
+        assertThat(reader.advance()).isFalse();
+        assertThat(shardsIn(reader.getCheckpointMark())).isEmpty();
+    }
+
+    @Test
+    public void readsChildrenOfClosedShard() throws IOException {
+        KinesisReader reader = readerOf("shard-0");
+        shardReturns("shard-0", null, "1");
+        when(kinesis.listShards(STREAM)).thenReturn(asList(
+                shard("shard-0", null, null),
+                shard("shard-1", "shard-0", null),
+                shard("shard-2", "shard-0", null)));
+        childShardReturns("shard-1", "2");
+        childShardReturns("shard-2", "3");
+
+        assertThat(reader.start()).isTrue();
+        assertThat(reader.getCurrent().getSequenceNumber()).isEqualTo("1");
+        assertThat(reader.advance()).isTrue();
+        assertThat(reader.getCurrent().getSequenceNumber()).isEqualTo("2");
+        assertThat(reader.advance()).isTrue();
+        assertThat(reader.getCurrent().getSequenceNumber()).isEqualTo("3");
+        assertThat(shardsIn(reader.getCheckpointMark())).containsOnly("shard-1", "shard-2");
+    }
+
+    @Test
+    public void listsShardsAgainIfChildrenOfClosedShardAreNotListed() throws IOException {
+        KinesisReader reader = readerOf("shard-0");
+        shardReturns("shard-0", null, "1");
+        when(kinesis.listShards(STREAM)).thenReturn(asList(shard("shard-0", null, null)));
+        when(kinesis.refreshShards(STREAM)).thenReturn(asList(
+                shard("shard-0", null, null),
+                shard("shard-1", "shard-0", null)));
+        childShardReturns("shard-1", "2");
+
+        assertThat(reader.start()).isTrue();
+        assertThat(reader.advance()).isTrue();
+        assertThat(reader.getCurrent().getSequenceNumber()).isEqualTo("2");
+        assertThat(shardsIn(reader.getCheckpointMark())).containsOnly("shard-1");
+    }
+
+    @Test
+    public void readsChildOfMergedShardsOnlyAfterBothParentsAreClosed() throws IOException {
+        KinesisReader reader = readerOf("shard-0", "shard-1");
+        shardReturns("shard-0", null);
+        shardReturns("shard-1", "shard-1-iterator");
+        when(kinesis.listShards(STREAM)).thenReturn(asList(
+                shard("shard-0", null, null),
+                shard("shard-1", null, null),
+                shard("shard-2", "shard-0", "shard-1")));
+        childShardReturns("shard-2", "1");
+
+        assertThat(reader.start()).isFalse();
+        verify(kinesis, never()).getShardIterator(anyString(), eq("shard-2"),
+                eq(ShardIteratorType.TRIM_HORIZON), anyString());
+        assertThat(shardsIn(reader.getCheckpointMark())).containsOnly("shard-0", "shard-1");
+
+        shardReturns("shard-1", null);
+        ticker.advance(ShardPollScheduler.MAX_IDLE_BACKOFF_NANOS);
+        assertThat(reader.advance()).isTrue();
+        assertThat(reader.getCurrent().getSequenceNumber()).isEqualTo("1");
+        assertThat(shardsIn(reader.getCheckpointMark())).containsOnly("shard-2");
+    }
+
+    @Test
+    public void readsChildOfMergedShardsOnlyAfterAdjacentParentIsClosedInOtherReader()
+            throws IOException {
+        KinesisReader reader = readerOf("shard-0");
+        KinesisReader adjacentReader = readerOf(mock(CheckpointGenerator.class), "shard-1");
+        shardReturns("shard-0", null);
+        shardReturns("shard-1", "shard-1-iterator");
+        when(kinesis.listShards(STREAM)).thenReturn(asList(
+                closedShard("shard-0", null, null),
+                shard("shard-1", null, null),
+                shard("shard-2", "shard-0", "shard-1")));
+        childShardReturns("shard-2", "1");
+
+        assertThat(reader.start()).isFalse();
+        assertThat(adjacentReader.start()).isFalse();
+        ticker.advance(KinesisReader.ADJACENT_PARENT_CHECK_NANOS);
+        assertThat(reader.advance()).isFalse();
+        verify(kinesis, never()).getShardIterator(anyString(), eq("shard-2"),
+                eq(ShardIteratorType.TRIM_HORIZON), anyString());
+        assertThat(shardsIn(reader.getCheckpointMark())).containsOnly("shard-0");
+
+        shardReturns("shard-1", null);
+        when(kinesis.listShards(STREAM)).thenReturn(asList(
+                closedShard("shard-0", null, null),
+                closedShard("shard-1", null, null),
+                shard("shard-2", "shard-0", "shard-1")));
+        ticker.advance(ShardPollScheduler.MAX_IDLE_BACKOFF_NANOS);
+        assertThat(adjacentReader.advance()).isFalse();
+        assertThat(shardsIn(adjacentReader.getCheckpointMark())).isEmpty();
+        assertThat(reader.advance()).isFalse();
+
+        ticker.advance(KinesisReader.ADJACENT_PARENT_CHECK_NANOS);
+        assertThat(reader.advance()).isTrue();
+        assertThat(reader.getCurrent().getSequenceNumber()).isEqualTo("1");
+        assertThat(shardsIn(reader.getCheckpointMark())).containsOnly("shard-2");
+    }
+
+    @Test
+    public void doesNotPollIdleShardUntilItsBackoffPasses() throws IOException {
+        KinesisReader reader = readerOf("shard-0");
+        shardReturns("shard-0", "shard-0-iterator");
+
+        assertThat(reader.start()).isFalse();
+        ticker.advance(ShardPollScheduler.MIN_IDLE_BACKOFF_NANOS);
+        assertThat(reader.advance()).isFalse();
+        ticker.advance(ShardPollScheduler.MIN_IDLE_BACKOFF_NANOS);
+        assertThat(reader.advance()).isFalse();
+        assertThat(reader.advance()).isFalse();
+        verify(kinesis, times(2)).getRecords(eq("shard-0-iterator"), anyString(), anyInt());
+
+        shardReturns("shard-0", "shard-0-iterator", "1");
+        ticker.advance(ShardPollScheduler.MIN_IDLE_BACKOFF_NANOS * 2);
+        assertThat(reader.advance()).isTrue();
+        assertThat(reader.getCurrent().getSequenceNumber()).isEqualTo("1");
+    }
+
+    @Test
+    public void obtainsShardIteratorsOfRestoredCheckpointOnce() throws IOException {
+        KinesisReader reader = restoredReaderOf("shard-0", "shard-1");
+        childShardReturns("shard-0", "1");
+        childShardReturns("shard-1");
+
+        assertThat(reader.start()).isTrue();
+        assertThat(reader.getCurrent().getSequenceNumber()).isEqualTo("1");
+        assertThat(reader.advance()).isFalse();
+        verify(kinesis, times(1)).getShardIterator(STREAM, "shard-0",
+                ShardIteratorType.TRIM_HORIZON, null);
+        verify(kinesis, times(1)).getShardIterator(STREAM, "shard-1",
+                ShardIteratorType.TRIM_HORIZON, null);
+    }
+
+    @Test
+    public void renewsShardIteratorBeforeItExpires() throws IOException {
+        KinesisReader reader = readerOf("shard-0");
+        shardReturns("shard-0", "shard-0-iterator");
+        when(kinesis.getShardIterator(STREAM, "shard-0", ShardIteratorType.TRIM_HORIZON, null))
+                .thenReturn("renewed");
+        when(kinesis.getRecords(eq("renewed"), anyString(), anyInt())).thenReturn(
+                new GetKinesisRecordsResult(Collections.<UserRecord>emptyList(), "renewed",
+                        "renewed"));
+
+        assertThat(reader.start()).isFalse();
+        ticker.advance(DirectRecordBatchFetcher.ITERATOR_RENEWAL_NANOS);
+        assertThat(reader.advance()).isFalse();
+
+        verify(kinesis, times(1)).getRecords(eq("shard-0-iterator"), anyString(), anyInt());
+        verify(kinesis, times(1)).getRecords(eq("renewed"), anyString(), anyInt());
+    }
+
+    private KinesisReader readerOf(String... shardIds) throws IOException {
+        return readerOf(generator, shardIds);
+    }
+
+    private KinesisReader readerOf(CheckpointGenerator generator, String... shardIds)
+            throws IOException {
+        List<ShardCheckpoint> checkpoints = newArrayList();
+        for (String shardId : shardIds) {
+            checkpoints.add(new ShardCheckpoint(
+                    new PositionInShard(STREAM, shardId, InitialPositionInStream.TRIM_HORIZON),
+                    shardId + "-iterator"));
+        }
+        when(generator.generate(kinesis)).thenReturn(new KinesisReaderCheckpoint(checkpoints));
+        return new KinesisReader(kinesis, generator, null, ReaderSettings.defaults(), ticker);
+    }
+
+    private KinesisReader restoredReaderOf(String... shardIds) throws IOException {
+        List<ShardCheckpoint> checkpoints = newArrayList();
+        for (String shardId : shardIds) {
+            checkpoints.add(new ShardCheckpoint(
+                    new PositionInShard(STREAM, shardId, InitialPositionInStream.TRIM_HORIZON)));
+        }
+        when(generator.generate(kinesis)).thenReturn(new KinesisReaderCheckpoint(checkpoints));
+        return new KinesisReader(kinesis, generator, null, ReaderSettings.defaults(), ticker);
+    }
+
+    private void childShardReturns(String shardId, String... sequenceNumbers)
+            throws IOException {
+        when(kinesis.getShardIterator(STREAM, shardId, ShardIteratorType.TRIM_HORIZON, null))
+                .thenReturn(shardId + "-iterator");
+        shardReturns(shardId, "next", sequenceNumbers);
+    }
+
+    private void shardReturns(String shardId, String nextIterator, String... sequenceNumbers)
+            throws IOException {
+        List<UserRecord> records = newArrayList();
+        for (String sequenceNumber : sequenceNumbers) {
+            records.add(new UserRecord(new Record()
+                    .withSequenceNumber(sequenceNumber)
+                    .withPartitionKey("key")
+                    .withData(ByteBuffer.wrap(new byte[]{1}))));
+        }
+        String iterator = shardId + "-iterator";
+        when(kinesis.getRecords(eq(iterator), anyString(), anyInt())).thenReturn(
+                new GetKinesisRecordsResult(records, iterator, nextIterator));
+        when(kinesis.getRecords(eq("next"), anyString(), anyInt())).thenReturn(
+                new GetKinesisRecordsResult(Collections.<UserRecord>emptyList(), "next", "next"));
+    }
+
+    private Shard shard(String shardId, String parentId, String adjacentParentId) {
+        return new Shard()
+                .withShardId(shardId)
+                .withParentShardId(parentId)
+                .withAdjacentParentShardId(adjacentParentId)
+                .withSequenceNumberRange(new SequenceNumberRange()
+                        .withStartingSequenceNumber("0"));
+    }
+
+    private Shard closedShard(String shardId, String parentId, String adjacentParentId) {
+        Shard shard = shard(shardId, parentId, adjacentParentId);
+        shard.getSequenceNumberRange().setEndingSequenceNumber("100");
+        return shard;
+    }
+
+    private List<String> shardsIn(Object checkpointMark) {
+        List<String> shardIds = newArrayList();
+        for (ShardCheckpoint checkpoint : (KinesisReaderCheckpoint) checkpointMark) {
+            shardIds.add(checkpoint.getShardId());
+        }
+        return shardIds;
+    }
+
+    private static class FakeTicker extends Ticker {
+        private long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        void advance(long delta) {
+            nanos += delta;
+        }
+    }
+}
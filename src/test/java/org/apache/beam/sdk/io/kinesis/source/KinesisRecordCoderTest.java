@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import org.apache.beam.sdk.coders.ByteArrayCoder;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.InstantCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.io.kinesis.client.response.KinesisRecord;
+import org.apache.beam.sdk.util.CoderUtils;
+
+import com.amazonaws.services.kinesis.model.Record;
+import static org.fest.assertions.Assertions.assertThat;
+import org.joda.time.Instant;
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+/***
+ *
+ */
+public class KinesisRecordCoderTest {
+    private static final String SEQUENCE_NUMBER =
+            "49559730349463487463870497431473219262470069212302557186";
+
+    private final KinesisRecordCoder coder = KinesisRecordCoder.of();
+
+    @Test
+    public void preservesAllFieldsOfDeaggregatedRecord() throws Exception {
+        KinesisRecord record = new KinesisRecord(true, record(ByteBuffer.wrap(new byte[]{1, 2})),
+                7L, "123456789", "iterator", "shardId-000000000042");
+
+        KinesisRecord decoded = (KinesisRecord) roundTrip(record);
+
+        assertThat(decoded.getData()).isEqualTo(ByteBuffer.wrap(new byte[]{1, 2}));
+        assertThat(decoded.getSequenceNumber()).isEqualTo(SEQUENCE_NUMBER);
+        assertThat(decoded.getPartitionKey()).isEqualTo("key");
+        assertThat(decoded.getApproximateArrivalTimestamp()).isEqualTo(new Date(1234L));
+        assertThat(decoded.isAggregated()).isTrue();
+        assertThat(decoded.getSubSequenceNumber()).isEqualTo(7L);
+        assertThat(decoded.getExplicitHashKey()).isEqualTo("123456789");
+        assertThat(decoded.getShardId()).isEqualTo("shardId-000000000042");
+        assertThat(decoded.getUniqueId()).isEqualTo(record.getUniqueId());
+    }
+
+    @Test
+    public void decodesPlainRecordAsPlainRecord() throws Exception {
+        Record record = record(ByteBuffer.wrap(new byte[]{1}))
+                .withSequenceNumber("0042")
+                .withApproximateArrivalTimestamp(null);
+
+        Record decoded = roundTrip(record);
+
+        assertThat(decoded instanceof KinesisRecord).isFalse();
+        assertThat(decoded.getSequenceNumber()).isEqualTo("0042");
+        assertThat(decoded.getApproximateArrivalTimestamp()).isNull();
+    }
+
+    @Test
+    public void encodesOnlyRemainingBytesOfData() throws Exception {
+        ByteBuffer heap = ByteBuffer.wrap(new byte[]{0, 1, 2, 3, 4});
+        heap.position(1).limit(4);
+        ByteBuffer slice = ByteBuffer.wrap(new byte[]{9, 1, 2, 3}, 1, 3).slice();
+        ByteBuffer direct = ByteBuffer.allocateDirect(3).put(new byte[]{1, 2, 3});
+        direct.flip();
+        ByteBuffer readOnly = ByteBuffer.wrap(new byte[]{1, 2, 3}).asReadOnlyBuffer();
+
+        for (ByteBuffer data : new ByteBuffer[]{heap, slice, direct, readOnly}) {
+            assertThat(roundTrip(record(data)).getData())
+                    .isEqualTo(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+            assertThat(data.remaining()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    public void decodesRecordsOfFirstFormat() throws Exception {
+        for (int length : new int[]{0, 1, 128, 300}) {
+            byte[] data = new byte[length];
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            Coder.Context nested = Coder.Context.NESTED;
+            ByteArrayCoder.of().encode(data, encoded, nested);
+            StringUtf8Coder.of().encode(SEQUENCE_NUMBER, encoded, nested);
+            StringUtf8Coder.of().encode("key", encoded, nested);
+            InstantCoder.of().encode(new Instant(1234L), encoded, nested);
+
+            Record decoded = CoderUtils.decodeFromByteArray(coder, encoded.toByteArray());
+
+            assertThat(decoded.getData()).isEqualTo(ByteBuffer.wrap(data));
+            assertThat(decoded.getSequenceNumber()).isEqualTo(SEQUENCE_NUMBER);
+            assertThat(decoded.getPartitionKey()).isEqualTo("key");
+            assertThat(decoded.getApproximateArrivalTimestamp()).isEqualTo(new Date(1234L));
+        }
+    }
+
+    private Record roundTrip(Record record) throws Exception {
+        return CoderUtils.decodeFromByteArray(coder, CoderUtils.encodeToByteArray(coder, record));
+    }
+
+    private Record record(ByteBuffer data) {
+        return new Record()
+                .withData(data)
+                .withSequenceNumber(SEQUENCE_NUMBER)
+                .withPartitionKey("key")
+                .withApproximateArrivalTimestamp(new Date(1234L));
+    }
+}
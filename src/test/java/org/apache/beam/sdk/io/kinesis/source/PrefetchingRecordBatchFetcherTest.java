@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import org.apache.beam.sdk.io.kinesis.client.response.KinesisRecord;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Background fetches are executed in the calling thread here, so every call to
+ * {@link PrefetchingRecordBatchFetcher#fetch()} refills the buffer before it returns.
+ * Delayed fetches are never executed.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class PrefetchingRecordBatchFetcherTest {
+    private static final RecordBatch NO_RECORDS = RecordBatch.withNoRecords(0);
+
+    @Mock
+    private RecordBatchFetcher delegate;
+    @Mock
+    private ScheduledExecutorService executor;
+    @Mock
+    private KinesisRecord a, b, c;
+
+    private PrefetchingRecordBatchFetcher fetcher;
+
+    @Before
+    public void setUp() throws IOException {
+        when(delegate.fetch()).thenReturn(NO_RECORDS);
+        for (KinesisRecord record : asList(a, b, c)) {
+            when(record.getData()).thenReturn(ByteBuffer.allocate(0));
+        }
+        doAnswer(new RunImmediately()).when(executor).execute(any(Runnable.class));
+        fetcher = new PrefetchingRecordBatchFetcher(delegate, executor, 2,
+                new BatchLimitTuner(1024));
+    }
+
+    @Test
+    public void fetchesAheadUpToTheGivenDepth() throws IOException {
+        when(delegate.fetch()).
+                thenReturn(batch(singletonList(a))).
+                thenReturn(batch(singletonList(b))).
+                thenReturn(batch(singletonList(c))).
+                thenReturn(NO_RECORDS);
+
+        assertThat(fetcher.fetch().getRecords()).isEmpty();
+        verify(delegate, times(2)).fetch();
+
+        assertThat(fetcher.fetch().getRecords()).isEqualTo(singletonList(a));
+        verify(delegate, times(3)).fetch();
+
+        assertThat(fetcher.fetch().getRecords()).isEqualTo(singletonList(b));
+        assertThat(fetcher.fetch().getRecords()).isEqualTo(singletonList(c));
+        assertThat(fetcher.fetch().getRecords()).isEmpty();
+    }
+
+    @Test
+    public void stopsPrefetchingWhenShardHasNoMoreRecords() throws IOException {
+        when(delegate.fetch()).
+                thenReturn(batch(asList(a, b))).
+                thenReturn(NO_RECORDS);
+
+        assertThat(fetcher.fetch().getRecords()).isEmpty();
+        verify(delegate, times(2)).fetch();
+        assertThat(fetcher.fetch().getRecords()).isEqualTo(asList(a, b));
+    }
+
+    @Test
+    public void reportsLagOfLastEmptyResponseWhenNothingIsBuffered() throws IOException {
+        when(delegate.fetch()).
+                thenReturn(batch(singletonList(a))).
+                thenReturn(RecordBatch.withNoRecords(0));
+
+        assertThat(fetcher.fetch().isLagKnown()).isFalse();
+        assertThat(fetcher.fetch().getMillisBehindLatest()).isEqualTo(1000L);
+        assertThat(fetcher.fetch().getMillisBehindLatest()).isEqualTo(0L);
+    }
+
+    @Test(expected = IOException.class)
+    public void reportsFailureOnlyAfterBufferedBatchesWereConsumed() throws IOException {
+        when(delegate.fetch()).
+                thenReturn(batch(singletonList(a))).
+                thenThrow(new IOException("Kinesis is down"));
+
+        assertThat(fetcher.fetch().getRecords()).isEmpty();
+        assertThat(fetcher.fetch().getRecords()).isEqualTo(singletonList(a));
+        fetcher.fetch();
+    }
+
+    @Test
+    public void resumesFetchingAfterFailureWasReported() throws IOException {
+        when(delegate.fetch()).
+                thenThrow(new IOException("Rate exceeded")).
+                thenReturn(batch(singletonList(a))).
+                thenReturn(NO_RECORDS);
+
+        assertThat(fetcher.fetch().getRecords()).isEmpty();
+        try {
+            fetcher.fetch();
+            fail("Failure of background fetch was not reported");
+        } catch (IOException e) {
+            assertThat(e.getCause()).hasMessage("Rate exceeded");
+        }
+
+        assertThat(fetcher.fetch().getRecords()).isEmpty();
+        assertThat(fetcher.fetch().getRecords()).isEqualTo(singletonList(a));
+    }
+
+    @Test
+    public void startsFetchingOnFirstFetch() throws IOException {
+        verify(delegate, times(0)).fetch();
+        verify(executor, times(0)).execute(any(Runnable.class));
+
+        fetcher.fetch();
+
+        verify(executor).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void postponesFetchUntilAllowedByKinesisLimits() throws IOException {
+        when(delegate.nanosUntilNextFetch()).thenReturn(100L);
+
+        assertThat(fetcher.fetch().getRecords()).isEmpty();
+        verify(delegate, times(0)).fetch();
+        verify(executor).schedule(any(Runnable.class), eq(100L), eq(TimeUnit.NANOSECONDS));
+        assertThat(fetcher.nanosUntilNextFetch()).isEqualTo(0L);
+
+        fetcher.fetch();
+        verify(executor, times(1)).schedule(any(Runnable.class), anyLong(),
+                any(TimeUnit.class));
+    }
+
+    @Test
+    public void doesNotFetchAfterClose() throws IOException {
+        fetcher.close();
+
+        assertThat(fetcher.fetch().getRecords()).isEmpty();
+        verify(delegate, times(0)).fetch();
+        verify(delegate).close();
+    }
+
+    private RecordBatch batch(List<KinesisRecord> records) {
+        return new RecordBatch(records, 1000);
+    }
+
+    private static class RunImmediately implements Answer<Object> {
+        @Override
+        public Object answer(InvocationOnMock invocation) throws Throwable {
+            ((Runnable) invocation.getArguments()[0]).run();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import org.apache.beam.sdk.io.kinesis.client.response.KinesisRecord;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.PositionInShard;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.ShardCheckpoint;
+
+import static com.amazonaws.services.kinesis.model.ShardIteratorType.AFTER_SEQUENCE_NUMBER;
+import com.amazonaws.services.kinesis.model.Record;
+import static org.fest.assertions.Assertions.assertThat;
+import org.joda.time.Instant;
+import org.junit.Test;
+import static java.util.Arrays.asList;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/***
+ *
+ */
+public class RecordFilterTest {
+    private final RecordFilter filter = new RecordFilter();
+    private final ShardCheckpoint afterSecondSubRecord = new ShardCheckpoint(
+            new PositionInShard("stream", "shardId-000000000000", AFTER_SEQUENCE_NUMBER, "100",
+                    1L), "iterator");
+
+    @Test
+    public void cutsAlreadyProcessedRecordsOfFirstBatch() {
+        List<KinesisRecord> batch = asList(record("100", 0), record("100", 1), record("100", 2),
+                record("101", 0));
+
+        List<KinesisRecord> filtered = filter.apply(batch, afterSecondSubRecord);
+
+        assertThat(filtered).isEqualTo(batch.subList(2, 4));
+    }
+
+    @Test
+    public void passesFollowingBatchesThrough() {
+        filter.apply(asList(record("100", 2)), afterSecondSubRecord);
+        List<KinesisRecord> batch = asList(record("100", 0));
+
+        assertThat(filter.apply(batch, afterSecondSubRecord)).isSameAs(batch);
+    }
+
+    @Test
+    public void keepsCheckingUntilSomeRecordPasses() {
+        filter.apply(Collections.<KinesisRecord>emptyList(), afterSecondSubRecord);
+        filter.apply(asList(record("100", 0)), afterSecondSubRecord);
+
+        assertThat(filter.apply(asList(record("100", 1), record("100", 2)),
+                afterSecondSubRecord)).isEqualTo(asList(record("100", 2)));
+    }
+
+    @Test
+    public void checksAgainAfterRearming() {
+        filter.apply(asList(record("100", 2)), afterSecondSubRecord);
+        filter.rearm();
+
+        assertThat(filter.apply(asList(record("100", 1)), afterSecondSubRecord)).isEmpty();
+    }
+
+    @Test
+    public void cutsRecordsArrivedBeforeStartTimestamp() {
+        ShardCheckpoint atTimestamp = new ShardCheckpoint(
+                new PositionInShard("stream", "shardId-000000000000", new Instant(1000L)));
+        List<KinesisRecord> batch = asList(recordAt("100", 999L), recordAt("101", 1000L),
+                recordAt("102", 998L));
+
+        assertThat(filter.apply(batch, atTimestamp)).isEqualTo(batch.subList(1, 3));
+    }
+
+    @Test
+    public void keepsCheckingUntilRecordAtStartTimestamp() {
+        ShardCheckpoint atTimestamp = new ShardCheckpoint(
+                new PositionInShard("stream", "shardId-000000000000", new Instant(1000L)));
+
+        assertThat(filter.apply(asList(recordAt("100", 998L), recordAt("101", 999L)),
+                atTimestamp)).isEmpty();
+        assertThat(filter.apply(asList(recordAt("102", 999L), recordAt("103", 1001L)),
+                atTimestamp)).isEqualTo(asList(recordAt("103", 1001L)));
+    }
+
+    private KinesisRecord record(String sequenceNumber, long subSequenceNumber) {
+        return new KinesisRecord(true, new Record()
+                .withData(ByteBuffer.wrap(new byte[0]))
+                .withPartitionKey("key")
+                .withSequenceNumber(sequenceNumber), subSequenceNumber, null, "iterator", null);
+    }
+
+    private KinesisRecord recordAt(String sequenceNumber, long arrivalMillis) {
+        return new KinesisRecord(false, new Record()
+                .withData(ByteBuffer.wrap(new byte[0]))
+                .withPartitionKey("key")
+                .withSequenceNumber(sequenceNumber)
+                .withApproximateArrivalTimestamp(new Date(arrivalMillis)), 0L, null, "iterator",
+                null);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import static org.apache.beam.sdk.io.UnboundedSource.UnboundedReader.BACKLOG_UNKNOWN;
+import org.apache.beam.sdk.io.kinesis.client.response.KinesisRecord;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.junit.Test;
+import static java.util.Arrays.asList;
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+/***
+ *
+ */
+public class ShardBacklogEstimatorTest {
+    private final ShardBacklogEstimator estimator = new ShardBacklogEstimator();
+
+    @Test
+    public void isUnknownUntilLagAndWriteRateAreObserved() {
+        assertThat(estimator.getBacklogBytes()).isEqualTo(BACKLOG_UNKNOWN);
+
+        estimator.recordFetched(RecordBatch.withNoRecords(1000));
+        assertThat(estimator.getBacklogBytes()).isEqualTo(BACKLOG_UNKNOWN);
+    }
+
+    @Test
+    public void isEmptyWhenShardIsReadUpToItsTip() {
+        estimator.recordFetched(RecordBatch.withNoRecords(0));
+
+        assertThat(estimator.getBacklogBytes()).isEqualTo(0L);
+    }
+
+    @Test
+    public void multipliesLagByObservedWriteRate() {
+        estimator.recordFetched(new RecordBatch(
+                asList(record(100, 1000L), record(100, 1010L), record(100, 1020L)), 60000));
+
+        assertThat(estimator.getBacklogBytes()).isEqualTo(60000L * 10);
+    }
+
+    @Test
+    public void smoothesWriteRate() {
+        estimator.recordFetched(new RecordBatch(asList(record(10, 0L), record(100, 10L)), 1000));
+        estimator.recordFetched(new RecordBatch(asList(record(600, 20L)), 1000));
+
+        // 10 bytes per ms, then 60 bytes per ms
+        assertThat(estimator.getBacklogBytes()).isEqualTo(1000L * 20);
+    }
+
+    private KinesisRecord record(int size, long arrivalMillis) {
+        KinesisRecord record = mock(KinesisRecord.class);
+        when(record.getData()).thenReturn(ByteBuffer.allocate(size));
+        when(record.getApproximateArrivalTimestamp()).thenReturn(new Date(arrivalMillis));
+        return record;
+    }
+}
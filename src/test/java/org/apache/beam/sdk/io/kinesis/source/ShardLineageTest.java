@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import com.amazonaws.services.kinesis.model.SequenceNumberRange;
+import com.amazonaws.services.kinesis.model.Shard;
+import static org.fest.assertions.Assertions.assertThat;
+import org.junit.Test;
+import static java.util.Arrays.asList;
+
+/***
+ *
+ */
+public class ShardLineageTest {
+    private final Shard closedParent = shard("shard-0", null, null, "100");
+    private final Shard expiredParentsChild = shard("shard-1", "shard-expired", null, "200");
+    private final Shard splitChild = shard("shard-2", "shard-0", null, null);
+    private final Shard mergedChild = shard("shard-3", "shard-1", "shard-0", null);
+
+    private final ShardLineage lineage =
+            new ShardLineage(asList(closedParent, expiredParentsChild, splitChild, mergedChild));
+
+    @Test
+    public void rootShardsHaveNoListedParents() {
+        assertThat(lineage.getRootShards()).containsOnly(closedParent, expiredParentsChild);
+    }
+
+    @Test
+    public void findsOpenShards() {
+        assertThat(lineage.getOpenShards()).containsOnly(splitChild, mergedChild);
+    }
+
+    @Test
+    public void findsChildrenThroughBothParents() {
+        assertThat(lineage.getChildrenOf("shard-0")).containsOnly(splitChild, mergedChild);
+        assertThat(lineage.getChildrenOf("shard-1")).containsOnly(mergedChild);
+        assertThat(lineage.getChildrenOf("shard-3")).isEmpty();
+    }
+
+    private Shard shard(String shardId, String parentId, String adjacentParentId,
+                        String endingSequenceNumber) {
+        return new Shard()
+                .withShardId(shardId)
+                .withParentShardId(parentId)
+                .withAdjacentParentShardId(adjacentParentId)
+                .withSequenceNumberRange(new SequenceNumberRange()
+                        .withStartingSequenceNumber("0")
+                        .withEndingSequenceNumber(endingSequenceNumber));
+    }
+}
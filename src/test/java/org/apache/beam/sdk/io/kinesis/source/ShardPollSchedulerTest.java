@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Lists.newArrayList;
+import org.apache.beam.sdk.repackaged.com.google.common.base.Ticker;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.joda.time.Duration;
+import org.junit.Test;
+import static java.util.Arrays.asList;
+import java.util.List;
+
+/***
+ *
+ */
+public class ShardPollSchedulerTest {
+    private final ShardRecordsIterator behind = shardWithLag(30 * 60 * 1000);
+    private final ShardRecordsIterator upToDate = shardWithLag(0);
+    private final FakeTicker ticker = new FakeTicker();
+
+    @Test
+    public void givesTurnsInProportionToWeights() {
+        ShardPollScheduler scheduler = new ShardPollScheduler(asList(behind, upToDate),
+                new LagWeightedShardSelection(Duration.standardMinutes(10), 10), ticker);
+
+        List<ShardRecordsIterator> turns = takeTurns(scheduler, 10);
+
+        assertThat(turns).containsOnly(behind, upToDate);
+        assertThat(countOf(turns, behind)).isEqualTo(8);
+        assertThat(countOf(turns, upToDate)).isEqualTo(2);
+    }
+
+    @Test
+    public void doesNotStarveShardWithLowestWeight() {
+        ShardPollScheduler scheduler = new ShardPollScheduler(asList(behind, upToDate),
+                new LagWeightedShardSelection(Duration.millis(1), 100), ticker);
+
+        assertThat(takeTurns(scheduler, 101)).contains(upToDate);
+    }
+
+    @Test
+    public void givesEqualTurnsWithRoundRobin() {
+        ShardPollScheduler scheduler = new ShardPollScheduler(asList(behind, upToDate),
+                new RoundRobinShardSelection(), ticker);
+
+        assertThat(takeTurns(scheduler, 4)).isEqualTo(asList(behind, upToDate, behind, upToDate));
+    }
+
+    @Test
+    public void putsIdleShardAsideForBackoff() {
+        ShardPollScheduler scheduler = new ShardPollScheduler(asList(upToDate),
+                new RoundRobinShardSelection(), ticker);
+
+        assertThat(scheduler.getCurrent()).isSameAs(upToDate);
+        scheduler.markCurrentIdle(0);
+        assertThat(scheduler.getCurrent()).isNull();
+        assertThat(scheduler.size()).isEqualTo(1);
+
+        ticker.advance(ShardPollScheduler.MIN_IDLE_BACKOFF_NANOS);
+        assertThat(scheduler.getCurrent()).isSameAs(upToDate);
+        scheduler.markCurrentIdle(0);
+        ticker.advance(ShardPollScheduler.MIN_IDLE_BACKOFF_NANOS);
+        assertThat(scheduler.getCurrent()).isNull();
+        ticker.advance(ShardPollScheduler.MIN_IDLE_BACKOFF_NANOS);
+        assertThat(scheduler.getCurrent()).isSameAs(upToDate);
+    }
+
+    @Test
+    public void keepsBackoffOfPushedShardShort() {
+        when(upToDate.isPushBased()).thenReturn(true);
+        ShardPollScheduler scheduler = new ShardPollScheduler(asList(upToDate),
+                new RoundRobinShardSelection(), ticker);
+
+        for (int i = 0; i < 10; ++i) {
+            assertThat(scheduler.getCurrent()).isSameAs(upToDate);
+            scheduler.markCurrentIdle(0);
+            assertThat(scheduler.getCurrent()).isNull();
+            ticker.advance(ShardPollScheduler.PUSHED_SHARD_IDLE_BACKOFF_NANOS);
+        }
+        assertThat(scheduler.getCurrent()).isSameAs(upToDate);
+    }
+
+    @Test
+    public void weightsShardsByLag() {
+        LagWeightedShardSelection policy =
+                new LagWeightedShardSelection(Duration.standardMinutes(1), 5);
+
+        assertThat(policy.weightOf(shardWithLag(RecordBatch.UNKNOWN_LAG))).isEqualTo(1.0);
+        assertThat(policy.weightOf(shardWithLag(0))).isEqualTo(1.0);
+        assertThat(policy.weightOf(shardWithLag(90 * 1000))).isEqualTo(2.5);
+        assertThat(policy.weightOf(shardWithLag(60 * 60 * 1000))).isEqualTo(5.0);
+    }
+
+    private List<ShardRecordsIterator> takeTurns(ShardPollScheduler scheduler, int count) {
+        List<ShardRecordsIterator> turns = newArrayList();
+        for (int i = 0; i < count; ++i) {
+            turns.add(scheduler.getCurrent());
+            scheduler.markCurrentActive();
+        }
+        return turns;
+    }
+
+    private int countOf(List<ShardRecordsIterator> turns, ShardRecordsIterator shard) {
+        int count = 0;
+        for (ShardRecordsIterator turn : turns) {
+            if (turn == shard) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private ShardRecordsIterator shardWithLag(long millisBehindLatest) {
+        ShardRecordsIterator shard = mock(ShardRecordsIterator.class);
+        when(shard.getMillisBehindLatest()).thenReturn(millisBehindLatest);
+        return shard;
+    }
+
+    private static class FakeTicker extends Ticker {
+        private long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        void advance(long delta) {
+            nanos += delta;
+        }
+    }
+}
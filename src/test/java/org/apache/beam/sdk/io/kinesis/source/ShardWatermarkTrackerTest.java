@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import org.apache.beam.sdk.io.kinesis.client.response.KinesisRecord;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Test;
+import java.util.Date;
+
+/***
+ *
+ */
+public class ShardWatermarkTrackerTest {
+    private static final Duration IDLE_TIMEOUT = Duration.standardSeconds(10);
+    private static final Instant NOW = new Instant(1000000L);
+
+    private final ShardWatermarkTracker tracker = new ShardWatermarkTracker(NOW);
+
+    @Test
+    public void followsArrivalTimestampsOfConsumedRecords() {
+        assertThat(tracker.getWatermark(false, NOW, IDLE_TIMEOUT))
+                .isEqualTo(BoundedWindow.TIMESTAMP_MIN_VALUE);
+
+        tracker.recordConsumed(recordArrivedAt(500L), NOW);
+        assertThat(tracker.getWatermark(true, NOW, IDLE_TIMEOUT)).isEqualTo(new Instant(500L));
+
+        tracker.recordConsumed(recordArrivedAt(400L), NOW);
+        assertThat(tracker.getWatermark(true, NOW, IDLE_TIMEOUT)).isEqualTo(new Instant(500L));
+    }
+
+    @Test
+    public void advancesWithCurrentTimeWhenShardIsIdleAndCaughtUp() {
+        tracker.recordConsumed(recordArrivedAt(500L), NOW);
+        tracker.recordFetched(RecordBatch.withNoRecords(0));
+        Instant later = NOW.plus(IDLE_TIMEOUT).plus(1);
+
+        assertThat(tracker.getWatermark(false, later, IDLE_TIMEOUT))
+                .isEqualTo(later.minus(IDLE_TIMEOUT));
+    }
+
+    @Test
+    public void doesNotTreatShardAsIdleBeforeTimeoutOrWhenBehind() {
+        tracker.recordConsumed(recordArrivedAt(500L), NOW);
+        tracker.recordFetched(RecordBatch.withNoRecords(0));
+        assertThat(tracker.getWatermark(false, NOW.plus(1), IDLE_TIMEOUT))
+                .isEqualTo(new Instant(500L));
+
+        Instant later = NOW.plus(IDLE_TIMEOUT).plus(1);
+        assertThat(tracker.getWatermark(true, later, IDLE_TIMEOUT)).isEqualTo(new Instant(500L));
+
+        tracker.recordFetched(RecordBatch.withNoRecords(2000));
+        tracker.recordFetched(RecordBatch.empty());
+        assertThat(tracker.getWatermark(false, later, IDLE_TIMEOUT)).isEqualTo(new Instant(500L));
+    }
+
+    private KinesisRecord recordArrivedAt(long millis) {
+        KinesisRecord record = mock(KinesisRecord.class);
+        when(record.getApproximateArrivalTimestamp()).thenReturn(new Date(millis));
+        return record;
+    }
+}
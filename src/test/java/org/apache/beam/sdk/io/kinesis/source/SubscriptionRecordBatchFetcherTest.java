@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source;
+
+import org.apache.beam.sdk.io.kinesis.client.EnhancedFanOutClient;
+import org.apache.beam.sdk.io.kinesis.client.ShardEventHandler;
+import org.apache.beam.sdk.io.kinesis.client.ShardSubscription;
+import org.apache.beam.sdk.io.kinesis.client.response.KinesisRecord;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.ShardCheckpoint;
+
+import com.amazonaws.services.kinesis.model.Record;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import static java.util.Collections.singletonList;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+/***
+ *
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class SubscriptionRecordBatchFetcherTest {
+    private static final String CONSUMER = "CONSUMER";
+
+    @Mock
+    private EnhancedFanOutClient client;
+    @Mock
+    private ShardCheckpoint firstCheckpoint, secondCheckpoint;
+    @Mock
+    private ShardSubscription subscription;
+    @Mock
+    private RecordFilter filter;
+
+    private SubscriptionRecordBatchFetcher fetcher;
+
+    @Before
+    public void setUp() throws IOException {
+        when(firstCheckpoint.subscribe(eq(client), eq(CONSUMER), any(ShardEventHandler.class)))
+                .thenReturn(subscription);
+        when(secondCheckpoint.subscribe(eq(client), eq(CONSUMER), any(ShardEventHandler.class)))
+                .thenReturn(subscription);
+        when(firstCheckpoint.moveAfter(any(KinesisRecord.class))).thenReturn(secondCheckpoint);
+        when(filter.apply(anyListOf(KinesisRecord.class), any(ShardCheckpoint.class)))
+                .thenAnswer(new Answer<Object>() {
+                    @Override
+                    public Object answer(InvocationOnMock invocation) throws Throwable {
+                        return invocation.getArguments()[0];
+                    }
+                });
+
+        fetcher = new SubscriptionRecordBatchFetcher(firstCheckpoint, client, CONSUMER, filter, 2);
+    }
+
+    @Test
+    public void subscribesOnFirstFetchAndReturnsPushedRecords() throws IOException {
+        assertThat(fetcher.fetch().getRecords()).isEmpty();
+        ShardEventHandler handler = subscribedHandler(firstCheckpoint);
+
+        handler.onEvent(singletonList(record("1")), 0);
+
+        List<KinesisRecord> batch = fetcher.fetch().getRecords();
+        assertThat(batch).hasSize(1);
+        assertThat(batch.get(0).getSequenceNumber()).isEqualTo("1");
+        assertThat(fetcher.fetch().getRecords()).isEmpty();
+    }
+
+    @Test
+    public void resubscribesAfterLastReceivedRecordWhenSubscriptionExpires() throws IOException {
+        fetcher.fetch();
+        ShardEventHandler handler = subscribedHandler(firstCheckpoint);
+        handler.onEvent(singletonList(record("1")), 0);
+        handler.onComplete();
+
+        assertThat(fetcher.fetch().getRecords()).hasSize(1);
+        assertThat(fetcher.fetch().getRecords()).isEmpty();
+        subscribedHandler(secondCheckpoint);
+    }
+
+    @Test
+    public void reportsLagOfEmptyEventsWhenThereIsNothingBuffered() throws IOException {
+        assertThat(fetcher.fetch().isLagKnown()).isFalse();
+        ShardEventHandler handler = subscribedHandler(firstCheckpoint);
+
+        handler.onEvent(singletonList(record("1")), 500);
+        assertThat(fetcher.fetch().getMillisBehindLatest()).isEqualTo(500L);
+        assertThat(fetcher.fetch().isLagKnown()).isFalse();
+
+        handler.onEvent(Collections.<Record>emptyList(), 0);
+        assertThat(fetcher.fetch().getMillisBehindLatest()).isEqualTo(0L);
+    }
+
+    @Test
+    public void doesNotResubscribeOnceShardIsClosed() throws IOException {
+        fetcher.fetch();
+        ShardEventHandler handler = subscribedHandler(firstCheckpoint);
+        handler.onEvent(singletonList(record("1")), 0);
+        handler.onShardEnd();
+
+        assertThat(fetcher.isShardClosed()).isFalse();
+        assertThat(fetcher.fetch().getRecords()).hasSize(1);
+        assertThat(fetcher.isShardClosed()).isTrue();
+        assertThat(fetcher.fetch().getRecords()).isEmpty();
+        verify(secondCheckpoint, never()).subscribe(eq(client), eq(CONSUMER),
+                any(ShardEventHandler.class));
+    }
+
+    @Test(expected = IOException.class)
+    public void reportsFailedSubscription() throws IOException {
+        fetcher.fetch();
+        subscribedHandler(firstCheckpoint).onError(new RuntimeException("Connection reset"));
+
+        fetcher.fetch();
+    }
+
+    @Test
+    public void resubscribesAfterFailureWasReported() throws IOException {
+        fetcher.fetch();
+        ShardEventHandler handler = subscribedHandler(firstCheckpoint);
+        handler.onEvent(singletonList(record("1")), 0);
+        handler.onError(new RuntimeException("Connection reset"));
+
+        assertThat(fetcher.fetch().getRecords()).hasSize(1);
+        try {
+            fetcher.fetch();
+            fail("Failed subscription was not reported");
+        } catch (IOException e) {
+            assertThat(e.getCause()).hasMessage("Connection reset");
+        }
+
+        assertThat(fetcher.fetch().getRecords()).isEmpty();
+        subscribedHandler(secondCheckpoint).onEvent(singletonList(record("2")), 0);
+        assertThat(fetcher.fetch().getRecords()).hasSize(1);
+    }
+
+    @Test
+    public void cancelsSubscriptionOnClose() throws IOException {
+        fetcher.fetch();
+        ShardEventHandler handler = subscribedHandler(firstCheckpoint);
+
+        fetcher.close();
+        handler.onEvent(singletonList(record("1")), 0);
+
+        verify(subscription).cancel();
+        assertThat(fetcher.fetch().getRecords()).isEmpty();
+    }
+
+    private ShardEventHandler subscribedHandler(ShardCheckpoint checkpoint) throws IOException {
+        ArgumentCaptor<ShardEventHandler> handler =
+                ArgumentCaptor.forClass(ShardEventHandler.class);
+        verify(checkpoint).subscribe(eq(client), eq(CONSUMER), handler.capture());
+        return handler.getValue();
+    }
+
+    private Record record(String sequenceNumber) {
+        return new Record()
+                .withSequenceNumber(sequenceNumber)
+                .withPartitionKey("key")
+                .withData(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source.checkpoint;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Lists.newArrayList;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.coders.SerializableCoder;
+import org.apache.beam.sdk.util.CoderUtils;
+
+import com.amazonaws.services.kinesis.model.ShardIteratorType;
+import static org.fest.assertions.Assertions.assertThat;
+import org.joda.time.Instant;
+import org.junit.Test;
+import static java.util.Arrays.asList;
+import java.util.Collections;
+import java.util.List;
+
+/***
+ *
+ */
+public class KinesisReaderCheckpointCoderTest {
+    private static final String SEQUENCE_NUMBER =
+            "49559730349463487463870497431473219262470069212302557186";
+
+    private final KinesisReaderCheckpointCoder coder = KinesisReaderCheckpointCoder.of();
+    private final KinesisReaderCheckpoint checkpoint = new KinesisReaderCheckpoint(asList(
+            shard("shardId-000000000000", ShardIteratorType.TRIM_HORIZON, null, null, "iterator"),
+            shard("shardId-000000000017", ShardIteratorType.LATEST, null, null, null),
+            shard("shardId-000000000123", ShardIteratorType.AFTER_SEQUENCE_NUMBER,
+                    SEQUENCE_NUMBER, 12L, "iterator"),
+            shard("custom-shard", ShardIteratorType.AT_SEQUENCE_NUMBER, "0123", 0L, "iterator"),
+            new ShardCheckpoint(new PositionInShard("stream", "shardId-000000000200",
+                    new Instant(1476057600000L)))
+    ));
+
+    @Test
+    public void decodesEncodedCheckpoint() throws Exception {
+        KinesisReaderCheckpoint decoded = CoderUtils.decodeFromByteArray(coder,
+                CoderUtils.encodeToByteArray(coder, checkpoint));
+
+        assertSameShards(decoded, checkpoint);
+    }
+
+    @Test
+    public void doesNotPersistShardIterators() throws Exception {
+        KinesisReaderCheckpoint decoded = CoderUtils.decodeFromByteArray(coder,
+                CoderUtils.encodeToByteArray(coder, checkpoint));
+
+        for (ShardCheckpoint shard : decoded) {
+            assertThat(shard.getShardIterator()).isNull();
+        }
+    }
+
+    @Test(expected = CoderException.class)
+    public void rejectsUnknownFormatVersion() throws Exception {
+        CoderUtils.decodeFromByteArray(coder, new byte[]{2, 0});
+    }
+
+    @Test
+    public void decodesEmptyCheckpoint() throws Exception {
+        KinesisReaderCheckpoint empty =
+                new KinesisReaderCheckpoint(Collections.<ShardCheckpoint>emptyList());
+
+        assertThat(CoderUtils.decodeFromByteArray(coder,
+                CoderUtils.encodeToByteArray(coder, empty))).isEmpty();
+    }
+
+    @Test
+    public void decodesCheckpointWrittenWithJavaSerialization() throws Exception {
+        byte[] serialized = CoderUtils.encodeToByteArray(
+                SerializableCoder.of(KinesisReaderCheckpoint.class), checkpoint);
+
+        assertSameShards(CoderUtils.decodeFromByteArray(coder, serialized), checkpoint);
+    }
+
+    @Test
+    public void isMuchSmallerThanJavaSerialization() throws Exception {
+        byte[] serialized = CoderUtils.encodeToByteArray(
+                SerializableCoder.of(KinesisReaderCheckpoint.class), checkpoint);
+        byte[] encoded = CoderUtils.encodeToByteArray(coder, checkpoint);
+
+        assertThat(encoded.length * 5).isLessThan(serialized.length);
+    }
+
+    private void assertSameShards(KinesisReaderCheckpoint actual,
+                                  KinesisReaderCheckpoint expected) {
+        List<ShardCheckpoint> actualShards = newArrayList(actual);
+        List<ShardCheckpoint> expectedShards = newArrayList(expected);
+        assertThat(actualShards).hasSize(expectedShards.size());
+        for (int i = 0; i < expectedShards.size(); ++i) {
+            PositionInShard actualPosition = actualShards.get(i).getPositionInShard();
+            PositionInShard expectedPosition = expectedShards.get(i).getPositionInShard();
+            assertThat(actualPosition.getStreamName()).isEqualTo(expectedPosition.getStreamName());
+            assertThat(actualPosition.getShardId()).isEqualTo(expectedPosition.getShardId());
+            assertThat(actualPosition.getShardIteratorType())
+                    .isEqualTo(expectedPosition.getShardIteratorType());
+            assertThat(actualPosition.getSequenceNumber())
+                    .isEqualTo(expectedPosition.getSequenceNumber());
+            assertThat(actualPosition.getSubSequenceNumber())
+                    .isEqualTo(expectedPosition.getSubSequenceNumber());
+            assertThat(actualPosition.getStartTimestamp())
+                    .isEqualTo(expectedPosition.getStartTimestamp());
+        }
+    }
+
+    private ShardCheckpoint shard(String shardId, ShardIteratorType type, String sequenceNumber,
+                                  Long subSequenceNumber, String iterator) {
+        return new ShardCheckpoint(
+                new PositionInShard("stream", shardId, type, sequenceNumber, subSequenceNumber),
+                iterator);
+    }
+}
@@ -1,66 +1,158 @@
-///*
-// * Licensed to the Apache Software Foundation (ASF) under one
-// * or more contributor license agreements.  See the NOTICE file
-// * distributed with this work for additional information
-// * regarding copyright ownership.  The ASF licenses this file
-// * to you under the Apache License, Version 2.0 (the
-// * "License"); you may not use this file except in compliance
-// * with the License.  You may obtain a copy of the License at
-// *
-// *     http://www.apache.org/licenses/LICENSE-2.0
-// *
-// * Unless required by applicable law or agreed to in writing, software
-// * distributed under the License is distributed on an "AS IS" BASIS,
-// * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-// * See the License for the specific language governing permissions and
-// * limitations under the License.
-// */
-//package org.apache.beam.sdk.io.kinesis.source.checkpoint;
-//
-//import org.apache.beam.sdk.repackaged.com.google.common.collect.Iterables;
-//
-//import static org.fest.assertions.Assertions.assertThat;
-//import org.junit.Before;
-//import org.junit.Test;
-//import org.junit.runner.RunWith;
-//import org.mockito.Mock;
-//import org.mockito.runners.MockitoJUnitRunner;
-//import static java.util.Arrays.asList;
-//import java.util.Iterator;
-//import java.util.List;
-//
-///***
-// *
-// */
-//@RunWith(MockitoJUnitRunner.class)
-//public class KinesisReaderCheckpointTest {
-//    @Mock
-//    private PositionInShard a, b, c;
-//
-//    private KinesisReaderCheckpoint checkpoint;
-//
-//    @Before
-//    public void setUp() {
-//        checkpoint = new KinesisReaderCheckpoint(asList(a, b, c));
-//    }
-//
-//    @Test
-//    public void splitsCheckpointAccordingly() {
-//        verifySplitInto(1);
-//        verifySplitInto(2);
-//        verifySplitInto(3);
-//        verifySplitInto(4);
-//    }
-//
-//    @Test(expected = UnsupportedOperationException.class)
-//    public void isImmutable() {
-//        Iterator<PositionInShard> iterator = checkpoint.iterator();
-//        iterator.remove();
-//    }
-//
-//    private void verifySplitInto(int size) {
-//        List<KinesisReaderCheckpoint> split = checkpoint.splitInto(size);
-//        assertThat(Iterables.concat(split)).containsOnly(a, b, c);
-//        assertThat(split).hasSize(Math.min(size, 3));
-//    }
-//}
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source.checkpoint;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Lists.newArrayList;
+import org.apache.beam.sdk.io.kinesis.source.HashKeyRangeShardWeigher;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.store.ShardPositionStore;
+import org.apache.beam.sdk.repackaged.com.google.common.collect.ImmutableMap;
+import org.apache.beam.sdk.repackaged.com.google.common.collect.Iterables;
+
+import com.amazonaws.services.kinesis.model.HashKeyRange;
+import com.amazonaws.services.kinesis.model.Shard;
+import com.amazonaws.services.kinesis.model.ShardIteratorType;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import static java.util.Arrays.asList;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/***
+ *
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class KinesisReaderCheckpointTest {
+    @Mock
+    private ShardCheckpoint a, b, c, d;
+
+    private KinesisReaderCheckpoint checkpoint;
+
+    @Before
+    public void setUp() {
+        when(a.getShardId()).thenReturn("a");
+        when(b.getShardId()).thenReturn("b");
+        when(c.getShardId()).thenReturn("c");
+        when(d.getShardId()).thenReturn("d");
+        checkpoint = new KinesisReaderCheckpoint(asList(a, b, c, d));
+    }
+
+    @Test
+    public void splitsCheckpointAccordingly() {
+        verifySplitInto(1, 1);
+        verifySplitInto(2, 2);
+        verifySplitInto(3, 2);
+        verifySplitInto(4, 4);
+        verifySplitInto(5, 4);
+    }
+
+    @Test
+    public void balancesSplitsByWeightsOfShards() {
+        Map<String, Double> weights = ImmutableMap.of("a", 6.0, "b", 1.0, "c", 2.0, "d", 3.0);
+
+        List<KinesisReaderCheckpoint> split = checkpoint.splitInto(2, weights);
+
+        assertThat(split).hasSize(2);
+        assertThat(newArrayList(split.get(0))).isEqualTo(asList(a));
+        assertThat(newArrayList(split.get(1))).isEqualTo(asList(b, c, d));
+    }
+
+    @Test
+    public void assumesAverageWeightOfShardsWithoutWeight() {
+        Map<String, Double> weights = ImmutableMap.of("a", 4.0, "b", 2.0);
+
+        List<KinesisReaderCheckpoint> split = checkpoint.splitInto(2, weights);
+
+        assertThat(newArrayList(split.get(0))).isEqualTo(asList(a, b));
+        assertThat(newArrayList(split.get(1))).isEqualTo(asList(c, d));
+    }
+
+    @Test
+    public void spreadsShardsWithEqualWeights() {
+        List<KinesisReaderCheckpoint> split =
+                checkpoint.splitInto(3, Collections.<String, Double>emptyMap());
+
+        assertThat(newArrayList(Iterables.concat(split))).containsOnly(a, b, c, d);
+        for (KinesisReaderCheckpoint partition : split) {
+            assertThat(Iterables.size(partition)).isGreaterThan(0);
+        }
+    }
+
+    @Test
+    public void weighsShardsByHashKeyRange() {
+        Map<String, Double> weights = new HashKeyRangeShardWeigher().weigh("stream", asList(
+                new Shard().withShardId("a").withHashKeyRange(range("0", "99")),
+                new Shard().withShardId("b").withHashKeyRange(range("100", "149"))));
+
+        assertThat(weights).isEqualTo(ImmutableMap.of("a", 100.0, "b", 50.0));
+    }
+
+    @Test
+    public void commitsPositionsToStoreWhenFinalized() throws IOException {
+        ShardPositionStore store = mock(ShardPositionStore.class);
+        PositionInShard first = new PositionInShard("stream", "a",
+                ShardIteratorType.AFTER_SEQUENCE_NUMBER, "10");
+        PositionInShard second = new PositionInShard("stream", "b",
+                ShardIteratorType.TRIM_HORIZON, null);
+
+        new KinesisReaderCheckpoint(asList(new ShardCheckpoint(first),
+                new ShardCheckpoint(second)), store).finalizeCheckpoint();
+
+        verify(store).commit("stream", asList(first, second));
+    }
+
+    @Test
+    public void commitsNothingWithoutStore() throws IOException {
+        ShardPositionStore store = mock(ShardPositionStore.class);
+
+        new KinesisReaderCheckpoint(Collections.<ShardCheckpoint>emptyList(), store)
+                .finalizeCheckpoint();
+        checkpoint.finalizeCheckpoint();
+
+        verify(store, never()).commit(anyString(), anyListOf(PositionInShard.class));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void isImmutable() {
+        Iterator<ShardCheckpoint> iterator = checkpoint.iterator();
+        iterator.next();
+        iterator.remove();
+    }
+
+    private void verifySplitInto(int size, int expectedSize) {
+        List<KinesisReaderCheckpoint> split = checkpoint.splitInto(size);
+        assertThat(newArrayList(Iterables.concat(split))).containsOnly(a, b, c, d);
+        assertThat(split).hasSize(expectedSize);
+    }
+
+    private HashKeyRange range(String start, String end) {
+        return new HashKeyRange().withStartingHashKey(start).withEndingHashKey(end);
+    }
+}
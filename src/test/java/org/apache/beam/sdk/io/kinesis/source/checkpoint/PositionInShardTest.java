@@ -18,6 +18,7 @@
 package org.apache.beam.sdk.io.kinesis.source.checkpoint;
 
 import org.apache.beam.sdk.io.kinesis.client.SimplifiedKinesisClient;
+import org.apache.beam.sdk.io.kinesis.client.response.KinesisRecord;
 
 import static com.amazonaws.services.kinesis.clientlibrary.lib.worker.InitialPositionInStream
         .LATEST;
@@ -26,17 +27,21 @@ import static com.amazonaws.services.kinesis.clientlibrary.lib.worker.InitialPos
 import static com.amazonaws.services.kinesis.model.ShardIteratorType.AFTER_SEQUENCE_NUMBER;
 import static com.amazonaws.services.kinesis.model.ShardIteratorType.AT_SEQUENCE_NUMBER;
 import com.amazonaws.services.kinesis.clientlibrary.types.ExtendedSequenceNumber;
+import com.amazonaws.services.kinesis.model.Record;
 import com.amazonaws.services.kinesis.model.ShardIteratorType;
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.when;
+import org.joda.time.Instant;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Date;
 
 /**
  *
@@ -103,6 +108,38 @@ public class PositionInShardTest {
         )).isFalse();
     }
 
+    @Test
+    public void startsReadingAtTimestamp() throws IOException {
+        when(client.getShardIterator(STREAM_NAME, SHARD_ID, new Instant(1000L)))
+                .thenReturn("AT_TIMESTAMP_SHARD_IT");
+
+        PositionInShard position = new PositionInShard(STREAM_NAME, SHARD_ID, new Instant(1000L));
+
+        assertThat(position.getShardIteratorType()).isEqualTo(ShardIteratorType.AT_TIMESTAMP);
+        assertThat(position.obtainShardIterator(client)).isEqualTo("AT_TIMESTAMP_SHARD_IT");
+        assertThat(position.isBeforeStart(recordArrivedAt(999L))).isTrue();
+        assertThat(position.isBeforeStart(recordArrivedAt(1000L))).isFalse();
+        assertThat(position.isBeforeOrAt(new ExtendedSequenceNumber("100", 0L))).isTrue();
+    }
+
+    @Test
+    public void keepsStartTimestampOnlyUntilItIsReached() {
+        PositionInShard position = new PositionInShard(STREAM_NAME, SHARD_ID, new Instant(1000L));
+
+        PositionInShard skipping = position.moveAfter(recordArrivedAt(999L));
+        assertThat(skipping.getStartTimestamp()).isEqualTo(new Instant(1000L));
+        assertThat(skipping.getSequenceNumber()).isEqualTo("100");
+        assertThat(skipping.moveAfter(recordArrivedAt(1000L)).getStartTimestamp()).isNull();
+    }
+
+    private KinesisRecord recordArrivedAt(long millis) {
+        return new KinesisRecord(false, new Record()
+                .withData(ByteBuffer.wrap(new byte[0]))
+                .withPartitionKey("key")
+                .withSequenceNumber("100")
+                .withApproximateArrivalTimestamp(new Date(millis)), 0L, null, "iterator", null);
+    }
+
     private PositionInShard checkpoint(ShardIteratorType iteratorType, String sequenceNumber,
                                        Long subSequenceNumber) {
         return new PositionInShard(STREAM_NAME, SHARD_ID, iteratorType, sequenceNumber,
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source.checkpoint;
+
+import org.apache.beam.sdk.io.kinesis.client.SimplifiedKinesisClient;
+
+import static com.amazonaws.services.kinesis.clientlibrary.lib.worker.InitialPositionInStream
+        .TRIM_HORIZON;
+import static com.amazonaws.services.kinesis.model.ShardIteratorType.AFTER_SEQUENCE_NUMBER;
+import com.amazonaws.services.kinesis.model.ShardIteratorType;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.when;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import static java.util.Arrays.asList;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/***
+ *
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ShardIteratorAcquirerTest {
+    private static final String STREAM_NAME = "stream";
+
+    @Mock
+    private SimplifiedKinesisClient kinesis;
+
+    @Test
+    public void shouldKeepOrderOfPositions() throws IOException {
+        when(kinesis.getShardIterator(eq(STREAM_NAME), anyString(),
+                any(ShardIteratorType.class), anyString())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                return invocation.getArguments()[1] + "-iterator";
+            }
+        });
+
+        List<ShardCheckpoint> checkpoints = new ShardIteratorAcquirer(2, 1000)
+                .acquire(asList(position("a"), position("b"), position("c"), position("d")),
+                        kinesis);
+
+        assertThat(checkpoints).hasSize(4);
+        for (int i = 0; i < checkpoints.size(); ++i) {
+            String shardId = String.valueOf((char) ('a' + i));
+            assertThat(checkpoints.get(i).getShardId()).isEqualTo(shardId);
+            assertThat(checkpoints.get(i).getShardIterator()).isEqualTo(shardId + "-iterator");
+        }
+    }
+
+    @Test
+    public void shouldObtainIteratorsConcurrently() throws IOException {
+        final CountDownLatch bothCalled = new CountDownLatch(2);
+        when(kinesis.getShardIterator(eq(STREAM_NAME), anyString(),
+                any(ShardIteratorType.class), anyString())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                bothCalled.countDown();
+                if (!bothCalled.await(5, TimeUnit.SECONDS)) {
+                    throw new IOException("Calls were not made concurrently");
+                }
+                return "iterator";
+            }
+        });
+
+        List<ShardCheckpoint> checkpoints = new ShardIteratorAcquirer(2, 1000)
+                .acquire(asList(position("a"), position("b")), kinesis);
+
+        assertThat(checkpoints).hasSize(2);
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldPropagateFailure() throws IOException {
+        when(kinesis.getShardIterator(STREAM_NAME, "a", ShardIteratorType.TRIM_HORIZON, null))
+                .thenReturn("a-iterator");
+        when(kinesis.getShardIterator(STREAM_NAME, "b", ShardIteratorType.TRIM_HORIZON, null))
+                .thenThrow(new IOException("failed"));
+
+        new ShardIteratorAcquirer(2, 1000)
+                .acquire(asList(position("a"), position("b")), kinesis);
+    }
+
+    @Test
+    public void shouldUseAfterSequenceNumberPosition() throws IOException {
+        when(kinesis.getShardIterator(STREAM_NAME, "a", AFTER_SEQUENCE_NUMBER, "100"))
+                .thenReturn("a-iterator");
+
+        List<ShardCheckpoint> checkpoints = ShardIteratorAcquirer.defaults().acquire(
+                asList(new PositionInShard(STREAM_NAME, "a", AFTER_SEQUENCE_NUMBER, "100")),
+                kinesis);
+
+        assertThat(checkpoints).hasSize(1);
+        assertThat(checkpoints.get(0).getShardIterator()).isEqualTo("a-iterator");
+    }
+
+    @Test
+    public void shouldHandleNoPositions() throws IOException {
+        assertThat(ShardIteratorAcquirer.defaults()
+                .acquire(Collections.<PositionInShard>emptyList(), kinesis)).isEmpty();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNonPositiveParallelism() {
+        new ShardIteratorAcquirer(0, 10);
+    }
+
+    private PositionInShard position(String shardId) {
+        return new PositionInShard(STREAM_NAME, shardId, TRIM_HORIZON);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source.checkpoint.generator;
+
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Lists.newArrayList;
+import static org.apache.beam.sdk.repackaged.com.google.common.collect.Maps.newHashMap;
+import org.apache.beam.sdk.io.kinesis.client.SimplifiedKinesisClient;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.PositionInShard;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.ShardCheckpoint;
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.store.ShardPositionStore;
+
+import com.amazonaws.services.kinesis.clientlibrary.lib.worker.InitialPositionInStream;
+import com.amazonaws.services.kinesis.model.SequenceNumberRange;
+import com.amazonaws.services.kinesis.model.Shard;
+import com.amazonaws.services.kinesis.model.ShardIteratorType;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+import org.joda.time.Instant;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import static java.util.Arrays.asList;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/***
+ *
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class StoredPositionCheckpointGeneratorTest {
+    private static final String STREAM = "stream";
+
+    @Mock
+    private SimplifiedKinesisClient kinesis;
+    @Mock
+    private ShardPositionStore store;
+    private final Map<String, PositionInShard> stored = newHashMap();
+
+    @Test
+    public void startsFromInitialPositionWithoutStoredPositions() throws IOException {
+        shardsAre(closedShard("shard-0", null), openShard("shard-1", "shard-0"),
+                openShard("shard-2", null));
+
+        assertThat(generate(InitialPositionInStream.TRIM_HORIZON))
+                .isEqualTo(asList("shard-0 TRIM_HORIZON", "shard-2 TRIM_HORIZON"));
+        assertThat(generate(InitialPositionInStream.LATEST))
+                .isEqualTo(asList("shard-1 LATEST", "shard-2 LATEST"));
+    }
+
+    @Test
+    public void resumesFromStoredPositions() throws IOException {
+        shardsAre(openShard("shard-0", null), openShard("shard-1", null));
+        store("shard-0", "10");
+
+        assertThat(generate(InitialPositionInStream.LATEST))
+                .isEqualTo(asList("shard-0 AFTER_SEQUENCE_NUMBER 10", "shard-1 LATEST"));
+    }
+
+    @Test
+    public void leavesOutChildrenOfShardWhichIsStillRead() throws IOException {
+        shardsAre(closedShard("shard-0", null), openShard("shard-1", "shard-0"),
+                openShard("shard-2", "shard-0"));
+        store("shard-0", "10");
+
+        assertThat(generate(InitialPositionInStream.LATEST))
+                .isEqualTo(asList("shard-0 AFTER_SEQUENCE_NUMBER 10"));
+    }
+
+    @Test
+    public void leavesOutFinishedShardAndReadsItsChildrenFromBeginning() throws IOException {
+        shardsAre(closedShard("shard-0", null), openShard("shard-1", "shard-0"),
+                openShard("shard-2", "shard-0"));
+        store("shard-0", "10");
+        store("shard-1", "20");
+
+        assertThat(generate(InitialPositionInStream.LATEST)).isEqualTo(asList(
+                "shard-1 AFTER_SEQUENCE_NUMBER 20", "shard-2 TRIM_HORIZON"));
+    }
+
+    @Test
+    public void readsChildrenOfExpiredShardFromBeginning() throws IOException {
+        shardsAre(openShard("shard-1", "shard-0"), openShard("shard-2", null));
+        store("shard-0", "10");
+
+        assertThat(generate(InitialPositionInStream.LATEST))
+                .isEqualTo(asList("shard-1 TRIM_HORIZON", "shard-2 LATEST"));
+    }
+
+    @Test
+    public void skipsRecordsBeforeStartTimestampInShardsWithoutStoredPositions()
+            throws IOException {
+        shardsAre(closedShard("shard-0", null), openShard("shard-1", "shard-0"),
+                openShard("shard-2", "shard-0"), openShard("shard-3", null));
+        store("shard-0", "10");
+        store("shard-1", "20");
+
+        assertThat(generate(new StoredPositionCheckpointGenerator(STREAM, new Instant(1000L),
+                store))).isEqualTo(asList("shard-1 AFTER_SEQUENCE_NUMBER 20",
+                "shard-2 AT_TIMESTAMP 1970-01-01T00:00:01.000Z",
+                "shard-3 AT_TIMESTAMP 1970-01-01T00:00:01.000Z"));
+    }
+
+    private List<String> generate(InitialPositionInStream startPosition) throws IOException {
+        return generate(new StoredPositionCheckpointGenerator(STREAM, startPosition, store));
+    }
+
+    private List<String> generate(StoredPositionCheckpointGenerator generator)
+            throws IOException {
+        when(store.load(STREAM)).thenReturn(stored);
+        List<String> positions = newArrayList();
+        for (ShardCheckpoint checkpoint : generator.generate(kinesis)) {
+            PositionInShard position = checkpoint.getPositionInShard();
+            positions.add(position.getShardId() + " " + position.getShardIteratorType() +
+                    (position.getSequenceNumber() == null ? "" :
+                            " " + position.getSequenceNumber()) +
+                    (position.getStartTimestamp() == null ? "" :
+                            " " + position.getStartTimestamp()));
+        }
+        return positions;
+    }
+
+    private void store(String shardId, String sequenceNumber) {
+        stored.put(shardId, new PositionInShard(STREAM, shardId,
+                ShardIteratorType.AFTER_SEQUENCE_NUMBER, sequenceNumber));
+    }
+
+    private void shardsAre(Shard... shards) throws IOException {
+        when(kinesis.listShards(STREAM)).thenReturn(asList(shards));
+    }
+
+    private Shard openShard(String shardId, String parentId) {
+        return new Shard().withShardId(shardId).withParentShardId(parentId)
+                .withSequenceNumberRange(new SequenceNumberRange().withStartingSequenceNumber("0"));
+    }
+
+    private Shard closedShard(String shardId, String parentId) {
+        return new Shard().withShardId(shardId).withParentShardId(parentId)
+                .withSequenceNumberRange(new SequenceNumberRange()
+                        .withStartingSequenceNumber("0").withEndingSequenceNumber("100"));
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.source.checkpoint.store;
+
+import org.apache.beam.sdk.io.kinesis.source.checkpoint.PositionInShard;
+
+import static com.amazonaws.services.kinesis.model.ShardIteratorType.AFTER_SEQUENCE_NUMBER;
+import static com.amazonaws.services.kinesis.model.ShardIteratorType.AT_TIMESTAMP;
+import static com.amazonaws.services.kinesis.model.ShardIteratorType.LATEST;
+import static org.fest.assertions.Assertions.assertThat;
+import org.joda.time.Instant;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static java.util.Arrays.asList;
+import java.io.IOException;
+import java.util.Map;
+
+/***
+ *
+ */
+public class FileShardPositionStoreTest {
+    private static final String SEQUENCE_NUMBER =
+            "49559730349463487463870497431473219262470069212302557186";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void loadsCommittedPositions() throws IOException {
+        ShardPositionStore store = new FileShardPositionStore(folder.getRoot().getPath());
+
+        store.commit("stream", asList(
+                new PositionInShard("stream", "shard-0", AFTER_SEQUENCE_NUMBER, SEQUENCE_NUMBER,
+                        12L),
+                new PositionInShard("stream", "shard-1", LATEST, null)));
+        Map<String, PositionInShard> positions =
+                new FileShardPositionStore(folder.getRoot().getPath()).load("stream");
+
+        assertThat(positions.keySet()).containsOnly("shard-0", "shard-1");
+        PositionInShard first = positions.get("shard-0");
+        assertThat(first.getStreamName()).isEqualTo("stream");
+        assertThat(first.getShardIteratorType()).isEqualTo(AFTER_SEQUENCE_NUMBER);
+        assertThat(first.getSequenceNumber()).isEqualTo(SEQUENCE_NUMBER);
+        assertThat(first.getSubSequenceNumber()).isEqualTo(12L);
+        PositionInShard second = positions.get("shard-1");
+        assertThat(second.getShardIteratorType()).isEqualTo(LATEST);
+        assertThat(second.getSequenceNumber()).isNull();
+        assertThat(second.getSubSequenceNumber()).isNull();
+    }
+
+    @Test
+    public void loadsStartTimestamps() throws IOException {
+        ShardPositionStore store = new FileShardPositionStore(folder.getRoot().getPath());
+
+        store.commit("stream", asList(
+                new PositionInShard("stream", "shard-0", new Instant(1476057600000L)),
+                new PositionInShard("stream", "shard-1", AFTER_SEQUENCE_NUMBER, "1", 2L,
+                        new Instant(1476057600000L))));
+        Map<String, PositionInShard> positions = store.load("stream");
+
+        PositionInShard first = positions.get("shard-0");
+        assertThat(first.getShardIteratorType()).isEqualTo(AT_TIMESTAMP);
+        assertThat(first.getStartTimestamp()).isEqualTo(new Instant(1476057600000L));
+        PositionInShard second = positions.get("shard-1");
+        assertThat(second.getSequenceNumber()).isEqualTo("1");
+        assertThat(second.getSubSequenceNumber()).isEqualTo(2L);
+        assertThat(second.getStartTimestamp()).isEqualTo(new Instant(1476057600000L));
+    }
+
+    @Test
+    public void replacesOnlyPositionsOfCommittedShards() throws IOException {
+        ShardPositionStore store = new FileShardPositionStore(folder.getRoot().getPath());
+
+        store.commit("stream", asList(
+                new PositionInShard("stream", "shard-0", AFTER_SEQUENCE_NUMBER, "1"),
+                new PositionInShard("stream", "shard-1", AFTER_SEQUENCE_NUMBER, "2")));
+        store.commit("stream", asList(
+                new PositionInShard("stream", "shard-1", AFTER_SEQUENCE_NUMBER, "3")));
+        store.commit("other-stream", asList(
+                new PositionInShard("other-stream", "shard-0", AFTER_SEQUENCE_NUMBER, "4")));
+        Map<String, PositionInShard> positions = store.load("stream");
+
+        assertThat(positions.get("shard-0").getSequenceNumber()).isEqualTo("1");
+        assertThat(positions.get("shard-1").getSequenceNumber()).isEqualTo("3");
+        assertThat(folder.getRoot().list()).containsOnly("stream.properties",
+                "other-stream.properties");
+    }
+
+    @Test
+    public void loadsNothingForUnknownStream() throws IOException {
+        assertThat(new FileShardPositionStore(folder.getRoot().getPath()).load("stream"))
+                .isEmpty();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.beam.sdk.io.kinesis.utils;
+
+import org.apache.beam.sdk.repackaged.com.google.common.base.Ticker;
+
+import static org.fest.assertions.Assertions.assertThat;
+import org.junit.Test;
+import java.util.concurrent.TimeUnit;
+
+/***
+ *
+ */
+public class TokenBucketTest {
+    private final FakeTicker ticker = new FakeTicker();
+
+    @Test
+    public void startsFullAndRefillsAtGivenRate() {
+        TokenBucket bucket = new TokenBucket(2, 10, ticker);
+
+        assertThat(bucket.tryTake(1)).isTrue();
+        assertThat(bucket.tryTake(1)).isTrue();
+        assertThat(bucket.tryTake(1)).isFalse();
+        assertThat(bucket.nanosUntilAvailable(1)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+
+        ticker.advance(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(bucket.tryTake(1)).isTrue();
+        assertThat(bucket.tryTake(1)).isFalse();
+    }
+
+    @Test
+    public void doesNotGrowAboveCapacity() {
+        TokenBucket bucket = new TokenBucket(2, 10, ticker);
+
+        ticker.advance(TimeUnit.SECONDS.toNanos(10));
+        assertThat(bucket.tryTake(3)).isFalse();
+        assertThat(bucket.tryTake(2)).isTrue();
+    }
+
+    @Test
+    public void debtHasToBePaidBackBeforeTakingMore() {
+        TokenBucket bucket = new TokenBucket(10, 10, ticker);
+
+        bucket.take(30);
+        assertThat(bucket.tryTake(1)).isFalse();
+        assertThat(bucket.nanosUntilAvailable(0)).isEqualTo(TimeUnit.SECONDS.toNanos(2));
+
+        ticker.advance(TimeUnit.SECONDS.toNanos(2));
+        assertThat(bucket.nanosUntilAvailable(0)).isEqualTo(0L);
+        assertThat(bucket.tryTake(1)).isFalse();
+    }
+
+    private static class FakeTicker extends Ticker {
+        private long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        void advance(long delta) {
+            nanos += delta;
+        }
+    }
+}